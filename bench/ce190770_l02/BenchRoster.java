@@ -0,0 +1,108 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * L02 - Student Management System
+ *
+ * BenchRoster is the database every benchmark runs against: a StudentDTB or,
+ * with the "backend" parameter set to columnar, a StudentStore, filled by
+ * RosterGenerator with a roster of the size given by the "size" parameter.
+ * The seed is fixed, so every run and every build measures the same data.
+ * The findBy result cache of a StudentDTB is off unless the "cache"
+ * parameter is on: the searches repeat a few dozen inputs, so they would
+ * otherwise time cache hits.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+@State(Scope.Benchmark)
+public class BenchRoster {
+
+    // Seed of the roster, fixed so results can be compared between builds
+    static final long SEED = 190770L;
+
+    // Number of students in the roster
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    // Backend holding the roster: dtb for StudentDTB, columnar for StudentStore
+    @Param({"dtb", "columnar"})
+    public String backend;
+
+    // Whether a StudentDTB keeps its findBy result cache: off so searches
+    // are timed, "-p cache=on" times hits; the columnar backend has none
+    @Param({"off"})
+    public String cache;
+
+    // The database holding the roster
+    StudentBackend dtb;
+    // IDs of the roster, in the order they were added
+    String[] ids;
+
+    /**
+     * Builds the database once per trial
+     */
+    @Setup(Level.Trial)
+    public void build() {
+        if (backend.equals("columnar")) {
+            dtb = new StudentStore();
+        } else {
+            StudentDTB rows = new StudentDTB();
+            if (!cache.equals("on")) {
+                rows.queryCache().setCapacity(0);
+            }
+            dtb = rows;
+        }
+        ids = new String[size];
+        int[] count = new int[1];
+        // The generator only reads the valid courses of a StudentDTB
+        new RosterGenerator(new StudentDTB(), SEED).generate(size, student -> {
+            ids[count[0]++] = student.getId();
+            dtb.add(student);
+        });
+    }
+
+    /**
+     * Picks search inputs a user would type for a criteria, taken from the
+     * roster so that searches find students
+     *
+     * @param sortType The criteria searched by
+     * @param count Number of inputs
+     * @param random The source of randomness
+     * @return The inputs
+     */
+    String[] inputs(StudentDTB.SortType sortType, int count, Random random) {
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            Student student = dtb.findById(ids[random.nextInt(ids.length)]);
+            switch (sortType) {
+                case BY_ID:
+                    inputs[i] = student.getId();
+                    break;
+                case BY_NAME:
+                    // The given name, the part users usually search for
+                    String name = student.getName();
+                    inputs[i] = name.substring(name.lastIndexOf(' ') + 1);
+                    break;
+                case BY_SEMESTER:
+                    inputs[i] = student.getSemesters().iterator().next();
+                    break;
+                case BY_COURSE:
+                    String semester = student.getSemesters().iterator().next();
+                    inputs[i] = student.getCourses(semester).iterator().next();
+                    break;
+            }
+        }
+        return inputs;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * L02 - Student Management System
+ *
+ * MutationBenchmark measures adding and deleting students. The roster has to
+ * keep its size during a run, so each add is paired with a delete: one
+ * benchmark adds a new student and deletes it again, the other deletes a
+ * student of the roster and adds it back. A third one adds a student whose
+ * ID is taken, which only costs the duplicate check.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationBenchmark {
+
+    // Number of students cycled through, a power of 2
+    private static final int STUDENTS = 1024;
+
+    /**
+     * Students to add and delete
+     */
+    @State(Scope.Thread)
+    public static class Changes {
+
+        // Students whose IDs are not in the roster
+        Student[] fresh;
+        // Students of the roster
+        Student[] existing;
+        // Students with the ID of a roster student
+        Student[] duplicates;
+        // Position of the next student
+        int next;
+
+        /**
+         * Builds the students once per trial
+         *
+         * @param roster The database changed
+         */
+        @Setup(Level.Trial)
+        public void build(BenchRoster roster) {
+            Random random = new Random(BenchRoster.SEED);
+            RosterGenerator generator = new RosterGenerator(new StudentDTB(), BenchRoster.SEED + 1);
+            fresh = new Student[STUDENTS];
+            existing = new Student[STUDENTS];
+            duplicates = new Student[STUDENTS];
+            for (int i = 0; i < STUDENTS; i++) {
+                // The ZZ major is never used by the roster
+                fresh[i] = generator.next(String.format("ZZ%06d", i));
+                existing[i] = detach(roster.dtb.findById(roster.ids[random.nextInt(roster.ids.length)]));
+                duplicates[i] = generator.next(existing[i].getId());
+            }
+        }
+
+        /**
+         * Copies a roster student into a student of its own, since a view of
+         * the columnar backend stops working once its row is deleted
+         *
+         * @param student The roster student
+         * @return New student with the same ID, name and enrolments
+         */
+        private static Student detach(Student student) {
+            Student res = new Student(student.getId(), student.getName());
+            for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+                for (String course : entry.getValue()) {
+                    res.addCourse(entry.getKey(), course);
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Adds a new student, then deletes it
+     *
+     * @param roster The database changed
+     * @param changes The students
+     * @return Whether the student was deleted
+     */
+    @Benchmark
+    public boolean addThenDelete(BenchRoster roster, Changes changes) {
+        Student student = changes.fresh[changes.next++ & (STUDENTS - 1)];
+        roster.dtb.add(student);
+        return roster.dtb.deleteStudent(student.getId());
+    }
+
+    /**
+     * Deletes a student of the roster, then adds it back
+     *
+     * @param roster The database changed
+     * @param changes The students
+     * @return Whether the student was added back
+     */
+    @Benchmark
+    public boolean deleteThenAdd(BenchRoster roster, Changes changes) {
+        Student student = changes.existing[changes.next++ & (STUDENTS - 1)];
+        roster.dtb.deleteStudent(student.getId());
+        return roster.dtb.add(student);
+    }
+
+    /**
+     * Adds a student whose ID is already taken
+     *
+     * @param roster The database checked
+     * @param changes The students
+     * @return false, the student is refused
+     */
+    @Benchmark
+    public boolean addDuplicate(BenchRoster roster, Changes changes) {
+        return roster.dtb.add(changes.duplicates[changes.next++ & (STUDENTS - 1)]);
+    }
+}
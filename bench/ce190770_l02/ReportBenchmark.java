@@ -0,0 +1,90 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * L02 - Student Management System
+ *
+ * ReportBenchmark measures the Report menu: taking a version of the database
+ * and rendering the table of every student with ReportRenderer. The text is
+ * encoded as for a file export but thrown away, so the benchmark measures
+ * the rendering and not the disk.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+
+    /**
+     * Renders the report of every student
+     *
+     * @param roster The database reported
+     * @return The number of students rendered
+     * @throws IOException never, the channel discards the text
+     */
+    @Benchmark
+    public int report(BenchRoster roster) throws IOException {
+        try (ReportRenderer renderer = ReportRenderer.toChannel(new Discard())) {
+            return renderer.table(roster.dtb.snapshot().students().iterator());
+        }
+    }
+
+    /**
+     * A channel that accepts and drops every byte
+     */
+    private static final class Discard implements WritableByteChannel {
+
+        // Whether the channel was closed
+        private boolean open = true;
+
+        /**
+         * Drops the remaining bytes of a buffer
+         *
+         * @param src The bytes
+         * @return The number of bytes dropped
+         */
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        /**
+         * Tells whether the channel is open
+         *
+         * @return true until closed
+         */
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Closes the channel
+         */
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * L02 - Student Management System
+ *
+ * SearchBenchmark measures the lookups of the Find and Update/Delete menus:
+ * findBy for every criteria, chkIdExist and matchesInput. Each call uses
+ * the next input of a fixed list taken from the roster, so the searches find
+ * students and the JIT cannot fold a constant input away.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    // Number of inputs cycled through, a power of 2
+    private static final int INPUTS = 1024;
+
+    /**
+     * Inputs for one search criteria
+     */
+    @State(Scope.Thread)
+    public static class Query {
+
+        // Criteria searched by
+        @Param({"BY_ID", "BY_NAME", "BY_SEMESTER", "BY_COURSE"})
+        public StudentDTB.SortType sortType;
+
+        // Inputs taken from the roster
+        String[] inputs;
+        // Position of the next input
+        int next;
+
+        /**
+         * Picks the inputs once per trial
+         *
+         * @param roster The database searched
+         */
+        @Setup(Level.Trial)
+        public void pick(BenchRoster roster) {
+            inputs = roster.inputs(sortType, INPUTS, new Random(BenchRoster.SEED));
+        }
+
+        /**
+         * Gets the next input
+         *
+         * @return The input
+         */
+        String next() {
+            return inputs[next++ & (INPUTS - 1)];
+        }
+    }
+
+    /**
+     * IDs to check, half of them in the roster
+     */
+    @State(Scope.Thread)
+    public static class Ids {
+
+        // IDs to check
+        String[] ids;
+        // Position of the next ID
+        int next;
+
+        /**
+         * Picks the IDs once per trial
+         *
+         * @param roster The database checked
+         */
+        @Setup(Level.Trial)
+        public void pick(BenchRoster roster) {
+            Random random = new Random(BenchRoster.SEED);
+            ids = new String[INPUTS];
+            for (int i = 0; i < INPUTS; i++) {
+                // Odd positions hold IDs beyond the last student number
+                ids[i] = i % 2 == 0 ? roster.ids[random.nextInt(roster.ids.length)]
+                        : String.format("ZZ%06d", random.nextInt(1000000));
+            }
+        }
+    }
+
+    /**
+     * Name fragments as users type them, independent of the roster size
+     */
+    @State(Scope.Thread)
+    public static class Fragments {
+
+        // Fragments in several cases, some found in the name and some not
+        private static final String[] FRAGMENTS = {"khang", "Van K", "NGUYEN", "phuc", "g", "an kh",
+            "Tran", "zz"};
+
+        // Empty database, only its matcher is used
+        final StudentDTB dtb = new StudentDTB();
+        // Position of the next fragment
+        int next;
+
+        /**
+         * Gets the next fragment
+         *
+         * @return The fragment
+         */
+        String next() {
+            return FRAGMENTS[next++ & (FRAGMENTS.length - 1)];
+        }
+    }
+    /**
+     * Finds the students matching the next input
+     *
+     * @param roster The database searched
+     * @param query The criteria and inputs
+     * @return The students found
+     */
+    @Benchmark
+    public List<Student> findBy(BenchRoster roster, Query query) {
+        return roster.dtb.findBy(query.next(), query.sortType);
+    }
+
+    /**
+     * Checks whether the next ID exists, as the Create menu does before
+     * adding
+     *
+     * @param roster The database checked
+     * @param ids The IDs
+     * @return Whether the ID exists
+     */
+    @Benchmark
+    public boolean chkIdExist(BenchRoster roster, Ids ids) {
+        return roster.dtb.chkIdExist(ids.ids[ids.next++ & (INPUTS - 1)]);
+    }
+
+    /**
+     * Matches the next fragment against a name with a one-off check, which
+     * folds both sides as it compares instead of compiling a matcher
+     *
+     * @param fragments The fragments
+     * @return Whether the name contains the fragment
+     */
+    @Benchmark
+    public boolean matchesInput(Fragments fragments) {
+        return fragments.dtb.matchesInput("Nguyen Van Khang", fragments.next());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * L02 - Student Management System
+ *
+ * SortBenchmark measures sorting the database in place, as the Sort menu
+ * does, and sorting a copy from a database version, as the Report menu does.
+ * Before every in-place sort the database is put back in the order of
+ * another criteria, outside the measured time, so the sort never starts from
+ * input that is already in order.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBenchmark {
+
+    /**
+     * The criteria to sort by
+     */
+    @State(Scope.Thread)
+    public static class Order {
+
+        // Criteria sorted by
+        @Param({"BY_ID", "BY_NAME", "BY_SEMESTER", "BY_COURSE"})
+        public StudentDTB.SortType sortType;
+
+        // Version of the roster the copies are sorted from
+        DatabaseVersion version;
+
+        /**
+         * Takes the version once per trial
+         *
+         * @param roster The database sorted
+         */
+        @Setup(Level.Trial)
+        public void take(BenchRoster roster) {
+            version = roster.dtb.snapshot();
+        }
+    }
+
+    /**
+     * Puts the database out of order before every in-place sort
+     */
+    @State(Scope.Thread)
+    public static class Unsorted {
+
+        /**
+         * Puts the database in the order of another criteria
+         *
+         * @param roster The database sorted
+         * @param order The criteria the benchmark sorts by
+         */
+        @Setup(Level.Invocation)
+        public void shuffle(BenchRoster roster, Order order) {
+            roster.dtb.sort(order.sortType == StudentDTB.SortType.BY_NAME
+                    ? StudentDTB.SortType.BY_ID : StudentDTB.SortType.BY_NAME);
+        }
+    }
+
+    /**
+     * Sorts the database in place
+     *
+     * @param roster The database sorted
+     * @param order The criteria
+     * @param unsorted Puts the database out of order first
+     */
+    @Benchmark
+    public void sort(BenchRoster roster, Order order, Unsorted unsorted) {
+        roster.dtb.sort(order.sortType);
+    }
+
+    /**
+     * Sorts a copy of a database version
+     *
+     * @param order The criteria and the version
+     * @return The sorted copy
+     */
+    @Benchmark
+    public List<Student> sortedView(Order order) {
+        return order.version.sortedView(order.sortType);
+    }
+}
@@ -5,6 +5,12 @@
  */
 package ce190770_l02;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+
 /**
  * L02 - Student Management System
  *
@@ -16,17 +22,205 @@ package ce190770_l02;
  */
 public class CE190770_L02 {
 
+    // Snapshot file the database is loaded from and saved to
+    private static final Path SNAPSHOT_FILE = Paths.get("students.dtb");
+    // Directory of the write-ahead log of changes made since the snapshot
+    private static final Path LOG_DIRECTORY = Paths.get("students.wal");
+    // System property: seconds between two prints of the metrics, none if unset
+    private static final String METRICS_INTERVAL = "ce190770_l02.metrics.interval";
+    // System property: milliseconds above which a search is logged, none if unset
+    private static final String SLOW_QUERY_THRESHOLD = "ce190770_l02.slowquery.ms";
+    // Rolling files of the slow-query log
+    private static final String SLOW_QUERY_FILES = "students-slow.%g.log";
+    // System property: "columnar" to run the Menu on StudentStore instead of
+    // StudentDTB, in memory only
+    private static final String BACKEND = "ce190770_l02.backend";
+    // Command line options
+    private static final String USAGE = "Usage: CE190770_L02 [--server [port] | --generate count file [seed]]";
+
     /**
-     * The main method that starts the application. Creates a new Menu instance
-     * and starts the main program loop.
+     * The main method that starts the application. Loads the database from
+     * the snapshot file and replays the changes logged after it, logs every
+     * new change, writes a fresh snapshot when the program exits, then
+     * creates a new Menu instance and starts the main program loop. With
+     * "--server [port]" it serves the database over HTTP instead of starting
+     * the Menu, until the program is stopped. With "--generate count file
+     * [seed]" it only writes a generated roster to a CSV file. The metrics
+     * of the database are registered as JMX MBeans, and printed every few
+     * seconds if the ce190770_l02.metrics.interval property is set. With
+     * the ce190770_l02.slowquery.ms property, slower searches are logged to
+     * students-slow.0.log. With -Dce190770_l02.backend=columnar the Menu runs
+     * on the columnar StudentStore instead, which starts empty and is not
+     * saved; it cannot serve, as it is not thread-safe.
      *
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments: nothing, --server [port] or
+     * --generate count file [seed]
      */
     public static void main(String[] args) {
+        // Write a generated roster instead of opening the database
+        if (args.length > 0 && args[0].equals("--generate")) {
+            generate(args);
+            return;
+        }
+        // Pick the console Menu or the HTTP server
+        int port = -1;
+        if (args.length > 0) {
+            if (!args[0].equals("--server") || args.length > 2) {
+                System.err.println(USAGE);
+                return;
+            }
+            try {
+                port = args.length == 2 ? Integer.parseInt(args[1]) : StudentServer.DEFAULT_PORT;
+            } catch (NumberFormatException e) {
+                System.err.println("------Error! Port must be a number.");
+                return;
+            }
+        }
+        // Run on the columnar store if asked, without loading or saving
+        String backend = System.getProperty(BACKEND, "dtb");
+        if (backend.equals("columnar")) {
+            if (port >= 0) {
+                System.err.println("------Error! The columnar backend is not thread-safe and cannot serve.");
+                return;
+            }
+            System.out.println("------Notify: Using the columnar backend, students are not saved on exit.");
+            new Menu(new StudentStore()).loop();
+            return;
+        }
+        if (!backend.equals("dtb")) {
+            System.err.println("------Error! Unknown backend " + backend + ", use dtb or columnar.");
+            return;
+        }
+        // Recover the students saved by the previous run
+        StudentDTB dtb = new StudentDTB();
+        WriteAheadLog log = null;
+        try {
+            log = WriteAheadLog.open(LOG_DIRECTORY, SNAPSHOT_FILE);
+            log.recover(dtb);
+        } catch (IOException | RuntimeException e) {
+            // Keep the unreadable files instead of overwriting them on exit
+            System.err.println("------Error! Could not load " + SNAPSHOT_FILE + ": " + e.getMessage());
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException ignored) {
+                    // Nothing was logged, the error above is the one to report
+                }
+            }
+            // The server must not serve an empty database in place of the real one
+            if (port < 0) {
+                new Menu(new StudentDTB()).loop();
+            }
+            return;
+        }
+        // Log every change from now on
+        WriteAheadLog changes = log;
+        dtb.setWriteAheadLog(changes);
+        // Show the metrics of the database in JMX tools, and print them if asked
+        watch(dtb);
+        // Fold the log into the snapshot when the program exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                changes.checkpoint(dtb);
+                changes.close();
+            } catch (IOException | RuntimeException e) {
+                // A snapshot that failed to load is kept as it is
+                System.err.println("------Error! Could not save " + SNAPSHOT_FILE + ": " + e.getMessage());
+            }
+        }));
+        if (port >= 0) {
+            serve(dtb, port);
+            return;
+        }
         // Create a new instance of the Menu class
-        Menu menu = new Menu();
+        Menu menu = new Menu(dtb);
         // Start the main program loop
         menu.loop();
     }
 
+    /**
+     * Registers the metrics of the database as JMX MBeans and, if the
+     * ce190770_l02.metrics.interval property is set, prints them to the
+     * error stream every that many seconds. If the ce190770_l02.slowquery.ms
+     * property is set, logs the searches that take at least that many
+     * milliseconds.
+     *
+     * @param dtb The database to watch
+     */
+    private static void watch(StudentDTB dtb) {
+        try {
+            dtb.metrics().register(SNAPSHOT_FILE.toString());
+        } catch (JMException e) {
+            // The database works without them
+            System.err.println("------Error! Could not register the metrics: " + e.getMessage());
+        }
+        String interval = System.getProperty(METRICS_INTERVAL);
+        if (interval != null) {
+            try {
+                dtb.metrics().startDump(Long.parseLong(interval), TimeUnit.SECONDS, System.err);
+            } catch (IllegalArgumentException e) {
+                System.err.println("------Error! " + METRICS_INTERVAL + " must be a positive number of seconds.");
+            }
+        }
+        String threshold = System.getProperty(SLOW_QUERY_THRESHOLD);
+        if (threshold != null) {
+            try {
+                SlowQueryLog slowQueries = new SlowQueryLog(SLOW_QUERY_FILES, Long.parseLong(threshold),
+                        TimeUnit.MILLISECONDS);
+                dtb.setSlowQueryLog(slowQueries);
+                // Release the lock file of the log when the program exits
+                Runtime.getRuntime().addShutdownHook(new Thread(slowQueries::close));
+            } catch (IOException e) {
+                System.err.println("------Error! Could not open the slow-query log: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.err.println("------Error! " + SLOW_QUERY_THRESHOLD + " must be a number of milliseconds.");
+            }
+        }
+    }
+
+    /**
+     * Writes a generated roster to a CSV file that the Import menu can load
+     *
+     * @param args Command line arguments: --generate count file [seed]
+     */
+    private static void generate(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println(USAGE);
+            return;
+        }
+        try {
+            int count = Integer.parseInt(args[1]);
+            // Without a seed, every run makes a different roster
+            long seed = args.length == 4 ? Long.parseLong(args[3]) : System.nanoTime();
+            new RosterGenerator(new StudentDTB(), seed).generateInto(count, Paths.get(args[2]));
+            System.out.println("Generated " + count + " students with seed " + seed + " into " + args[2] + ".");
+        } catch (NumberFormatException e) {
+            System.err.println("------Error! Count and seed must be numbers.");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("------Error! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves the database over HTTP until the program is stopped
+     *
+     * @param dtb The database to serve
+     * @param port The TCP port to listen on
+     */
+    private static void serve(StudentDTB dtb, int port) {
+        try {
+            StudentServer server = new StudentServer(dtb, port);
+            // Stop taking requests when the program exits
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            System.out.println("Serving " + dtb.size() + " students on port " + server.getPort() + ", press Ctrl+C to stop.");
+            // The request threads are daemons, keep the program alive
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            System.err.println("------Error! Could not start the server: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 }
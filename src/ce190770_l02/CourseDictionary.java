@@ -0,0 +1,88 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * L02 - Student Management System
+ *
+ * CourseDictionary interns course names and gives each one a bit position, so
+ * that the courses of a semester can be stored as a single long bitset. Course
+ * names are matched case-insensitively; the first spelling seen is kept for
+ * display. A dictionary holds at most 48 courses, so that a semester's
+ * course bitset and its semester code fit in one long of the compact
+ * enrolment layout.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class CourseDictionary {
+
+    // Maximum number of courses, one per bit below the 16-bit semester code
+    public static final int MAX_COURSES = 48;
+
+    // Normalized course name -> bit position
+    private final Map<String, Integer> bits = new HashMap<>();
+    // Bit position -> interned course name
+    private final String[] names = new String[MAX_COURSES];
+    // Number of courses interned so far
+    private int size = 0;
+
+    /**
+     * Gets the bit position of a course, interning it if it is new
+     *
+     * @param course The course name
+     * @return The bit position of the course (0-47)
+     * @throws IllegalArgumentException if the dictionary is full
+     */
+    public synchronized int intern(String course) {
+        // Reuse the bit of a course that was already interned
+        String key = StudentDTB.normalizeKey(course);
+        Integer bit = bits.get(key);
+        if (bit != null) {
+            return bit;
+        }
+        // Refuse more courses than an enrolment entry can hold
+        if (size == MAX_COURSES) {
+            throw new IllegalArgumentException("Too many courses, at most " + MAX_COURSES + " are supported.");
+        }
+        // Give the course the next free bit
+        names[size] = course;
+        bits.put(key, size);
+        return size++;
+    }
+
+    /**
+     * Gets the bit position of a course without interning it
+     *
+     * @param course The course name
+     * @return The bit position of the course, or -1 if it is unknown
+     */
+    public synchronized int bitOf(String course) {
+        Integer bit = bits.get(StudentDTB.normalizeKey(course));
+        return bit == null ? -1 : bit;
+    }
+
+    /**
+     * Gets the course name stored at a bit position
+     *
+     * @param bit The bit position
+     * @return The interned course name
+     */
+    public synchronized String name(int bit) {
+        return names[bit];
+    }
+
+    /**
+     * Gets the number of interned courses
+     *
+     * @return The number of courses
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * L02 - Student Management System
+ *
+ * DatabaseMetrics holds the metrics of the operations of one StudentDTB:
+ * findBy and sort per criteria, and adding and deleting students, one by one
+ * or in batches, along with the statistics of its findBy result cache. They
+ * can be read from code, registered as JMX MBeans named
+ * <pre>
+ * ce190770_l02:type=StudentDTB,name=&lt;database&gt;,operation=findBy.BY_NAME
+ * </pre>
+ * and printed as a text table now or every few seconds. Recording costs two
+ * clock reads per call, which matters for the fastest lookups, so it can be
+ * switched off.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class DatabaseMetrics {
+
+    // Domain of the MBean names
+    private static final String DOMAIN = "ce190770_l02";
+    // Returned by start() while recording is off
+    static final long OFF = Long.MIN_VALUE;
+
+    // Whether calls are recorded
+    private volatile boolean enabled = true;
+
+    // Metrics of findBy and sort per criteria
+    private final Map<StudentDTB.SortType, OperationMetrics> finds = new EnumMap<>(StudentDTB.SortType.class);
+    private final Map<StudentDTB.SortType, OperationMetrics> sorts = new EnumMap<>(StudentDTB.SortType.class);
+    // Metrics of adding and deleting students
+    private final OperationMetrics add = new OperationMetrics("add");
+    private final OperationMetrics addAll = new OperationMetrics("addAll");
+    private final OperationMetrics delete = new OperationMetrics("deleteStudent");
+    private final OperationMetrics deleteAll = new OperationMetrics("deleteAll");
+    // Every operation, in the order of the text dump
+    private final List<OperationMetrics> all = new ArrayList<>();
+    // Cache of findBy results, registered and printed after the operations
+    private final QueryCache queryCache;
+    // Names the MBeans were registered under, empty if not registered
+    private final List<ObjectName> registered = new ArrayList<>();
+    // Thread printing the text dump, or null if not started
+    private ScheduledExecutorService dumper;
+
+    /**
+     * Constructor to create the metrics of a database
+     *
+     * @param queryCache The findBy result cache of the database
+     */
+    DatabaseMetrics(QueryCache queryCache) {
+        this.queryCache = queryCache;
+        for (StudentDTB.SortType sortType : StudentDTB.SortType.values()) {
+            finds.put(sortType, new OperationMetrics("findBy." + sortType));
+        }
+        for (StudentDTB.SortType sortType : StudentDTB.SortType.values()) {
+            sorts.put(sortType, new OperationMetrics("sort." + sortType));
+        }
+        all.addAll(finds.values());
+        all.addAll(sorts.values());
+        Collections.addAll(all, add, addAll, delete, deleteAll);
+    }
+
+    /**
+     * Switches recording on or off. Metrics recorded so far are kept.
+     *
+     * @param enabled true to record calls, false to stop
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Tells whether calls are recorded
+     *
+     * @return true if calls are recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads the clock at the start of a call, only while recording is on
+     *
+     * @return System.nanoTime(), or OFF if recording is off
+     */
+    long start() {
+        return enabled ? System.nanoTime() : OFF;
+    }
+
+    /**
+     * Gets the metrics of findBy for a criteria
+     *
+     * @param sortType The criteria searched by
+     * @return The metrics
+     */
+    public OperationMetrics find(StudentDTB.SortType sortType) {
+        return finds.get(sortType);
+    }
+
+    /**
+     * Gets the metrics of sort for a criteria
+     *
+     * @param sortType The criteria sorted by
+     * @return The metrics
+     */
+    public OperationMetrics sort(StudentDTB.SortType sortType) {
+        return sorts.get(sortType);
+    }
+
+    /**
+     * Gets the metrics of adding one student
+     *
+     * @return The metrics
+     */
+    public OperationMetrics add() {
+        return add;
+    }
+
+    /**
+     * Gets the metrics of adding a batch of students
+     *
+     * @return The metrics
+     */
+    public OperationMetrics addAll() {
+        return addAll;
+    }
+
+    /**
+     * Gets the metrics of deleting one student
+     *
+     * @return The metrics
+     */
+    public OperationMetrics delete() {
+        return delete;
+    }
+
+    /**
+     * Gets the metrics of deleting a batch of students
+     *
+     * @return The metrics
+     */
+    public OperationMetrics deleteAll() {
+        return deleteAll;
+    }
+
+    /**
+     * Gets the metrics of every operation
+     *
+     * @return Read-only list of the metrics, in the order of the text dump
+     */
+    public List<OperationMetrics> all() {
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Forgets everything recorded so far by every operation and the counters
+     * of the query cache
+     */
+    public void reset() {
+        for (OperationMetrics operation : all) {
+            operation.reset();
+        }
+        queryCache.reset();
+    }
+
+    /**
+     * Registers one MBean per operation, and one for the query cache named
+     * operation=findBy.cache, with the platform MBean server
+     *
+     * @param database Name of the database in the MBean names
+     * @throws JMException if the name is not valid or already registered,
+     * then nothing stays registered
+     * @throws IllegalStateException if the metrics are already registered
+     */
+    public synchronized void register(String database) throws JMException {
+        if (!registered.isEmpty()) {
+            throw new IllegalStateException("Metrics are already registered.");
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationMetrics operation : all) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=StudentDTB,name=" + ObjectName.quote(database)
+                        + ",operation=" + operation.getName());
+                server.registerMBean(operation, name);
+                registered.add(name);
+            }
+            ObjectName name = new ObjectName(DOMAIN + ":type=StudentDTB,name=" + ObjectName.quote(database)
+                    + ",operation=findBy.cache");
+            server.registerMBean(queryCache, name);
+            registered.add(name);
+        } catch (JMException e) {
+            // Leave nothing half registered
+            unregister();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the MBeans registered by register(), if any
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already removed by someone else, nothing left to do
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Prints the metrics of every operation that ran as a text table,
+     * followed by the query cache statistics once a search was cached
+     *
+     * @param out The stream to print to
+     */
+    public void dump(PrintStream out) {
+        StringBuilder text = new StringBuilder();
+        text.append("StudentDTB metrics at ").append(new Date()).append(System.lineSeparator());
+        text.append(String.format("%-20s %10s %10s %10s %10s %10s %10s %10s %12s %12s", "operation", "count",
+                "mean(us)", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)", "scanned", "matched"));
+        text.append(System.lineSeparator());
+        for (OperationMetrics operation : all) {
+            if (operation.getCount() > 0) {
+                text.append(operation).append(System.lineSeparator());
+            }
+        }
+        if (queryCache.getHits() + queryCache.getMisses() > 0) {
+            text.append(String.format("%-20s %10s %10s %10s %10s %10s %10s %10s", "cache", "hits", "misses",
+                    "hit ratio", "evictions", "invalid.", "size", "capacity"));
+            text.append(System.lineSeparator()).append(queryCache).append(System.lineSeparator());
+        }
+        // One print, so the table is not interleaved with other output
+        out.print(text);
+        out.flush();
+    }
+
+    /**
+     * Prints the text table at a fixed rate on a background thread, until
+     * stopDump() is called. Starting again replaces the previous schedule.
+     *
+     * @param period Time between two tables
+     * @param unit Unit of the period
+     * @param out The stream to print to
+     * @throws IllegalArgumentException if period is not positive
+     */
+    public synchronized void startDump(long period, TimeUnit unit, PrintStream out) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Dump period must be positive.");
+        }
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "student-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(out), period, period, unit);
+    }
+
+    /**
+     * Stops printing the text table, if it was started
+     */
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
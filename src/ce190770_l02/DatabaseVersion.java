@@ -0,0 +1,162 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * L02 - Student Management System
+ *
+ * DatabaseVersion is a point-in-time version of a StudentDTB, taken with
+ * StudentDTB.snapshot(). It holds read-only copies of the students as they
+ * were when the version was taken, so reports and exports can read it for as
+ * long as they like without locking and without seeing later changes, while
+ * the database keeps accepting them. A student that does not change is
+ * copied once and shared by every later version. Nothing has to be released:
+ * the database keeps its latest version until memory runs short, and a
+ * version and the copies only it uses are reclaimed by the garbage collector
+ * once no reader holds it. While the database has not changed, the ID and
+ * name orders are taken from its maintained views instead of sorted.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class DatabaseVersion {
+
+    // Number of changes the database had committed when this version was taken
+    private final long version;
+    // Read-only copies of the students, in the order report() had: the
+    // order of the last sort, students added since at the end
+    private final List<Student> students;
+    // Database the version was taken from, or null if it keeps no views
+    private final StudentDTB source;
+    // Normalized ID -> student, built on the first lookup
+    private volatile Map<String, Student> byId;
+    // Students in ID and in name order, built on first use
+    private volatile List<Student> idOrder;
+    private volatile List<Student> nameOrder;
+
+    /**
+     * Constructor to create a version
+     *
+     * @param version Number of changes committed when the version was taken
+     * @param students Read-only copies of the students, in the order
+     * report() had
+     * @param source The database whose sorted views the version can reuse,
+     * or null to always sort
+     */
+    DatabaseVersion(long version, List<Student> students, StudentDTB source) {
+        this.version = version;
+        this.students = Collections.unmodifiableList(students);
+        this.source = source;
+    }
+
+    /**
+     * Gets the version number: the number of changes the database had
+     * committed when this version was taken
+     *
+     * @return The version number, larger for later versions
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets all students of this version
+     *
+     * @return Read-only list of read-only students, in the order report()
+     * had when the version was taken: the order of the last sort, with the
+     * students added after it at the end
+     */
+    public List<Student> students() {
+        return students;
+    }
+
+    /**
+     * Gets the number of students in this version
+     *
+     * @return The number of students
+     */
+    public int size() {
+        return students.size();
+    }
+
+    /**
+     * Finds a student of this version by exact ID (case-insensitive)
+     *
+     * @param id The ID to look up
+     * @return The read-only student, or null if no student had this ID
+     */
+    public Student findById(String id) {
+        Map<String, Student> index = byId;
+        if (index == null) {
+            // Build the index once; racing readers build equal copies
+            index = new HashMap<>(students.size() * 4 / 3 + 1);
+            for (Student student : students) {
+                index.put(StudentDTB.normalizeId(student.getId()), student);
+            }
+            byId = index;
+        }
+        return index.get(StudentDTB.normalizeId(id));
+    }
+
+    /**
+     * Gets the students of this version sorted by a criteria, leaving the
+     * version itself in its order
+     *
+     * @param sortType The criteria to sort by
+     * @return Read-only sorted list of read-only students
+     */
+    public List<Student> sortedView(StudentDTB.SortType sortType) {
+        switch (sortType) {
+            case BY_ID:
+                List<Student> byIdOrder = idOrder;
+                if (byIdOrder == null) {
+                    // Racing readers build equal lists
+                    byIdOrder = ordered(sortType);
+                    idOrder = byIdOrder;
+                }
+                return byIdOrder;
+            case BY_NAME:
+                List<Student> byNameOrder = nameOrder;
+                if (byNameOrder == null) {
+                    byNameOrder = ordered(sortType);
+                    nameOrder = byNameOrder;
+                }
+                return byNameOrder;
+            default:
+                return sort(sortType);
+        }
+    }
+
+    /**
+     * Gets the students in ID or name order, from the database's views if it
+     * did not change since this version was taken
+     *
+     * @param sortType BY_ID or BY_NAME
+     * @return Read-only sorted list of read-only students
+     */
+    private List<Student> ordered(StudentDTB.SortType sortType) {
+        List<Student> view = source == null ? null : source.frozenView(sortType, version);
+        return view != null ? view : sort(sortType);
+    }
+
+    /**
+     * Sorts a copy of the students of this version
+     *
+     * @param sortType The criteria to sort by
+     * @return Read-only sorted list of read-only students
+     */
+    private List<Student> sort(StudentDTB.SortType sortType) {
+        // Sort a copy with the same stable engine as the database
+        List<Student> copy = new ArrayList<>(students);
+        StudentSorter.sort(copy, StudentDTB.comparator(sortType));
+        return Collections.unmodifiableList(copy);
+    }
+}
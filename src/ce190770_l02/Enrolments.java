@@ -0,0 +1,578 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * L02 - Student Management System
+ *
+ * Enrolments is the storage behind the semester and course data of a Student.
+ * Hashed keeps the original map of semesters to course sets. Compact keeps
+ * one short code per semester and one bitset of courses per semester over a
+ * CourseDictionary, which needs a small fraction of the memory.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+abstract class Enrolments {
+
+    /**
+     * Adds a course to a semester
+     *
+     * @param semester The semester to add the course to
+     * @param course The course to add
+     * @return true if course was added, false if it was already present
+     */
+    abstract boolean add(String semester, String course);
+
+    /**
+     * Removes a course from a semester, removing the semester when it has no
+     * course left
+     *
+     * @param semester The semester to remove the course from
+     * @param course The course to remove
+     * @return true if course was removed, false if it wasn't found
+     */
+    abstract boolean remove(String semester, String course);
+
+    /**
+     * Removes an entire semester
+     *
+     * @param semester The semester to remove
+     * @return The courses the semester contained, or null if it wasn't found
+     */
+    abstract Set<String> removeSemester(String semester);
+
+    /**
+     * Gets all semesters
+     *
+     * @return New set of all semesters
+     */
+    abstract Set<String> semesters();
+
+    /**
+     * Gets the courses of a semester
+     *
+     * @param semester The semester to get courses for
+     * @return New set of courses, empty if the semester is not found
+     */
+    abstract Set<String> courses(String semester);
+
+    /**
+     * Gets all semester-courses mappings
+     *
+     * @return Read-only copy of all semester-courses mappings
+     */
+    abstract Map<String, Set<String>> asMap();
+
+    /**
+     * Checks if a semester is present (case-insensitive)
+     *
+     * @param semester The semester to look for
+     * @return true if the semester is present
+     */
+    abstract boolean hasSemester(String semester);
+
+    /**
+     * Checks if a course is taken in any semester (case-insensitive)
+     *
+     * @param course The course to look for
+     * @return true if any semester contains the course
+     */
+    abstract boolean hasCourse(String course);
+
+    /**
+     * Checks if a course is taken in a semester (case-insensitive)
+     *
+     * @param semester The semester to look in
+     * @param course The course to look for
+     * @return true if the semester contains the course
+     */
+    abstract boolean takesCourse(String semester, String course);
+
+    /**
+     * Gets the chronological key of the earliest semester
+     *
+     * @return The earliest semester key, or Integer.MAX_VALUE if none
+     */
+    abstract int earliestSemesterKey();
+
+    /**
+     * Gets the smallest course name over all semesters
+     *
+     * @return The smallest course name, or null if there is no course
+     */
+    abstract String minCourse();
+
+    /**
+     * Walks every semester with its courses. The courses may be the live
+     * storage, so only an owner that nothing else changes meanwhile may use
+     * this instead of asMap, e.g. a database loading a snapshot.
+     *
+     * @param action Receives each semester and its courses
+     */
+    void forEachSemester(BiConsumer<String, Collection<String>> action) {
+        asMap().forEach(action);
+    }
+
+    /**
+     * Copies the storage, so the copy can be read while the original keeps
+     * changing
+     *
+     * @return New storage with the same semesters and courses
+     */
+    Enrolments copy() {
+        // Rebuild the enrolments in the map-of-sets layout
+        Enrolments res = new Hashed();
+        for (Map.Entry<String, Set<String>> entry : asMap().entrySet()) {
+            for (String course : entry.getValue()) {
+                res.add(entry.getKey(), course);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Map-of-sets storage, the original Student layout
+     */
+    static final class Hashed extends Enrolments {
+
+        // Key: semester (e.g., "SP25"), Value: Set of courses for that semester
+        private final Map<String, Set<String>> semesterCourses = new HashMap<>();
+
+        @Override
+        boolean add(String semester, String course) {
+            // Get or create course set for the semester, then add the course
+            return semesterCourses.computeIfAbsent(semester, k -> new HashSet<>()).add(course);
+        }
+
+        @Override
+        boolean remove(String semester, String course) {
+            // Get courses for the semester
+            Set<String> courses = semesterCourses.get(semester);
+            // If semester exists and course is removed, return true
+            if (courses != null && courses.remove(course)) {
+                // If semester has no more courses, remove the semester
+                if (courses.isEmpty()) {
+                    semesterCourses.remove(semester);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        Set<String> removeSemester(String semester) {
+            return semesterCourses.remove(semester);
+        }
+
+        @Override
+        Set<String> semesters() {
+            return new HashSet<>(semesterCourses.keySet());
+        }
+
+        @Override
+        Set<String> courses(String semester) {
+            // Copy, so the caller never sees later changes
+            Set<String> courses = semesterCourses.get(semester);
+            return courses == null ? new HashSet<>() : new HashSet<>(courses);
+        }
+
+        @Override
+        void forEachSemester(BiConsumer<String, Collection<String>> action) {
+            // Hand out the sets themselves, nothing is copied
+            semesterCourses.forEach(action);
+        }
+
+        @Override
+        Map<String, Set<String>> asMap() {
+            // Copy every course set, so the caller never sees later changes
+            Map<String, Set<String>> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, Set<String>> entry : semesterCourses.entrySet()) {
+                copy.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+
+        @Override
+        boolean hasSemester(String semester) {
+            // Compare against every semester key
+            for (String s : semesterCourses.keySet()) {
+                if (s.equalsIgnoreCase(semester)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean hasCourse(String course) {
+            // Look through the courses of every semester
+            for (Set<String> courses : semesterCourses.values()) {
+                if (containsIgnoreCase(courses, course)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean takesCourse(String semester, String course) {
+            // Find the semester entry regardless of letter case
+            for (Map.Entry<String, Set<String>> entry : semesterCourses.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(semester) && containsIgnoreCase(entry.getValue(), course)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int earliestSemesterKey() {
+            int earliest = Integer.MAX_VALUE;
+            for (String semester : semesterCourses.keySet()) {
+                earliest = Math.min(earliest, StudentDTB.semesterKey(semester));
+            }
+            return earliest;
+        }
+
+        @Override
+        String minCourse() {
+            String smallest = null;
+            for (Set<String> courses : semesterCourses.values()) {
+                for (String course : courses) {
+                    if (smallest == null || course.compareTo(smallest) < 0) {
+                        smallest = course;
+                    }
+                }
+            }
+            return smallest;
+        }
+
+        /**
+         * Checks if a set contains a course (case-insensitive)
+         *
+         * @param courses The set to look in
+         * @param course The course to look for
+         * @return true if the set contains the course
+         */
+        private static boolean containsIgnoreCase(Set<String> courses, String course) {
+            for (String c : courses) {
+                if (c.equalsIgnoreCase(course)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Compact storage: one long per semester, in chronological order, holding
+     * the semester code in its top 16 bits and a bitset of courses over a
+     * shared CourseDictionary in the rest. Semesters must follow the SP/SU/FA
+     * + 2-digit year pattern. The array is sized to the semesters in use, so
+     * a student with three semesters costs one small object and one array of
+     * three longs.
+     */
+    static final class Compact extends Enrolments {
+
+        // Season codes indexed by season order (1 = SP, 2 = SU, 3 = FA)
+        private static final String[] SEASONS = {null, "SP", "SU", "FA"};
+        // Low bits of an entry that hold the course bitset
+        private static final int COURSE_BITS = CourseDictionary.MAX_COURSES;
+        private static final long COURSE_MASK = (1L << COURSE_BITS) - 1;
+        // Shared by every student without a semester
+        private static final long[] NONE = new long[0];
+
+        // Dictionary that gives every course its bit
+        private final CourseDictionary dictionary;
+        // Semester code (StudentDTB.semesterKey) and course bitset of every
+        // semester, sorted by code
+        private long[] entries = NONE;
+
+        /**
+         * Constructor to create empty compact storage
+         *
+         * @param dictionary Dictionary that gives every course its bit
+         */
+        Compact(CourseDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Encodes a semester as a small code
+         *
+         * @param semester The semester (e.g. SP25)
+         * @return The semester code, or -1 if the semester does not follow
+         * the SP/SU/FA + 2-digit year pattern
+         */
+        static int encode(String semester) {
+            // Only season code + 2-digit year fits the compact layout
+            if (semester.length() != 4) {
+                return -1;
+            }
+            // Reject unknown seasons and years that are not 2 digits
+            int key = StudentDTB.semesterKey(semester);
+            if (key == Integer.MAX_VALUE || key % 4 == 0) {
+                return -1;
+            }
+            return key;
+        }
+
+        /**
+         * Decodes a semester code back to its text form
+         *
+         * @param code The semester code
+         * @return The semester (e.g. SP25)
+         */
+        static String decode(int code) {
+            // Split the code into year and season order
+            int year = code / 4;
+            return SEASONS[code % 4] + (char) ('0' + year / 10) + (char) ('0' + year % 10);
+        }
+
+        /**
+         * Encodes a semester, rejecting those that do not fit the layout
+         *
+         * @param semester The semester to encode
+         * @return The semester code
+         * @throws IllegalArgumentException if the semester does not fit
+         */
+        private static int encodeOrFail(String semester) {
+            int code = encode(semester);
+            if (code < 0) {
+                throw new IllegalArgumentException("Semester must be a season code followed by 2 digits of year (e.g. SP25).");
+            }
+            return code;
+        }
+
+        /**
+         * Gets the semester code of an entry
+         *
+         * @param entry The entry
+         * @return The semester code
+         */
+        private static int code(long entry) {
+            return (int) (entry >>> COURSE_BITS);
+        }
+
+        /**
+         * Gets the course bitset of an entry
+         *
+         * @param entry The entry
+         * @return The course bitset
+         */
+        private static long mask(long entry) {
+            return entry & COURSE_MASK;
+        }
+
+        /**
+         * Finds the position of a semester code
+         *
+         * @param code The semester code
+         * @return The position, or (-(insertion point) - 1) if not present
+         */
+        private int indexOf(int code) {
+            // Binary search on the codes; at most a few dozen entries
+            int low = 0;
+            int high = entries.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midCode = code(entries[mid]);
+                if (midCode < code) {
+                    low = mid + 1;
+                } else if (midCode > code) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        @Override
+        Enrolments copy() {
+            // Same dictionary, own array
+            Compact res = new Compact(dictionary);
+            res.entries = entries.length == 0 ? NONE : entries.clone();
+            return res;
+        }
+
+        /**
+         * Removes the semester at a position
+         *
+         * @param index The position to remove
+         */
+        private void removeAt(int index) {
+            // Keep the array sized to the semesters in use
+            if (entries.length == 1) {
+                entries = NONE;
+                return;
+            }
+            long[] res = new long[entries.length - 1];
+            System.arraycopy(entries, 0, res, 0, index);
+            System.arraycopy(entries, index + 1, res, index, res.length - index);
+            entries = res;
+        }
+
+        /**
+         * Converts a course bitset to a set of course names
+         *
+         * @param mask The course bitset
+         * @return New set of the course names
+         */
+        private Set<String> names(long mask) {
+            Set<String> res = new HashSet<>();
+            // Visit every set bit from the lowest one
+            while (mask != 0) {
+                res.add(dictionary.name(Long.numberOfTrailingZeros(mask)));
+                mask &= mask - 1;
+            }
+            return res;
+        }
+
+        @Override
+        boolean add(String semester, String course) {
+            // Encode the semester and the course
+            int code = encodeOrFail(semester);
+            long bit = 1L << dictionary.intern(course);
+            int index = indexOf(code);
+            // Existing semester: set the course bit
+            if (index >= 0) {
+                if ((entries[index] & bit) != 0) {
+                    return false;
+                }
+                entries[index] |= bit;
+                return true;
+            }
+            // New semester: insert it at its chronological position
+            index = -index - 1;
+            long[] res = new long[entries.length + 1];
+            System.arraycopy(entries, 0, res, 0, index);
+            System.arraycopy(entries, index, res, index + 1, entries.length - index);
+            res[index] = (long) code << COURSE_BITS | bit;
+            entries = res;
+            return true;
+        }
+
+        @Override
+        boolean remove(String semester, String course) {
+            // Unknown semesters and courses cannot be removed
+            int code = encode(semester);
+            int bit = dictionary.bitOf(course);
+            int index = code < 0 ? -1 : indexOf(code);
+            if (index < 0 || bit < 0 || (entries[index] & (1L << bit)) == 0) {
+                return false;
+            }
+            // Clear the course bit and drop the semester when it is empty
+            entries[index] &= ~(1L << bit);
+            if (mask(entries[index]) == 0) {
+                removeAt(index);
+            }
+            return true;
+        }
+
+        @Override
+        Set<String> removeSemester(String semester) {
+            // Unknown semesters cannot be removed
+            int code = encode(semester);
+            int index = code < 0 ? -1 : indexOf(code);
+            if (index < 0) {
+                return null;
+            }
+            // Remember the courses, then drop the semester
+            Set<String> removed = names(mask(entries[index]));
+            removeAt(index);
+            return removed;
+        }
+
+        @Override
+        Set<String> semesters() {
+            Set<String> res = new HashSet<>();
+            for (long entry : entries) {
+                res.add(decode(code(entry)));
+            }
+            return res;
+        }
+
+        @Override
+        Set<String> courses(String semester) {
+            int code = encode(semester);
+            int index = code < 0 ? -1 : indexOf(code);
+            return index < 0 ? new HashSet<>() : names(mask(entries[index]));
+        }
+
+        @Override
+        Map<String, Set<String>> asMap() {
+            // Build a read-only copy, there is no map to hand out
+            Map<String, Set<String>> res = new LinkedHashMap<>();
+            for (long entry : entries) {
+                res.put(decode(code(entry)), Collections.unmodifiableSet(names(mask(entry))));
+            }
+            return Collections.unmodifiableMap(res);
+        }
+
+        @Override
+        boolean hasSemester(String semester) {
+            int code = encode(semester);
+            return code >= 0 && indexOf(code) >= 0;
+        }
+
+        @Override
+        boolean hasCourse(String course) {
+            int bit = dictionary.bitOf(course);
+            if (bit < 0) {
+                return false;
+            }
+            // Check the course bit of every semester
+            for (long entry : entries) {
+                if ((entry & (1L << bit)) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean takesCourse(String semester, String course) {
+            int code = encode(semester);
+            int bit = dictionary.bitOf(course);
+            int index = code < 0 || bit < 0 ? -1 : indexOf(code);
+            return index >= 0 && (entries[index] & (1L << bit)) != 0;
+        }
+
+        @Override
+        int earliestSemesterKey() {
+            // Entries are kept in ascending order of semester code
+            return entries.length == 0 ? Integer.MAX_VALUE : code(entries[0]);
+        }
+
+        @Override
+        String minCourse() {
+            // Combine the courses of all semesters, then compare their names
+            long all = 0;
+            for (long entry : entries) {
+                all |= mask(entry);
+            }
+            String smallest = null;
+            while (all != 0) {
+                String course = dictionary.name(Long.numberOfTrailingZeros(all));
+                if (smallest == null || course.compareTo(smallest) < 0) {
+                    smallest = course;
+                }
+                all &= all - 1;
+            }
+            return smallest;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * L02 - Student Management System
+ *
+ * ImportPipeline imports the same CSV files as StudentImporter, split into
+ * three stages so parsing and checking do not hold up the inserts:
+ * <pre>
+ * reader thread --chunks--&gt; worker pool (parse + check) --in order--&gt; committer
+ * </pre>
+ * The reader cuts the file into chunks of lines and hands each one to the
+ * worker pool. The calling thread is the single committer: it takes the
+ * checked chunks in file order and applies them to the database through a
+ * StudentImporter, so the database is only touched from one thread and the
+ * result is the same as a sequential import. The queue of chunks in flight is
+ * bounded, so a slow committer makes the reader wait instead of reading the
+ * whole file into memory.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class ImportPipeline {
+
+    // Default number of lines in one chunk
+    public static final int DEFAULT_CHUNK_LINES = 4096;
+    // Marks the end of the file in the queue of chunks
+    private static final CompletableFuture<Chunk> END = CompletableFuture.completedFuture(null);
+
+    // Database the students are imported into
+    private final StudentBackend dtb;
+    // Number of threads that parse and check lines
+    private final int workers;
+    // Number of lines in one chunk
+    private int chunkLines = DEFAULT_CHUNK_LINES;
+    // Number of new students added to the database at once
+    private int batchSize = StudentImporter.DEFAULT_BATCH_SIZE;
+
+    /**
+     * Constructor to create a pipeline with one worker per processor
+     *
+     * @param dtb The database to import into
+     */
+    public ImportPipeline(StudentBackend dtb) {
+        this(dtb, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor to create a pipeline with a fixed number of workers
+     *
+     * @param dtb The database to import into
+     * @param workers Number of threads that parse and check lines
+     * @throws IllegalArgumentException if workers is less than 1
+     */
+    public ImportPipeline(StudentBackend dtb, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers must be at least 1.");
+        }
+        this.dtb = dtb;
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the number of lines in one chunk
+     *
+     * @param chunkLines The chunk size in lines
+     * @throws IllegalArgumentException if chunkLines is less than 1
+     */
+    public void setChunkLines(int chunkLines) {
+        if (chunkLines < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1 line.");
+        }
+        this.chunkLines = chunkLines;
+    }
+
+    /**
+     * Sets the number of new students added to the database at once
+     *
+     * @param batchSize The batch size
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a UTF-8 CSV file of id,name,semester,course lines
+     *
+     * @param file The CSV file
+     * @return What was imported and which lines were rejected
+     * @throws IOException if the file cannot be read or a batch cannot be
+     * synced to the write-ahead log
+     */
+    public StudentImporter.Report importFile(Path file) throws IOException {
+        // Open the file here so a missing file fails before any thread starts
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        // Room for two chunks per worker keeps every worker busy
+        BlockingQueue<CompletableFuture<Chunk>> inFlight = new ArrayBlockingQueue<>(2 * workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "student-import-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread readerThread = new Thread(() -> read(reader, inFlight, pool), "student-import-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        try {
+            return commit(inFlight);
+        } finally {
+            // Stop the other stages if the committer gave up early
+            readerThread.interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Body of the reader thread: cuts the file into chunks and hands each one
+     * to the worker pool, in file order, then closes the file
+     *
+     * @param reader The file to read
+     * @param inFlight Receives the chunks being checked, in file order
+     * @param pool The worker pool
+     */
+    private void read(BufferedReader reader, BlockingQueue<CompletableFuture<Chunk>> inFlight,
+            ExecutorService pool) {
+        try (BufferedReader in = reader) {
+            int lineNumber = 0;
+            while (true) {
+                // Read the next chunk of lines
+                String[] lines = new String[chunkLines];
+                int count = 0;
+                String line;
+                while (count < chunkLines && (line = in.readLine()) != null) {
+                    lines[count++] = line;
+                }
+                if (count == 0) {
+                    break;
+                }
+                // Check the chunk on a worker, blocking while too many are in flight
+                Chunk chunk = new Chunk(lineNumber + 1, lines, count);
+                inFlight.put(CompletableFuture.supplyAsync(() -> chunk.check(), pool));
+                lineNumber += count;
+            }
+            inFlight.put(END);
+        } catch (IOException e) {
+            // Pass the read error on to the committer
+            CompletableFuture<Chunk> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                inFlight.put(failed);
+            } catch (InterruptedException stopped) {
+                // The committer stopped, nobody needs the error
+            }
+        } catch (InterruptedException e) {
+            // The committer stopped, nobody needs more chunks
+        }
+    }
+
+    /**
+     * Applies the checked chunks to the database in file order, on the
+     * calling thread
+     *
+     * @param inFlight The chunks being checked, in file order
+     * @return What was imported and which lines were rejected
+     * @throws IOException if the file cannot be read or a batch cannot be
+     * synced
+     */
+    private StudentImporter.Report commit(BlockingQueue<CompletableFuture<Chunk>> inFlight) throws IOException {
+        StudentImporter importer = new StudentImporter(dtb);
+        importer.setBatchSize(batchSize);
+        StudentImporter.Report report = new StudentImporter.Report();
+        try {
+            while (true) {
+                // Wait for the next chunk in file order
+                Chunk chunk = inFlight.take().get();
+                if (chunk == null) {
+                    break;
+                }
+                // Apply its lines in order, the same way StudentImporter does
+                for (int i = 0; i < chunk.count; i++) {
+                    report.lines++;
+                    if (chunk.errors[i] != null) {
+                        report.reject(chunk.firstLine + i, chunk.lines[i], chunk.errors[i]);
+                    } else if (chunk.rows[i] != null) {
+                        try {
+                            importer.apply(chunk.rows[i], report);
+                        } catch (IllegalArgumentException e) {
+                            report.reject(chunk.firstLine + i, chunk.lines[i], e.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing.", e);
+        } catch (ExecutionException e) {
+            // A read error or a bug in a worker
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        // Add the last, partly filled batch
+        importer.finish(report);
+        return report;
+    }
+
+    /**
+     * A run of lines from the file and the result of checking them
+     */
+    private static final class Chunk {
+
+        // Line number of the first line, starting at 1
+        final int firstLine;
+        // The lines, only the first count are used
+        final String[] lines;
+        final int count;
+        // Per line: the checked fields, or null if blank or rejected
+        final StudentImporter.Row[] rows;
+        // Per line: why it was rejected, or null
+        final String[] errors;
+
+        /**
+         * Constructor to create a chunk of lines
+         *
+         * @param firstLine Line number of the first line
+         * @param lines The lines
+         * @param count Number of lines used
+         */
+        Chunk(int firstLine, String[] lines, int count) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+            this.count = count;
+            this.rows = new StudentImporter.Row[count];
+            this.errors = new String[count];
+        }
+
+        /**
+         * Parses and checks every line, on a worker thread
+         *
+         * @return This chunk
+         */
+        Chunk check() {
+            for (int i = 0; i < count; i++) {
+                try {
+                    rows[i] = StudentImporter.parse(lines[i], firstLine + i);
+                } catch (IllegalArgumentException e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+            return this;
+        }
+    }
+}
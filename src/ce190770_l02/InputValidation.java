@@ -1,6 +1,7 @@
 package ce190770_l02;
 
 import java.util.Scanner;
+import java.util.regex.Pattern;
 
 /**
  * L02 - Student Management System
@@ -13,6 +14,8 @@ public class InputValidation {
 
     // Create a static Scanner object to read user input throughout the program
     public static Scanner sc = new Scanner(System.in);
+    // Runs of spaces, compiled once instead of on every replaceAll call
+    private static final Pattern SPACES = Pattern.compile(" +");
 
     /**
      * Gets and validates integer input from user
@@ -127,7 +130,7 @@ public class InputValidation {
         // Loop until valid input or empty input is received
         while (true) {
             // Read input and remove all whitespace
-            String input = sc.nextLine().trim().replaceAll(" +", "");
+            String input = removeSpaces(sc.nextLine().trim());
             // Return null for empty input
             if (input.isEmpty()) {
                 return null;
@@ -179,7 +182,7 @@ public class InputValidation {
         // Continuous loop until valid input is received
         while (true) {
             // Reads input, trims whitespace, and normalizes spaces
-            String in = sc.nextLine().trim().replaceAll(" +", " ");
+            String in = StudentValidator.normalizeName(sc.nextLine());
             // Checks if input is not empty
             if (!in.isEmpty()) {
                 // Returns valid input
@@ -200,7 +203,7 @@ public class InputValidation {
     public static String getSingleStringNonEmpty() throws Exception {
         // Continuous loop until valid input is received
         // Reads input, trims whitespace, and normalizes spaces
-        String in = sc.nextLine().trim().replaceAll(" +", "");
+        String in = removeSpaces(sc.nextLine().trim());
         // Checks if input is not empty
         if (!in.isEmpty()) {
             // Returns valid input
@@ -223,9 +226,9 @@ public class InputValidation {
             // Get non-empty string input first
             in = getMultiStringNonEmpty();
             // Keep prompting until input contains only letters and spaces
-            while (!in.matches("[a-zA-Z ]+")) {
+            if (StudentValidator.checkName(in) != null) {
                 // Print error if input is not valid
-                throw new Exception("Please only enter letters.");
+                throw new Exception(StudentValidator.NAME_LETTERS);
             }
         } catch (Exception e) {
             // Print error message if exception occurs
@@ -266,4 +269,15 @@ public class InputValidation {
             }
         }
     }
+
+    /**
+     * Removes every space from a string
+     *
+     * @param in The string
+     * @return The string without spaces, the same instance if it has none
+     */
+    private static String removeSpaces(String in) {
+        // Skip the pattern entirely for the common single-word input
+        return in.indexOf(' ') < 0 ? in : SPACES.matcher(in).replaceAll("");
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * L02 - Student Management System
+ *
+ * LatencyHistogram counts durations in nanoseconds in buckets that grow with
+ * the value, like an HDR histogram: every power of two is split into 16
+ * buckets, so a percentile is off by at most 1/16 of its value, from one
+ * nanosecond up to about 18 minutes, in under 600 counters. Recording only
+ * increments counters in place, so it allocates nothing and takes no lock,
+ * and any number of threads can record at once. Reads run while threads are
+ * recording, so they may miss the values recorded meanwhile.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class LatencyHistogram {
+
+    // Each power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Largest value kept apart, about 18 minutes; larger values count as it
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    // Number of buckets up to MAX_VALUE
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    // Number of values per bucket
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    // Sum of the values and the largest one; the count is the sum of the
+    // buckets, which saves recording one more counter
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration
+     *
+     * @param nanos The duration in nanoseconds, negative counts as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(Math.min(value, MAX_VALUE)));
+        sum.addAndGet(value);
+        // Raise the maximum unless another thread raised it further
+        long largest;
+        while (value > (largest = max.get()) && !max.compareAndSet(largest, value)) {
+            // Another thread changed it first, compare again
+        }
+    }
+
+    /**
+     * Gets the number of recorded durations
+     *
+     * @return The number of durations
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the mean of the recorded durations
+     *
+     * @return The mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Gets the largest recorded duration
+     *
+     * @return The largest duration in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the duration below which a share of the recorded durations fall
+     *
+     * @param percentile The share in percent, e.g. 99.9
+     * @return The upper bound of the bucket holding that percentile in
+     * nanoseconds, never above the largest duration; 0 if nothing was
+     * recorded
+     * @throws IllegalArgumentException if percentile is not between 0 and
+     * 100
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        // Rank of the value wanted, at least the first value
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every recorded duration. Values recorded during the reset may
+     * be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Gets the bucket of a value
+     *
+     * @param value The value, between 0 and MAX_VALUE
+     * @return The bucket index
+     */
+    private static int index(long value) {
+        // Values below SUB_BUCKETS get a bucket each
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Otherwise the power of two, then the top SUB_BITS bits below it
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the largest value of a bucket
+     *
+     * @param index The bucket index
+     * @return The largest value that falls into the bucket
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        // The power of two, plus the sub-buckets below, minus one
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
@@ -5,10 +5,16 @@
  */
 package ce190770_l02;
 
+// Import FileChannel for writing a report to a file
+import java.nio.channels.FileChannel;
+// Import Paths for the CSV file to import
+import java.nio.file.Paths;
+// Import StandardOpenOption for creating or replacing the report file
+import java.nio.file.StandardOpenOption;
+// Import Iterator for reading results one page at a time
+import java.util.Iterator;
 // Import necessary Java utility classes for collections
 import java.util.List;
-// Import Set class for storing unique elements
-import java.util.Set;
 // Import logging level constants for configuration
 import java.util.logging.Level;
 // Import Logger class for application logging
@@ -25,13 +31,37 @@ import java.util.logging.Logger;
  */
 public class Menu {
 
-    // Instance of StudentDTB to manage student records
-    private final StudentDTB dtb = new StudentDTB();
+    // Number of students shown in one page of a table
+    private static final int PAGE_SIZE = 20;
+
+    // Database backend to manage student records
+    private final StudentBackend dtb;
+    // Renders every student table shown on the console
+    private final ReportRenderer console = ReportRenderer.toConsole();
     // Counter to track number of students in database
     private int dtbSize = 0;
     // Test Student tracking flag to ensure test data is only added once
     private boolean testStudentAdded = false;
 
+    /**
+     * Constructor to create a menu over a new, empty database
+     */
+    public Menu() {
+        this(new StudentDTB());
+    }
+
+    /**
+     * Constructor to create a menu over an existing database, e.g. one loaded
+     * from a snapshot, or over the columnar StudentStore
+     *
+     * @param dtb The database to manage
+     */
+    public Menu(StudentBackend dtb) {
+        // Use the given database and count the students already in it
+        this.dtb = dtb;
+        this.dtbSize = dtb.size();
+    }
+
     /**
      * Main program loop that displays menu and handles user selections
      */
@@ -59,6 +89,10 @@ public class Menu {
         System.out.println("3. Update/Delete Student");
         // Print option 4 for displaying all students
         System.out.println("4. Report");
+        // Print option 5 for importing students from a CSV file
+        System.out.println("5. Import Students from CSV");
+        // Print option 6 for writing the report to a file
+        System.out.println("6. Export Report to File");
         
         // Print option 5 for sorting students
 //        System.out.println("5. Sort");
@@ -76,8 +110,8 @@ public class Menu {
         try {
             // Prompt for user selection with message
             System.out.print("Please select: ");
-            // Get user input within valid range from -1 to 5
-            int selection = InputValidation.getIntInputLimit(-1, 4);
+            // Get user input within valid range from -1 to 6
+            int selection = InputValidation.getIntInputLimit(-1, 6);
             // Process user selection using switch statement
             switch (selection) {
                 case 1:
@@ -96,6 +130,14 @@ public class Menu {
                     // Display all students when option 4 is selected
                     report();
                     break;
+                case 5:
+                    // Import students from a CSV file when option 5 is selected
+                    importStudents();
+                    break;
+                case 6:
+                    // Write the report to a file when option 6 is selected
+                    exportReport();
+                    break;
                     
 //                case 5:
 //                    // Sort students when option 5 is selected
@@ -110,6 +152,8 @@ public class Menu {
                     // Exit program when option 0 is selected
                     System.exit(0);
             }
+            // Make the changes of this action durable before showing the menu
+            dtb.sync();
         } catch (Exception e) {
             // Display error message if exception occurs
             System.err.println(e.getMessage());
@@ -175,8 +219,12 @@ public class Menu {
             // Add semesters and courses to the student
             addSemesterAndCourses(student);
 
-            // Add completed student record to database
-            dtb.add(student);
+            // Add completed student record to database; the ID may have been
+            // taken meanwhile, e.g. through the HTTP server
+            if (!dtb.add(student)) {
+                System.out.println("------Notify: Student ID already exist in database, if you wish to modify, use function Update/Delete instead.");
+                return;
+            }
             // Increment database size counter
             dtbSize++;
             // Display confirmation message
@@ -271,18 +319,13 @@ public class Menu {
                 // Prompt user for student ID input with example
                 System.out.print("Enter Student's ID (e. g. CE123456): ");
                 // Get non-empty string input and convert to uppercase
-                String id = InputValidation.getSingleStringNonEmpty().toUpperCase();
-
-                // First check if the ID is the correct length
-                if (id.length() != 8) {
-                    // Error if ID isn't exactly 8 characters long
-                    System.err.println("------Error! ID must be 8 characters long (CE123456).");
-                } else if (!id.substring(0, 2).matches("[A-Z]{2}")) {
-                    // Error if first two characters aren't uppercase letters (major code)
-                    System.err.println("------Error! ID must start with major code (CExxxxxx).");
-                } else if (!id.substring(2).matches("[0-9]{6}")) {
-                    // Error if characters 3-8 aren't all digits
-                    System.err.println("------Error! ID must have 6 digits of number after major code (CE123456).");
+                String id = StudentValidator.normalizeCode(InputValidation.getSingleStringNonEmpty());
+
+                // Check the major code and the 6 digits in one scan
+                String error = StudentValidator.checkId(id);
+                if (error != null) {
+                    // Error if the ID does not follow the CE123456 pattern
+                    System.err.println("------Error! " + error);
                 } else {
                     // Return the ID if all validation checks pass
                     return id;
@@ -328,16 +371,13 @@ public class Menu {
                 // Prompt user for semester input with format examples
                 System.out.print("Enter Student's semester, seasons followed by years (e.g. SP25, SU24, FA23): ");
                 // Get non-empty string input and convert to uppercase
-                String semester = InputValidation.getSingleStringNonEmpty().toUpperCase();
-
-                // Series of validation checks for semester format
-                if (semester.length() != 4) {
-                    // Error if semester isn't exactly 4 characters long
-                    System.err.println("------Error! Semester must be 4 characters long (e.g. SP25, SU24, FA23).");
-                } else if (!dtb.getValidSemesters().contains(semester.substring(0, 2))
-                        || !semester.substring(2, 4).matches("[0-9]+")) {
-                    // Error if first 2 characters aren't valid season codes or last 2 aren't digits
-                    System.err.println("------Error! Semester must starts with seasons code followed by years (e.g. SP25, SU24, FA23).");
+                String semester = StudentValidator.normalizeCode(InputValidation.getSingleStringNonEmpty());
+
+                // Check the length, the season code and the year in one scan
+                String error = StudentValidator.checkSemester(semester);
+                if (error != null) {
+                    // Error if the semester does not follow the SP25 pattern
+                    System.err.println("------Error! " + error);
                 } else {
                     // Return the semester if all validation checks pass
                     return semester;
@@ -426,25 +466,25 @@ public class Menu {
                         // For option 1: get ID input from user
                         String id = inID();
                         // Find students matching ID and display results
-                        printTable(dtb.findBy(id, StudentDTB.SortType.BY_ID));
+                        printTable(dtb.find(id, StudentDTB.SortType.BY_ID).iterator());
                         break;
                     case 2:
                         // For option 2: get name input from user
                         String name = inName();
                         // Find students matching name and display results
-                        printTable(dtb.findBy(name, StudentDTB.SortType.BY_NAME));
+                        printTable(dtb.find(name, StudentDTB.SortType.BY_NAME).iterator());
                         break;
                     case 3:
                         // For option 3: get semester input from user
                         String semester = inSemester();
                         // Find students matching semester and display results
-                        printTable(dtb.findBy(semester, StudentDTB.SortType.BY_SEMESTER));
+                        printTable(dtb.find(semester, StudentDTB.SortType.BY_SEMESTER).iterator());
                         break;
                     case 4:
                         // For option 4: get course input from user
                         String course = inCourse();
                         // Find students matching course and display results
-                        printTable(dtb.findBy(course, StudentDTB.SortType.BY_COURSE));
+                        printTable(dtb.find(course, StudentDTB.SortType.BY_COURSE).iterator());
                         break;
                     case 0:
                         // For option 0: exit the find and sort loop
@@ -482,64 +522,8 @@ public class Menu {
             } else {
                 // Display header for student information
                 System.out.println("Student's Current Information:");
-                // Print formatted table header with column names
-                System.out.printf("+-----------+----------------------+------------+------------+%n");
-                System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n", "ID", "Name", "Semester", "Course");
-                System.out.printf("+-----------+----------------------+------------+------------+%n");
-
-                // Access the found student (first match in the list)
-                Student student = foundStudent.get(0);
-                // Get all semesters for the student
-                Set<String> semesters = student.getSemesters();
-
-                // Handle case where student has no semesters
-                if (semesters.isEmpty()) {
-                    // Display student with "None" values for semester and course
-                    System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                            student.getId(), student.getName(), "None", "None");
-                } else {
-                    // Track whether this is the first row (for displaying ID and name only once)
-                    boolean firstRow = true;
-
-                    // Iterate through each semester
-                    for (String semester : semesters) {
-                        // Get courses for the current semester
-                        Set<String> courses = student.getCourses(semester);
-
-                        // Handle case where semester has no courses
-                        if (courses.isEmpty()) {
-                            // Display semester with "None" for course
-                            if (firstRow) {
-                                // First row includes student ID and name
-                                System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                        student.getId(), student.getName(), semester, "None");
-                                // Mark first row as processed
-                                firstRow = false;
-                            } else {
-                                // Subsequent rows leave ID and name cells empty
-                                System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                        "", "", semester, "None");
-                            }
-                        } else {
-                            // Display each course for the current semester
-                            for (String course : courses) {
-                                if (firstRow) {
-                                    // First row includes student ID and name
-                                    System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                            student.getId(), student.getName(), semester, course);
-                                    // Mark first row as processed
-                                    firstRow = false;
-                                } else {
-                                    // Subsequent rows leave ID and name cells empty
-                                    System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                            "", "", semester, course);
-                                }
-                            }
-                        }
-                    }
-                }
-                // Print table footer/separator line
-                System.out.printf("+-----------+----------------------+------------+------------+%n");
+                // Display the student in the same table as every report
+                printTable(foundStudent);
 
                 // Label for outer loop to allow breaking out from nested switch
                 OUTER:
@@ -811,73 +795,60 @@ public class Menu {
      * @param lst List of students to display
      */
     public void printTable(List<Student> lst) {
-        // Check if the list is empty before attempting to display
-        if (lst.isEmpty()) {
+        printTable(lst.iterator());
+    }
+
+    /**
+     * Displays students in a formatted table, one page at a time. Students
+     * are only read from the iterator as they are shown, so the first page
+     * appears without waiting for the rest.
+     *
+     * @param students The students to display
+     */
+    public void printTable(Iterator<Student> students) {
+        // Check if there is anything to display
+        if (!students.hasNext()) {
             // Display error message if no students were found to display
             System.err.println("------Error! No data has been found.");
             // Return to calling method without further processing
             return;
         }
 
-        // Print formatted table header with separator lines and column titles
-        System.out.printf("+-----------+----------------------+------------+------------+%n");
-        System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n", "ID", "Name", "Semester", "Course");
-        System.out.printf("+-----------+----------------------+------------+------------+%n");
-
-        // Iterate through each student in the list
-        for (Student student : lst) {
-            // Get all semesters for the current student
-            Set<String> semesters = student.getSemesters();
-
-            // Handle case where student has no semesters
-            if (semesters.isEmpty()) {
-                // Display a single row with "None" for semester and course
-                System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                        student.getId(), student.getName(), "None", "None");
-            } else {
-                // Flag to track whether this is the first row for this student
-                boolean firstRow = true;
-
-                // Process each semester for this student
-                for (String semester : semesters) {
-                    // Get all courses for the current semester
-                    Set<String> courses = student.getCourses(semester);
-
-                    // Handle case where semester has no courses
-                    if (courses.isEmpty()) {
-                        // Display the semester with "None" for course
-                        if (firstRow) {
-                            // First row includes student ID and name
-                            System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                    student.getId(), student.getName(), semester, "None");
-                            // Mark first row as processed
-                            firstRow = false;
-                        } else {
-                            // Subsequent rows have empty ID and name cells
-                            System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                    "", "", semester, "None");
-                        }
-                    } else {
-                        // Process each course in the current semester
-                        for (String course : courses) {
-                            // Format and display the current semester-course combination
-                            if (firstRow) {
-                                // First row includes student ID and name
-                                System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                        student.getId(), student.getName(), semester, course);
-                                // Mark first row as processed
-                                firstRow = false;
-                            } else {
-                                // Subsequent rows have empty ID and name cells
-                                System.out.printf("| %-9s | %-20s | %-10s | %-10s |%n",
-                                        "", "", semester, course);
-                            }
-                        }
-                    }
+        // Print the table header
+        console.header();
+        // Number of students shown so far
+        int shown = 0;
+        // Display each student, asking before every new page
+        while (students.hasNext()) {
+            if (shown > 0 && shown % PAGE_SIZE == 0) {
+                // Show the finished page before asking for the next one
+                console.flush();
+                // Stop here unless the user wants the next page
+                if (!nextPage()) {
+                    return;
                 }
+                // Repeat the header on the new page
+                console.header();
             }
-            // Print separator line between students for readability
-            System.out.printf("+-----------+----------------------+------------+------------+%n");
+            console.student(students.next());
+            shown++;
+        }
+        // Show the last page
+        console.flush();
+    }
+
+    /**
+     * Asks whether to show the next page of a table
+     *
+     * @return true if the user wants the next page
+     */
+    private boolean nextPage() {
+        try {
+            return InputValidation.continueYN("Show the next " + PAGE_SIZE + " students?");
+        } catch (Exception e) {
+            // Stop paging if the answer cannot be read
+            System.err.println("------Error! " + e.getMessage());
+            return false;
         }
     }
 
@@ -890,8 +861,9 @@ public class Menu {
             // Display error message if no students exist in database
             System.err.println("------Error! Database is empty, please add Student first.");
         } else {
-            // Get all students from database and display them in a table
-            printTable(dtb.report());
+            // Pin the current version so changes made meanwhile cannot
+            // disturb the table, then display its students page by page
+            printTable(dtb.snapshot().students().iterator());
         }
     }
 
@@ -916,6 +888,10 @@ public class Menu {
             System.out.println("1. Sort by Name");
             // Display option 2: sort by student ID
             System.out.println("2. Sort by ID");
+            // Display option 3: sort by earliest semester
+            System.out.println("3. Sort by Semester");
+            // Display option 4: sort by course
+            System.out.println("4. Sort by Course");
             // Display option 0: return to main menu
             System.out.println("0. Back to Menu");
             // Prompt for user input
@@ -923,24 +899,31 @@ public class Menu {
 
             try {
                 // Get user selection for sort criteria (0-4)
-                int sortOption = InputValidation.getIntInputLimit(0, 2);
+                int sortOption = InputValidation.getIntInputLimit(0, 4);
 
-                // Process selection using switch statement
+                // Process selection, sorting a pinned version so changes made
+                // meanwhile cannot disturb the table
                 switch (sortOption) {
                     case 1:
-                        // Sort by student name (case-insensitive)
-                        dtb.sort(StudentDTB.SortType.BY_NAME);
+                        // Display students ordered by name (case-insensitive)
+                        printTable(dtb.snapshot().sortedView(StudentDTB.SortType.BY_NAME));
                         break;
                     case 2:
-                        // Sort by student ID
-                        dtb.sort(StudentDTB.SortType.BY_ID);
+                        // Display students ordered by ID
+                        printTable(dtb.snapshot().sortedView(StudentDTB.SortType.BY_ID));
+                        break;
+                    case 3:
+                        // Display students ordered by their earliest semester
+                        printTable(dtb.snapshot().sortedView(StudentDTB.SortType.BY_SEMESTER));
+                        break;
+                    case 4:
+                        // Display students ordered by their first course
+                        printTable(dtb.snapshot().sortedView(StudentDTB.SortType.BY_COURSE));
                         break;
                     case 0:
                         // Return to main menu
                         break OUTER;
                 }
-                // Display sorted students after sorting is complete
-                printTable(dtb.report());
             } catch (Exception e) {
                 // Display error message if exception occurs during sorting
                 System.err.println("------Error! " + e.getMessage());
@@ -948,6 +931,66 @@ public class Menu {
         }
     }
 
+    /**
+     * Imports students and enrolments from a CSV file of
+     * id,name,semester,course lines
+     */
+    private void importStudents() {
+        try {
+            // Prompt user for the file to import
+            System.out.print("Enter CSV file path: ");
+            String path = InputValidation.getMultiStringNonEmpty();
+            // Import the whole file, checking lines on every processor
+            StudentImporter.Report result = new ImportPipeline(dtb).importFile(Paths.get(path));
+            // Keep the size counter in line with the database
+            dtbSize = dtb.size();
+            // Display what was imported
+            System.out.println("Imported " + result.getStudentsAdded() + " new students and "
+                    + result.getEnrolmentsAdded() + " enrolments from " + result.getLines() + " lines.");
+            // Display the first rejected lines with their line numbers
+            List<StudentImporter.Rejection> rejections = result.getRejections();
+            for (int i = 0; i < Math.min(rejections.size(), 20); i++) {
+                System.err.println("------Error! " + rejections.get(i));
+            }
+            if (result.getRejectedLines() > 20) {
+                System.err.println("------Error! ... and " + (result.getRejectedLines() - 20) + " more rejected lines.");
+            }
+        } catch (Exception e) {
+            // Display error message if the file cannot be read
+            System.err.println("------Error! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the table of all students to a text file, replacing the file if
+     * it exists
+     */
+    private void exportReport() {
+        // Check if there are any students to export
+        if (dtb.dtbIsEmpty()) {
+            // Display error message if database is empty
+            System.err.println("------Error! Database is empty, please add Student first.");
+            // Return to main menu without further processing
+            return;
+        }
+        try {
+            // Prompt user for the file to write
+            System.out.print("Enter report file path: ");
+            String path = InputValidation.getMultiStringNonEmpty();
+            // Write one version of the database, even if it changes meanwhile
+            int count;
+            try (ReportRenderer file = ReportRenderer.toChannel(FileChannel.open(Paths.get(path),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+                count = file.table(dtb.snapshot().students().iterator());
+            }
+            // Display how many students were written
+            System.out.println("Exported " + count + " students to " + path + ".");
+        } catch (Exception e) {
+            // Display error message if the file cannot be written
+            System.err.println("------Error! " + e.getMessage());
+        }
+    }
+
     /**
      * Quickly adds test students to the database
      */
@@ -962,10 +1005,10 @@ public class Menu {
         // Set flag to prevent repeated use of this function
         testStudentAdded = true;
 
-        // Initialize counter for student loop
-        int i = 1;
+        // Number of test students actually added
+        int added = 0;
         // Loop to create and add 9 test students (indices 1-9)
-        for (i = 1; i < 10; i++) {
+        for (int i = 1; i < 10; i++) {
             // Generate ID with format "CExxxxxx" where x is a digit
             String id = "CE" + String.format("%06d", i);
             // Generate name in format "TS X" where X is a letter (A-I)
@@ -980,12 +1023,18 @@ public class Menu {
             // Add test data: Fall semester with .NET course
             student.addCourse("FA" + String.format("%02d", i), ".NET");
 
-            // Add the student to the database
-            dtb.add(student);
-            // Increment counter of students in database
-            dtbSize++;
+            // Add the student to the database, skipping an ID already loaded
+            // from the snapshot or log of an earlier run
+            if (dtb.add(student)) {
+                // Increment counter of students in database
+                dtbSize++;
+                added++;
+            }
         }
         // Display success message with count of added students
-        System.out.printf("%d Test Student have been added.\n", i - 1);
+        System.out.printf("%d Test Student have been added.\n", added);
+        if (added < 9) {
+            System.out.printf("------Notify: %d Test Student already exist in database.\n", 9 - added);
+        }
     }
 }
@@ -0,0 +1,149 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * L02 - Student Management System
+ *
+ * OperationMetrics records every call of one database operation, e.g.
+ * findBy by name: a latency histogram and, for searches, the number of
+ * students scanned and matched. Recording allocates nothing and takes no
+ * lock.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+
+    // Nanoseconds per microsecond
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    // Name of the operation, e.g. findBy.BY_NAME
+    private final String name;
+    // Durations of the calls
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Students looked at and returned by the calls
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder rowsMatched = new LongAdder();
+
+    /**
+     * Constructor to create the metrics of an operation
+     *
+     * @param name The name of the operation
+     */
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the operation
+     *
+     * @return The name, e.g. findBy.BY_NAME
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the latency histogram of the operation
+     *
+     * @return The histogram, in nanoseconds
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Records a call that started at a DatabaseMetrics.start() reading
+     *
+     * @param start DatabaseMetrics.start() when the call started
+     */
+    void record(long start) {
+        if (start != DatabaseMetrics.OFF) {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a search that started at a DatabaseMetrics.start() reading
+     *
+     * @param start DatabaseMetrics.start() when the search started
+     * @param scanned Number of students the search looked at
+     * @param matched Number of students the search returned
+     */
+    void record(long start, long scanned, long matched) {
+        if (start != DatabaseMetrics.OFF) {
+            latency.record(System.nanoTime() - start);
+            rowsScanned.add(scanned);
+            rowsMatched.add(matched);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.getPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return latency.getPercentile(90) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.getPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.getPercentile(99.9) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMax() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public long getRowsScanned() {
+        return rowsScanned.sum();
+    }
+
+    @Override
+    public long getRowsMatched() {
+        return rowsMatched.sum();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        rowsScanned.reset();
+        rowsMatched.reset();
+    }
+
+    /**
+     * Returns one line of the text dump
+     *
+     * @return The name, count, latencies in microseconds and rows
+     */
+    @Override
+    public String toString() {
+        return String.format("%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %12d %12d", name, getCount(),
+                getMeanMicros(), getP50Micros(), getP90Micros(), getP99Micros(), getP999Micros(), getMaxMicros(),
+                getRowsScanned(), getRowsMatched());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+/**
+ * L02 - Student Management System
+ *
+ * OperationMetricsMBean is what JMX tools such as JConsole show of one
+ * database operation: how often it ran, how long it took and, for searches,
+ * how many students it looked at and returned. Durations are in
+ * microseconds.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * Gets the number of times the operation ran
+     *
+     * @return The number of calls
+     */
+    long getCount();
+
+    /**
+     * Gets the mean duration of the operation
+     *
+     * @return The mean in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Gets the median duration of the operation
+     *
+     * @return The 50th percentile in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * Gets the duration 90% of the calls stay below
+     *
+     * @return The 90th percentile in microseconds
+     */
+    double getP90Micros();
+
+    /**
+     * Gets the duration 99% of the calls stay below
+     *
+     * @return The 99th percentile in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * Gets the duration 99.9% of the calls stay below
+     *
+     * @return The 99.9th percentile in microseconds
+     */
+    double getP999Micros();
+
+    /**
+     * Gets the longest duration of the operation
+     *
+     * @return The maximum in microseconds
+     */
+    double getMaxMicros();
+
+    /**
+     * Gets the number of students the operation looked at
+     *
+     * @return The number of students scanned, 0 for operations that do not
+     * search
+     */
+    long getRowsScanned();
+
+    /**
+     * Gets the number of students the operation returned
+     *
+     * @return The number of students matched, 0 for operations that do not
+     * search
+     */
+    long getRowsMatched();
+
+    /**
+     * Forgets everything recorded so far
+     */
+    void reset();
+}
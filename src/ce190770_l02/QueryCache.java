@@ -0,0 +1,465 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * L02 - Student Management System
+ *
+ * QueryCache keeps the results of recent findBy searches by name, semester
+ * and course, so a search repeated before anything it depends on changes is
+ * answered with one hash lookup and a copy of the result. Searches are keyed
+ * by criteria and input folded to upper case, so "anh" and "ANH" share one
+ * result. ID searches are not cached since the ID index already answers
+ * them with one hash lookup.
+ * <p>
+ * When the database changes, only the results the change can affect are
+ * dropped:
+ * <ul>
+ * <li>a name search, when a student whose old or new name contains the
+ * input is added, deleted or renamed, or when the database is sorted since
+ * names are returned in the order of the last sort</li>
+ * <li>an exact semester or course search, when a student joins or leaves
+ * that key's posting list</li>
+ * <li>a partial semester or course search, when a student joins or leaves
+ * the posting list of any key containing the input</li>
+ * </ul>
+ * The least recently used result is dropped once the cache is full.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class QueryCache implements QueryCacheMBean {
+
+    // Number of results kept by a new cache
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // Largest number of results kept, 0 if switched off
+    private volatile int capacity = DEFAULT_CAPACITY;
+    // Cached results, least recently used first
+    private final LinkedHashMap<Key, List<Student>> entries
+            = new LinkedHashMap<Key, List<Student>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<Student>> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+            unlink(eldest.getKey());
+            evictions.increment();
+            return true;
+        }
+    };
+    // Name searches kept, with their matchers
+    private final Map<Key, QueryMatcher> names = new HashMap<>();
+    // Semester and course searches kept, by the index keys they depend on
+    private final Dependents semesterDependents = new Dependents();
+    private final Dependents courseDependents = new Dependents();
+    // Number of changes seen, so a search that ran across a change is not
+    // cached; only written while holding this cache's lock
+    private volatile long generation;
+
+    // Hit, miss, eviction and invalidation counters
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * The cached semester or course searches that depend on an inverted
+     * index
+     */
+    private static final class Dependents {
+
+        // Searches answered from an exact key's posting list, by that key
+        private final Map<String, Set<Key>> exact = new HashMap<>();
+        // Searches that merged every key containing the input, with their
+        // matchers
+        private final Map<Key, QueryMatcher> partial = new HashMap<>();
+    }
+
+    /**
+     * A cached search: the criteria and the input as the search sees it
+     */
+    static final class Key {
+
+        // Criteria searched by
+        private final StudentDTB.SortType sortType;
+        // Input folded to upper case, as matched against names and keys
+        private final String folded;
+        // Input as an index key, tried first for semesters and courses
+        private final String indexKey;
+        // Hash of the fields above
+        private final int hash;
+
+        /**
+         * Constructor to create the key of a search
+         *
+         * @param input The search term
+         * @param sortType The criteria searched by
+         */
+        Key(String input, StudentDTB.SortType sortType) {
+            this.sortType = sortType;
+            folded = QueryMatcher.fold(input);
+            // Normalized separately, it may differ from folded in some locales
+            indexKey = sortType == StudentDTB.SortType.BY_NAME ? null : StudentDTB.normalizeKey(input);
+            hash = (sortType.hashCode() * 31 + folded.hashCode()) * 31
+                    + (indexKey == null ? 0 : indexKey.hashCode());
+        }
+
+        /**
+         * Checks if another key is of the same search
+         *
+         * @param obj The other key
+         * @return true if the criteria and the normalized input are equal
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return sortType == other.sortType && folded.equals(other.folded)
+                    && (indexKey == null ? other.indexKey == null : indexKey.equals(other.indexKey));
+        }
+
+        /**
+         * Gets the hash of the key
+         *
+         * @return The hash of the criteria and the normalized input
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Constructor to create a cache with the default capacity
+     */
+    QueryCache() {
+    }
+
+    /**
+     * Gets the key of a search if it can be cached
+     *
+     * @param input The search term
+     * @param sortType The criteria searched by
+     * @return The key, or null if ID searches or the cache is switched off
+     */
+    Key key(String input, StudentDTB.SortType sortType) {
+        if (capacity == 0 || sortType == StudentDTB.SortType.BY_ID) {
+            return null;
+        }
+        return new Key(input, sortType);
+    }
+
+    /**
+     * Gets the number of changes seen so far, read before a search runs and
+     * handed to put() with its result
+     *
+     * @return The generation of the cache
+     */
+    long version() {
+        return generation;
+    }
+
+    /**
+     * Gets a copy of a cached result, counting a hit or a miss
+     *
+     * @param key The key of the search
+     * @return A new list with the cached students, or null if not cached
+     */
+    List<Student> get(Key key) {
+        List<Student> students;
+        synchronized (this) {
+            students = entries.get(key);
+        }
+        if (students == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Copy outside the lock; a cached list never changes once stored
+        return new ArrayList<>(students);
+    }
+
+    /**
+     * Caches the result of a search, unless the database changed while it
+     * ran
+     *
+     * @param key The key of the search
+     * @param input The search term
+     * @param students The students found
+     * @param accessPath How the search reached the students
+     * @param version version() read before the search ran
+     */
+    void put(Key key, String input, List<Student> students, QueryPlan.AccessPath accessPath, long version) {
+        // Copy outside the lock, the caller keeps its own list
+        List<Student> copy = new ArrayList<>(students);
+        QueryMatcher matcher = accessPath == QueryPlan.AccessPath.INDEX_KEY ? null : QueryMatcher.compile(input);
+        synchronized (this) {
+            // A change since the search started may already be missing
+            // from the result, and its invalidation has already run
+            if (generation != version || capacity == 0) {
+                return;
+            }
+            // Replace an equal search cached meanwhile by another thread
+            if (entries.remove(key) != null) {
+                unlink(key);
+            }
+            switch (key.sortType) {
+                case BY_NAME:
+                    names.put(key, matcher);
+                    break;
+                default:
+                    Dependents dependents = dependents(key.sortType);
+                    if (accessPath == QueryPlan.AccessPath.INDEX_KEY) {
+                        dependents.exact.computeIfAbsent(key.indexKey, k -> new HashSet<>()).add(key);
+                    } else {
+                        dependents.partial.put(key, matcher);
+                    }
+                    break;
+            }
+            entries.put(key, copy);
+        }
+    }
+
+    /**
+     * Drops the results affected by adding or deleting a student, called
+     * after the student is in or out of every index
+     *
+     * @param name The student's name
+     * @param enrolments The student's semesters and their courses
+     */
+    synchronized void studentChanged(String name, Map<String, Set<String>> enrolments) {
+        generation++;
+        if (entries.isEmpty()) {
+            return;
+        }
+        nameChanged(names, name);
+        for (Map.Entry<String, Set<String>> entry : enrolments.entrySet()) {
+            keyChanged(semesterDependents, StudentDTB.normalizeKey(entry.getKey()));
+            for (String course : entry.getValue()) {
+                keyChanged(courseDependents, StudentDTB.normalizeKey(course));
+            }
+        }
+    }
+
+    /**
+     * Drops the name searches affected by renaming a student, called after
+     * the new name is set
+     *
+     * @param oldName The name before the change
+     * @param newName The name after the change
+     */
+    synchronized void studentRenamed(String oldName, String newName) {
+        generation++;
+        nameChanged(names, oldName);
+        nameChanged(names, newName);
+    }
+
+    /**
+     * Drops the semester and course searches affected by a student joining
+     * or leaving posting lists, called after the indexes are updated
+     *
+     * @param semester The semester whose posting list changed, or null if
+     * it did not
+     * @param courses The courses whose posting lists changed
+     */
+    synchronized void enrolmentChanged(String semester, Collection<String> courses) {
+        generation++;
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (semester != null) {
+            keyChanged(semesterDependents, StudentDTB.normalizeKey(semester));
+        }
+        for (String course : courses) {
+            keyChanged(courseDependents, StudentDTB.normalizeKey(course));
+        }
+    }
+
+    /**
+     * Drops every name search after the database was sorted, called after
+     * the students were reordered
+     */
+    synchronized void orderChanged() {
+        generation++;
+        for (Key key : names.keySet()) {
+            entries.remove(key);
+        }
+        invalidations.add(names.size());
+        names.clear();
+    }
+
+    /**
+     * Drops the name searches whose input a name contains
+     *
+     * @param names The name searches kept
+     * @param name The name that changed
+     */
+    private void nameChanged(Map<Key, QueryMatcher> names, String name) {
+        for (Iterator<Map.Entry<Key, QueryMatcher>> it = names.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, QueryMatcher> search = it.next();
+            if (search.getValue().matches(name)) {
+                it.remove();
+                entries.remove(search.getKey());
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the semester or course searches that depend on an index key
+     *
+     * @param dependents The searches of the index
+     * @param indexKey The normalized key whose posting list changed
+     */
+    private void keyChanged(Dependents dependents, String indexKey) {
+        // Exact searches of the key, one hash lookup
+        Set<Key> exact = dependents.exact.remove(indexKey);
+        if (exact != null) {
+            for (Key key : exact) {
+                entries.remove(key);
+            }
+            invalidations.add(exact.size());
+        }
+        // Partial searches, whose input the key contains; the key may also
+        // have just been created for an input that used to match no key
+        for (Iterator<Map.Entry<Key, QueryMatcher>> it = dependents.partial.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, QueryMatcher> search = it.next();
+            if (search.getKey().indexKey.equals(indexKey) || search.getValue().matches(indexKey)) {
+                it.remove();
+                entries.remove(search.getKey());
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Forgets what a cached search depends on, called when it is removed
+     *
+     * @param key The key of the search
+     */
+    private void unlink(Key key) {
+        if (key.sortType == StudentDTB.SortType.BY_NAME) {
+            names.remove(key);
+            return;
+        }
+        Dependents dependents = dependents(key.sortType);
+        if (dependents.partial.remove(key) == null) {
+            Set<Key> exact = dependents.exact.get(key.indexKey);
+            if (exact != null && exact.remove(key) && exact.isEmpty()) {
+                dependents.exact.remove(key.indexKey);
+            }
+        }
+    }
+
+    /**
+     * Gets the cached searches of the semester or course index
+     *
+     * @param sortType BY_SEMESTER or BY_COURSE
+     * @return The searches of that index
+     */
+    private Dependents dependents(StudentDTB.SortType sortType) {
+        return sortType == StudentDTB.SortType.BY_SEMESTER ? semesterDependents : courseDependents;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity must not be negative.");
+        }
+        this.capacity = capacity;
+        // Drop the least recently used results that no longer fit
+        for (Iterator<Key> it = entries.keySet().iterator(); entries.size() > capacity && it.hasNext();) {
+            Key key = it.next();
+            it.remove();
+            unlink(key);
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        names.clear();
+        semesterDependents.exact.clear();
+        semesterDependents.partial.clear();
+        courseDependents.exact.clear();
+        courseDependents.partial.clear();
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    /**
+     * Returns the statistics as one line of the metrics table
+     *
+     * @return The hits, misses, hit ratio, evictions, invalidations, size and
+     * capacity
+     */
+    @Override
+    public String toString() {
+        return String.format("%-20s %10d %10d %9.1f%% %10d %10d %10d %10d", "findBy.cache", getHits(),
+                getMisses(), getHitRatio() * 100, getEvictions(), getInvalidations(), getSize(), capacity);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+/**
+ * L02 - Student Management System
+ *
+ * QueryCacheMBean is what JMX tools such as JConsole show of the findBy
+ * result cache: how often a search was answered from it, how many results
+ * it holds and how many it dropped because they were too old or outdated.
+ * The capacity can be changed while the database runs.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public interface QueryCacheMBean {
+
+    /**
+     * Gets the largest number of results kept
+     *
+     * @return The capacity, 0 if the cache is switched off
+     */
+    int getCapacity();
+
+    /**
+     * Sets the largest number of results kept, dropping the least recently
+     * used results that no longer fit
+     *
+     * @param capacity The capacity, 0 to switch the cache off
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * Gets the number of results kept
+     *
+     * @return The number of results
+     */
+    int getSize();
+
+    /**
+     * Gets the number of searches answered from the cache
+     *
+     * @return The number of hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of searches that had to run
+     *
+     * @return The number of misses
+     */
+    long getMisses();
+
+    /**
+     * Gets the share of searches answered from the cache
+     *
+     * @return The hits divided by all searches, 0 if nothing was searched
+     */
+    double getHitRatio();
+
+    /**
+     * Gets the number of results dropped to make room for newer ones
+     *
+     * @return The number of evictions
+     */
+    long getEvictions();
+
+    /**
+     * Gets the number of results dropped because a change made them stale
+     *
+     * @return The number of invalidations
+     */
+    long getInvalidations();
+
+    /**
+     * Drops every result kept
+     */
+    void clear();
+
+    /**
+     * Forgets the counted hits, misses, evictions and invalidations
+     */
+    void reset();
+}
@@ -0,0 +1,200 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * L02 - Student Management System
+ *
+ * QueryMatcher is a precompiled, case-insensitive substring matcher. The
+ * search term is upper-cased once when the matcher is compiled, and every
+ * attribute is then scanned in place without allocating. Search terms of
+ * four or more characters use Boyer-Moore-Horspool skipping. Compiled
+ * matchers are shared through a small cache that concurrent searches read
+ * without locking; a one-off check uses contains() instead.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class QueryMatcher {
+
+    // Shortest search term worth building a skip table for
+    private static final int HORSPOOL_MIN_LENGTH = 4;
+    // Size of the skip table, characters are bucketed by their low 8 bits
+    private static final int SHIFT_TABLE_SIZE = 256;
+    // Number of compiled matchers kept for reuse by repeated searches
+    private static final int CACHE_SIZE = 64;
+    // Recently compiled matchers, read and filled without locking
+    private static final ConcurrentHashMap<String, QueryMatcher> CACHE = new ConcurrentHashMap<>();
+    // Cached search terms in the order they were compiled, oldest evicted
+    // first
+    private static final Queue<String> CACHE_ORDER = new ConcurrentLinkedQueue<>();
+
+    // Search term folded to upper case
+    private final char[] needle;
+    // Horspool skip distances, or null when the term is too short
+    private final int[] shift;
+
+    /**
+     * Constructor to compile a search term
+     *
+     * @param input The search term
+     */
+    private QueryMatcher(String input) {
+        // Fold the search term to upper case once
+        needle = fold(input).toCharArray();
+        // Build the skip table only for terms long enough to benefit
+        if (needle.length >= HORSPOOL_MIN_LENGTH) {
+            shift = new int[SHIFT_TABLE_SIZE];
+            // By default the window can move past the whole term
+            for (int i = 0; i < SHIFT_TABLE_SIZE; i++) {
+                shift[i] = needle.length;
+            }
+            // Later positions overwrite earlier ones, so each bucket keeps the
+            // smallest (safe) distance when two characters share a bucket
+            for (int i = 0; i < needle.length - 1; i++) {
+                shift[needle[i] & 0xFF] = needle.length - 1 - i;
+            }
+        } else {
+            shift = null;
+        }
+    }
+
+    /**
+     * Gets a compiled matcher for a search term, reusing a cached one when
+     * the same term was searched recently. Searches never wait for each
+     * other: the matcher is compiled outside the cache, and two searches
+     * that miss on the same term at once may both compile it.
+     *
+     * @param input The search term
+     * @return The compiled matcher
+     */
+    public static QueryMatcher compile(String input) {
+        QueryMatcher matcher = CACHE.get(input);
+        if (matcher != null) {
+            return matcher;
+        }
+        // Compile without holding anything, then keep the first copy cached
+        matcher = new QueryMatcher(input);
+        QueryMatcher raced = CACHE.putIfAbsent(input, matcher);
+        if (raced != null) {
+            return raced;
+        }
+        CACHE_ORDER.add(input);
+        // Evict the oldest terms once the cache is over its size
+        while (CACHE.size() > CACHE_SIZE) {
+            String oldest = CACHE_ORDER.poll();
+            if (oldest == null) {
+                break;
+            }
+            CACHE.remove(oldest);
+        }
+        return matcher;
+    }
+
+    /**
+     * Checks once if an attribute contains a search term (case-insensitive),
+     * without compiling or caching a matcher. Compares exactly like a
+     * compiled matcher, so the two always agree.
+     *
+     * @param attr The attribute to check
+     * @param input The search term
+     * @return true if the attribute contains the search term
+     */
+    public static boolean contains(CharSequence attr, String input) {
+        int m = input.length();
+        int n = attr.length();
+        // Compare at every start position, folding both sides as they go
+        for (int pos = 0; pos <= n - m; pos++) {
+            int j = 0;
+            while (j < m && Character.toUpperCase(attr.charAt(pos + j)) == Character.toUpperCase(input.charAt(j))) {
+                j++;
+            }
+            if (j == m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Folds a search term to upper case the way the matcher compares it, so
+     * two terms with the same folded form match exactly the same attributes
+     *
+     * @param input The search term
+     * @return The term with every character upper-cased on its own
+     */
+    static String fold(String input) {
+        char[] folded = new char[input.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toUpperCase(input.charAt(i));
+        }
+        return new String(folded);
+    }
+
+    /**
+     * Checks if an attribute contains the search term (case-insensitive)
+     *
+     * @param attr The attribute to check
+     * @return true if the attribute contains the search term
+     */
+    public boolean matches(CharSequence attr) {
+        // An empty search term matches everything, like String.contains
+        int m = needle.length;
+        if (m == 0) {
+            return true;
+        }
+        // A term longer than the attribute can never match
+        int n = attr.length();
+        if (m > n) {
+            return false;
+        }
+        // Use the skip table when there is one
+        if (shift != null) {
+            return horspool(attr, n);
+        }
+        // Short terms: compare at every start position
+        for (int pos = 0; pos <= n - m; pos++) {
+            int j = 0;
+            while (j < m && Character.toUpperCase(attr.charAt(pos + j)) == needle[j]) {
+                j++;
+            }
+            if (j == m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search of the attribute
+     *
+     * @param attr The attribute to search
+     * @param n The length of the attribute
+     * @return true if the attribute contains the search term
+     */
+    private boolean horspool(CharSequence attr, int n) {
+        int m = needle.length;
+        // Position of the current window in the attribute
+        int pos = 0;
+        while (pos <= n - m) {
+            // Compare the window right to left
+            int j = m - 1;
+            while (j >= 0 && Character.toUpperCase(attr.charAt(pos + j)) == needle[j]) {
+                j--;
+            }
+            // The whole window matched
+            if (j < 0) {
+                return true;
+            }
+            // Skip ahead based on the last character of the window
+            pos += shift[Character.toUpperCase(attr.charAt(pos + m - 1)) & 0xFF];
+        }
+        return false;
+    }
+}
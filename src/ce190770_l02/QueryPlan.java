@@ -0,0 +1,175 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+/**
+ * L02 - Student Management System
+ *
+ * QueryPlan tells how StudentDTB answered one findBy: which access path it
+ * took, how many index keys and students it examined, how many students it
+ * returned and how long each phase took. It is returned by
+ * StudentDTB.explain() and written to the slow-query log. The phases are:
+ * <ul>
+ * <li>plan: normalizing the input, compiling the matcher and probing the
+ * index for an exact key</li>
+ * <li>scan: matching the input against names or index keys</li>
+ * <li>collect: copying or merging the matching students into the result</li>
+ * </ul>
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class QueryPlan {
+
+    /**
+     * How a search reaches the students
+     */
+    public enum AccessPath {
+        // Exact ID through the ID index
+        ID_INDEX,
+        // Every student's name matched against the input
+        FULL_SCAN,
+        // One posting list of an inverted index, for an exact key
+        INDEX_KEY,
+        // Every key of an inverted index matched, the posting lists of the
+        // matching keys merged
+        INDEX_KEY_SCAN
+    }
+
+    // The search
+    private final String input;
+    private final StudentDTB.SortType sortType;
+    // The path taken
+    AccessPath accessPath;
+    // Number of index keys matched against the input
+    int keysExamined;
+    // Number of students looked at, once per posting list they are in
+    int rowsExamined;
+    // Number of students returned
+    int rowsMatched;
+    // Nanoseconds spent in each phase
+    long planNanos;
+    long scanNanos;
+    long collectNanos;
+
+    /**
+     * Constructor to create an empty plan of a search
+     *
+     * @param input The search term
+     * @param sortType The criteria searched by
+     */
+    QueryPlan(String input, StudentDTB.SortType sortType) {
+        this.input = input;
+        this.sortType = sortType;
+    }
+
+    /**
+     * Gets the search term
+     *
+     * @return The input as given to findBy
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Gets the criteria searched by
+     *
+     * @return The criteria
+     */
+    public StudentDTB.SortType getSortType() {
+        return sortType;
+    }
+
+    /**
+     * Gets the access path taken
+     *
+     * @return The access path
+     */
+    public AccessPath getAccessPath() {
+        return accessPath;
+    }
+
+    /**
+     * Gets the number of index keys matched against the input
+     *
+     * @return The number of keys, 0 unless the path is INDEX_KEY_SCAN
+     */
+    public int getKeysExamined() {
+        return keysExamined;
+    }
+
+    /**
+     * Gets the number of students looked at
+     *
+     * @return The number of students, counted once per posting list they
+     * are in
+     */
+    public int getRowsExamined() {
+        return rowsExamined;
+    }
+
+    /**
+     * Gets the number of students returned
+     *
+     * @return The number of students
+     */
+    public int getRowsMatched() {
+        return rowsMatched;
+    }
+
+    /**
+     * Gets the time spent in the plan phase
+     *
+     * @return The time in nanoseconds
+     */
+    public long getPlanNanos() {
+        return planNanos;
+    }
+
+    /**
+     * Gets the time spent in the scan phase
+     *
+     * @return The time in nanoseconds
+     */
+    public long getScanNanos() {
+        return scanNanos;
+    }
+
+    /**
+     * Gets the time spent in the collect phase
+     *
+     * @return The time in nanoseconds
+     */
+    public long getCollectNanos() {
+        return collectNanos;
+    }
+
+    /**
+     * Gets the time of the whole search
+     *
+     * @return The sum of the phases in nanoseconds
+     */
+    public long getTotalNanos() {
+        return planNanos + scanNanos + collectNanos;
+    }
+
+    /**
+     * Returns the plan as text, e.g.
+     * <pre>
+     * findBy BY_NAME "anh": FULL_SCAN, 0 keys, 20000 rows examined, 1302 matched
+     *   plan 2.1 us, scan 812.4 us, collect 0.0 us, total 814.5 us
+     * </pre>
+     *
+     * @return The plan on two lines
+     */
+    @Override
+    public String toString() {
+        return String.format("findBy %s \"%s\": %s, %d keys, %d rows examined, %d matched%n"
+                + "  plan %.1f us, scan %.1f us, collect %.1f us, total %.1f us",
+                sortType, input, accessPath, keysExamined, rowsExamined, rowsMatched,
+                planNanos / 1000.0, scanNanos / 1000.0, collectNanos / 1000.0, getTotalNanos() / 1000.0);
+    }
+}
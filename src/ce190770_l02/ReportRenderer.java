@@ -0,0 +1,263 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * L02 - Student Management System
+ *
+ * ReportRenderer draws the student table used by every report:
+ * <pre>
+ * +-----------+----------------------+------------+------------+
+ * | ID        | Name                 | Semester   | Course     |
+ * +-----------+----------------------+------------+------------+
+ * | CE190770  | Dinh Cong Phuc       | SP25       | Java       |
+ * |           |                      | SP25       | C/C++      |
+ * +-----------+----------------------+------------+------------+
+ * </pre>
+ * The separator line and the header are built once. Each row is padded into
+ * one reused StringBuilder instead of parsing a format string per row, and
+ * the text goes through a large buffered writer that is only flushed when
+ * asked, so a long report costs a few large writes instead of one
+ * synchronized print per row. It writes to the console or to a file channel.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class ReportRenderer implements AutoCloseable {
+
+    // Size of the output buffer in characters
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Width of the ID, Name, Semester and Course columns; longer values are
+    // not cut, they push the rest of the row to the right
+    private static final int[] WIDTHS = {9, 20, 10, 10};
+    // Shown in the Semester and Course columns when there is none
+    private static final String NONE = "None";
+
+    // Line separator of the platform, as printf's %n
+    private final String newLine = System.lineSeparator();
+    // Separator line between students, built once
+    private final String separator;
+    // Column titles between two separator lines, built once
+    private final String header;
+    // Buffered target of the text
+    private final Writer out;
+    // Whether close() also closes the target
+    private final boolean ownsTarget;
+    // Row being built, reused for every row
+    private final StringBuilder row = new StringBuilder(128);
+    // Characters of the row handed to the writer, reused for every row
+    private char[] chars = new char[128];
+
+    /**
+     * Constructor to create a renderer over a writer
+     *
+     * @param out The target of the text, buffered by the caller
+     * @param ownsTarget true if close() should also close the target
+     */
+    private ReportRenderer(Writer out, boolean ownsTarget) {
+        this.out = out;
+        this.ownsTarget = ownsTarget;
+        // +-----------+------ ... built from the column widths
+        StringBuilder line = new StringBuilder("+");
+        for (int width : WIDTHS) {
+            for (int i = 0; i < width + 2; i++) {
+                line.append('-');
+            }
+            line.append('+');
+        }
+        this.separator = line.append(newLine).toString();
+        this.header = separator + formatRow("ID", "Name", "Semester", "Course") + separator;
+    }
+
+    /**
+     * Creates a renderer that writes to standard output. Closing it flushes
+     * the text but leaves standard output open.
+     *
+     * @return A renderer for the console
+     */
+    public static ReportRenderer toConsole() {
+        return new ReportRenderer(new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()),
+                BUFFER_SIZE), false);
+    }
+
+    /**
+     * Creates a renderer that writes UTF-8 text to a channel, such as a
+     * FileChannel. Closing it flushes the text and closes the channel.
+     *
+     * @param channel The channel to write to
+     * @return A renderer for the channel
+     */
+    public static ReportRenderer toChannel(WritableByteChannel channel) {
+        return new ReportRenderer(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1),
+                BUFFER_SIZE), true);
+    }
+
+    /**
+     * Writes the table header
+     *
+     * @throws UncheckedIOException if the text cannot be written
+     */
+    public void header() {
+        write(header);
+    }
+
+    /**
+     * Writes the rows of one student, one row per semester and course, and
+     * the separator line below them
+     *
+     * @param student The student to render
+     * @throws UncheckedIOException if the text cannot be written
+     */
+    public void student(Student student) {
+        // One copy of the enrolments, so the rows show one state of the student
+        Map<String, Set<String>> semesters = student.getAllSemesterCourses();
+        // ID and name only appear on the first row of the student
+        String id = student.getId();
+        String name = student.getName();
+        if (semesters.isEmpty()) {
+            write(formatRow(id, name, NONE, NONE));
+        }
+        for (Map.Entry<String, Set<String>> entry : semesters.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                write(formatRow(id, name, entry.getKey(), NONE));
+                id = "";
+                name = "";
+            }
+            for (String course : entry.getValue()) {
+                write(formatRow(id, name, entry.getKey(), course));
+                id = "";
+                name = "";
+            }
+        }
+        write(separator);
+    }
+
+    /**
+     * Writes the header and every student of an iterator, then flushes
+     *
+     * @param students The students to render
+     * @return The number of students written
+     * @throws UncheckedIOException if the text cannot be written
+     */
+    public int table(Iterator<Student> students) {
+        header();
+        int count = 0;
+        while (students.hasNext()) {
+            student(students.next());
+            count++;
+        }
+        flush();
+        return count;
+    }
+
+    /**
+     * Sends the buffered text to the target
+     *
+     * @throws UncheckedIOException if the text cannot be written
+     */
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes the text and closes the target if the renderer owns it
+     *
+     * @throws IOException if the text cannot be written or the target cannot
+     * be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsTarget) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+
+    /**
+     * Pads four cells into the reused row buffer, like
+     * printf("| %-9s | %-20s | %-10s | %-10s |%n")
+     *
+     * @param id The ID cell
+     * @param name The name cell
+     * @param semester The semester cell
+     * @param course The course cell
+     * @return The row buffer holding the row
+     */
+    private StringBuilder formatRow(String id, String name, String semester, String course) {
+        row.setLength(0);
+        row.append('|');
+        cell(id, WIDTHS[0]);
+        cell(name, WIDTHS[1]);
+        cell(semester, WIDTHS[2]);
+        cell(course, WIDTHS[3]);
+        return row.append(newLine);
+    }
+
+    /**
+     * Appends one left-aligned cell to the row buffer
+     *
+     * @param value The cell text
+     * @param width The column width
+     */
+    private void cell(String value, int width) {
+        row.append(' ').append(value);
+        for (int i = value.length(); i < width; i++) {
+            row.append(' ');
+        }
+        row.append(" |");
+    }
+
+    /**
+     * Writes fixed text, such as the separator line, to the buffered target
+     *
+     * @param text The text
+     * @throws UncheckedIOException if the text cannot be written
+     */
+    private void write(String text) {
+        try {
+            out.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the row buffer to the buffered target without turning it into
+     * a String
+     *
+     * @param text The row buffer
+     * @throws UncheckedIOException if the text cannot be written
+     */
+    private void write(StringBuilder text) {
+        int length = text.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        text.getChars(0, length, chars, 0);
+        try {
+            out.write(chars, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
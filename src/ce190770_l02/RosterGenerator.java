@@ -0,0 +1,375 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * L02 - Student Management System
+ *
+ * RosterGenerator makes up any number of realistic students for load and
+ * scale tests. The same seed always gives the same students in the same
+ * order, so a run can be repeated. The students follow these distributions:
+ * <ul>
+ * <li>Major codes are weighted, software engineering being the largest, and
+ * student numbers are spread over the major instead of counting up.</li>
+ * <li>Names are a weighted family name, zero to two middle names and a given
+ * name, so their lengths vary like real ones.</li>
+ * <li>The number of semesters follows a Zipf law: most students have one or
+ * two, a few have many. Semesters are consecutive SP/SU/FA terms from a
+ * random starting one.</li>
+ * <li>Each semester has 1 to 3 different courses, drawn from the valid
+ * courses of the database.</li>
+ * </ul>
+ * Students are generated one at a time, so millions of them can be streamed
+ * into a StudentDTB or a CSV file without holding them all in memory.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class RosterGenerator {
+
+    // Default largest number of semesters of one student
+    public static final int DEFAULT_MAX_SEMESTERS = 9;
+    // Default exponent of the Zipf law of the number of semesters
+    public static final double DEFAULT_SEMESTER_SKEW = 1.2;
+    // Number of students added to a database at once
+    private static final int BATCH_SIZE = 1024;
+    // Student numbers per major: 6 digits
+    private static final int NUMBERS = 1000000;
+    // Step between the student numbers of a major, coprime with NUMBERS
+    private static final int NUMBER_STEP = 387419;
+    // First year of a starting semester, 2 digits, and number of years
+    private static final int FIRST_YEAR = 19;
+    private static final int YEARS = 7;
+    // Seasons of a year, in order
+    private static final String[] SEASONS = {"SP", "SU", "FA"};
+    // Largest number of semesters: a student starting in the last starting
+    // year still ends by FA99, as semester codes have a 2-digit year
+    public static final int MAX_SEMESTERS = (100 - FIRST_YEAR - YEARS) * SEASONS.length + 1;
+
+    // Major codes and how many students out of 100 study them
+    private static final String[] MAJORS = {"SE", "AI", "IA", "GD", "CE", "SS"};
+    private static final double[] MAJOR_WEIGHTS = {35, 20, 12, 10, 13, 10};
+    // Family names and how common they are
+    private static final String[] FAMILY = {"Nguyen", "Tran", "Le", "Pham", "Hoang", "Huynh", "Phan", "Vu",
+        "Vo", "Dang", "Bui", "Do", "Ho", "Ngo", "Duong", "Ly", "Dinh", "Truong", "Lam", "Mai"};
+    private static final double[] FAMILY_WEIGHTS = {31, 11, 9.5, 7, 5, 5, 4.5, 4, 4, 2, 2, 1.5, 1.5, 1.5,
+        1, 0.5, 1, 1, 0.5, 0.5};
+    // Middle names, equally common
+    private static final String[] MIDDLE = {"Van", "Thi", "Cong", "Minh", "Hoang", "Ngoc", "Thanh", "Duc",
+        "Gia", "Bao", "Quoc", "Huu", "Kim", "Xuan", "Tuan"};
+    // How many of 100 names have 0, 1 and 2 middle names
+    private static final double[] MIDDLE_WEIGHTS = {10, 70, 20};
+    // Given names, equally common
+    private static final String[] GIVEN = {"Phuc", "Anh", "Binh", "Chau", "Dung", "Giang", "Hai", "Hieu",
+        "Huy", "Khang", "Khoa", "Lan", "Linh", "Long", "Mai", "Nam", "Nhi", "Phong", "Quan", "Tam",
+        "Thao", "Trang", "Tuan", "Vy", "Duy", "Hung", "Kiet", "Ngan", "Tien", "Uyen", "Khanh", "Nguyet"};
+
+    // Source of randomness, seeded
+    private final SplittableRandom random;
+    // Courses the students take
+    private final String[] courses;
+    // Cumulative weights of the majors, family names and middle name counts
+    private final double[] majorTable = cumulative(MAJOR_WEIGHTS);
+    private final double[] familyTable = cumulative(FAMILY_WEIGHTS);
+    private final double[] middleTable = cumulative(MIDDLE_WEIGHTS);
+    // Cumulative Zipf weights of 1 to maxSemesters semesters
+    private double[] semesterTable;
+    // Number of students generated so far per major
+    private final int[] majorCounts = new int[MAJORS.length];
+    // Offset of the student numbers, taken from the seed
+    private final int numberOffset;
+    // Largest number of semesters and the Zipf exponent
+    private int maxSemesters = DEFAULT_MAX_SEMESTERS;
+    private double semesterSkew = DEFAULT_SEMESTER_SKEW;
+
+    /**
+     * Constructor to create a generator for the courses of a database
+     *
+     * @param dtb The database whose valid courses the students take
+     * @param seed The seed, the same seed gives the same students
+     * @throws IllegalArgumentException if the database has no valid courses
+     */
+    public RosterGenerator(StudentDTB dtb, long seed) {
+        this.courses = dtb.getValidCourses().toArray(new String[0]);
+        // Every semester takes at least one course
+        if (courses.length == 0) {
+            throw new IllegalArgumentException("The database has no valid courses to enrol students in.");
+        }
+        this.random = new SplittableRandom(seed);
+        this.numberOffset = random.nextInt(NUMBERS);
+        this.semesterTable = zipf(maxSemesters, semesterSkew);
+    }
+
+    /**
+     * Sets the largest number of semesters of one student
+     *
+     * @param maxSemesters The largest number of semesters
+     * @throws IllegalArgumentException if maxSemesters is less than 1 or
+     * more than MAX_SEMESTERS
+     */
+    public void setMaxSemesters(int maxSemesters) {
+        if (maxSemesters < 1 || maxSemesters > MAX_SEMESTERS) {
+            throw new IllegalArgumentException("Number of semesters must be between 1 and " + MAX_SEMESTERS + ".");
+        }
+        this.maxSemesters = maxSemesters;
+        this.semesterTable = zipf(maxSemesters, semesterSkew);
+    }
+
+    /**
+     * Sets the exponent of the Zipf law of the number of semesters: 0 makes
+     * every number equally likely, larger values favour fewer semesters
+     *
+     * @param semesterSkew The exponent
+     * @throws IllegalArgumentException if semesterSkew is negative or not a
+     * number
+     */
+    public void setSemesterSkew(double semesterSkew) {
+        if (!(semesterSkew >= 0)) {
+            throw new IllegalArgumentException("Semester skew must not be negative.");
+        }
+        this.semesterSkew = semesterSkew;
+        this.semesterTable = zipf(maxSemesters, semesterSkew);
+    }
+
+    /**
+     * Generates the next student with a new ID
+     *
+     * @return The student with its enrolments
+     * @throws IllegalStateException if every ID of every major is taken
+     */
+    public Student next() {
+        return next(nextId());
+    }
+
+    /**
+     * Generates the next student with a given ID, e.g. to make a student
+     * whose ID is already taken
+     *
+     * @param id The ID of the student
+     * @return The student with its enrolments
+     */
+    public Student next(String id) {
+        Student student = new Student(id, nextName());
+        // Consecutive semesters from a random starting one
+        int semesters = 1 + pick(semesterTable);
+        int semester = random.nextInt(YEARS * SEASONS.length);
+        for (int s = 0; s < semesters; s++, semester++) {
+            String code = SEASONS[semester % SEASONS.length] + (FIRST_YEAR + semester / SEASONS.length);
+            // 1 to 3 different courses: the first few of a partly shuffled copy
+            int taken = 1 + random.nextInt(Math.min(3, courses.length));
+            for (int c = 0; c < taken; c++) {
+                int other = c + random.nextInt(courses.length - c);
+                String course = courses[other];
+                courses[other] = courses[c];
+                courses[c] = course;
+                student.addCourse(code, course);
+            }
+        }
+        return student;
+    }
+
+    /**
+     * Generates students and hands them to a consumer one at a time
+     *
+     * @param count Number of students
+     * @param sink Receives each student
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if every ID of every major is taken
+     */
+    public void generate(int count, Consumer<Student> sink) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of students must not be negative.");
+        }
+        for (int i = 0; i < count; i++) {
+            sink.accept(next());
+        }
+    }
+
+    /**
+     * Generates students straight into a database, one batch at a time
+     *
+     * @param count Number of students
+     * @param dtb The database to add them to
+     * @return The number of students added, less than count if the
+     * database already had some of the IDs
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if every ID of every major is taken
+     */
+    public int generateInto(int count, StudentDTB dtb) {
+        List<Student> batch = new ArrayList<>(Math.min(count, BATCH_SIZE));
+        int[] added = new int[1];
+        generate(count, student -> {
+            batch.add(student);
+            if (batch.size() == BATCH_SIZE) {
+                added[0] += addBatch(dtb, batch);
+            }
+        });
+        // Add the last, partly filled batch
+        return added[0] + addBatch(dtb, batch);
+    }
+
+    /**
+     * Generates students into a UTF-8 CSV file that StudentImporter can
+     * import: one line per enrolment, after a line of column names
+     *
+     * @param count Number of students
+     * @param file The file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if every ID of every major is taken
+     */
+    public void generateInto(int count, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(StudentImporter.HEADER);
+            out.newLine();
+            for (int i = 0; i < count; i++) {
+                writeCsv(next(), out);
+            }
+        }
+    }
+
+    /**
+     * Writes the CSV lines of one student
+     *
+     * @param student The student
+     * @param out The writer
+     * @throws IOException if the lines cannot be written
+     */
+    private static void writeCsv(Student student, Writer out) throws IOException {
+        String prefix = student.getId() + "," + student.getName() + ",";
+        for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+            for (String course : entry.getValue()) {
+                out.write(prefix);
+                out.write(entry.getKey());
+                out.write(',');
+                out.write(course);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of students to a database and empties the batch
+     *
+     * @param dtb The database
+     * @param batch The students
+     * @return The number of students added
+     */
+    private static int addBatch(StudentDTB dtb, List<Student> batch) {
+        int added = 0;
+        for (boolean ok : dtb.addAll(batch)) {
+            if (ok) {
+                added++;
+            }
+        }
+        batch.clear();
+        return added;
+    }
+
+    /**
+     * Makes up a new ID: a weighted major code and the next student number
+     * of that major
+     *
+     * @return The ID
+     * @throws IllegalStateException if every ID of every major is taken
+     */
+    private String nextId() {
+        int major = pick(majorTable);
+        // Move on to the next major when one runs out of numbers
+        for (int tries = 0; majorCounts[major] == NUMBERS; tries++) {
+            if (tries == MAJORS.length) {
+                throw new IllegalStateException("Cannot generate more than " + (long) NUMBERS * MAJORS.length
+                        + " students.");
+            }
+            major = (major + 1) % MAJORS.length;
+        }
+        // Visit every student number once, in a scattered order
+        int number = (int) ((majorCounts[major]++ * (long) NUMBER_STEP + numberOffset) % NUMBERS);
+        StringBuilder id = new StringBuilder(8).append(MAJORS[major]);
+        for (int digit = NUMBERS / 10; digit > 0; digit /= 10) {
+            id.append((char) ('0' + number / digit % 10));
+        }
+        return id.toString();
+    }
+
+    /**
+     * Makes up a name: family name, middle names and given name
+     *
+     * @return The name
+     */
+    private String nextName() {
+        StringBuilder name = new StringBuilder(32).append(FAMILY[pick(familyTable)]);
+        for (int i = pick(middleTable); i > 0; i--) {
+            name.append(' ').append(MIDDLE[random.nextInt(MIDDLE.length)]);
+        }
+        return name.append(' ').append(GIVEN[random.nextInt(GIVEN.length)]).toString();
+    }
+
+    /**
+     * Picks an index with the probabilities of a cumulative weight table
+     *
+     * @param table The cumulative weights, the last one being the total
+     * @return The index picked
+     */
+    private int pick(double[] table) {
+        double target = random.nextDouble() * table[table.length - 1];
+        // First index whose cumulative weight is above the target
+        int low = 0;
+        int high = table.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (table[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Turns weights into cumulative weights
+     *
+     * @param weights The weights
+     * @return The running totals of the weights
+     */
+    private static double[] cumulative(double[] weights) {
+        double[] table = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            table[i] = total;
+        }
+        return table;
+    }
+
+    /**
+     * Builds the cumulative weights of a Zipf law over 1 to n
+     *
+     * @param n The largest value
+     * @param exponent The exponent of the law
+     * @return The cumulative weights of 1 to n, at indexes 0 to n - 1
+     */
+    private static double[] zipf(int n, double exponent) {
+        double[] weights = new double[n];
+        for (int k = 1; k <= n; k++) {
+            weights[k - 1] = 1 / Math.pow(k, exponent);
+        }
+        return cumulative(weights);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * L02 - Student Management System
+ *
+ * SlowQueryLog writes every findBy that takes longer than a threshold to a
+ * rolling set of text files, together with its plan:
+ * <pre>
+ * 2025-03-07 10:15:02.481 SLOW findBy BY_NAME "anh": FULL_SCAN, 0 keys, 1000000 rows examined, 41233 matched
+ *   plan 1.3 us, scan 48211.9 us, collect 0.0 us, total 48213.2 us
+ * </pre>
+ * The files rotate like a java.util.logging FileHandler: students-slow.0.log
+ * is the newest and once it is full it becomes students-slow.1.log, and so
+ * on, the oldest file being dropped. Attach the log with
+ * StudentDTB.setSlowQueryLog and close it when done.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class SlowQueryLog implements AutoCloseable {
+
+    // Default size of one file in bytes, and number of files kept
+    public static final int DEFAULT_FILE_SIZE = 1024 * 1024;
+    public static final int DEFAULT_FILES = 5;
+    // Time stamp at the start of every entry
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    // Writes and rotates the files
+    private final FileHandler files;
+    // Searches at least this long are logged, in nanoseconds
+    private volatile long thresholdNanos;
+    // Number of searches logged
+    private final AtomicLong logged = new AtomicLong();
+
+    /**
+     * Constructor to create a log with the default file size and number of
+     * files
+     *
+     * @param pattern FileHandler pattern of the file names, %g being the
+     * generation, e.g. "students-slow.%g.log"
+     * @param threshold Searches at least this long are logged
+     * @param unit Unit of the threshold
+     * @throws IOException if the first file cannot be opened
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public SlowQueryLog(String pattern, long threshold, TimeUnit unit) throws IOException {
+        this(pattern, threshold, unit, DEFAULT_FILE_SIZE, DEFAULT_FILES);
+    }
+
+    /**
+     * Constructor to create a log
+     *
+     * @param pattern FileHandler pattern of the file names, %g being the
+     * generation, e.g. "students-slow.%g.log"
+     * @param threshold Searches at least this long are logged
+     * @param unit Unit of the threshold
+     * @param fileSize Size in bytes after which a file is rotated
+     * @param fileCount Number of files kept
+     * @throws IOException if the first file cannot be opened
+     * @throws IllegalArgumentException if the threshold is negative, the
+     * file size is not positive or fewer than 1 file is kept
+     */
+    public SlowQueryLog(String pattern, long threshold, TimeUnit unit, int fileSize, int fileCount)
+            throws IOException {
+        if (fileSize < 1 || fileCount < 1) {
+            throw new IllegalArgumentException("File size and number of files must be at least 1.");
+        }
+        setThreshold(threshold, unit);
+        // Append, so a restart does not wipe the slow searches of the last run
+        files = new FileHandler(pattern, fileSize, fileCount, true);
+        files.setEncoding("UTF-8");
+        files.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return TIME.format(Instant.ofEpochMilli(record.getMillis())) + " SLOW " + record.getMessage()
+                        + System.lineSeparator();
+            }
+        });
+    }
+
+    /**
+     * Sets the threshold above which searches are logged
+     *
+     * @param threshold Searches at least this long are logged, 0 logs every
+     * search
+     * @param unit Unit of the threshold
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public void setThreshold(long threshold, TimeUnit unit) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative.");
+        }
+        thresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Gets the threshold above which searches are logged
+     *
+     * @param unit Unit to return the threshold in
+     * @return The threshold
+     */
+    public long getThreshold(TimeUnit unit) {
+        return unit.convert(thresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the number of searches logged so far
+     *
+     * @return The number of searches
+     */
+    public long getLogged() {
+        return logged.get();
+    }
+
+    /**
+     * Logs a search if it reached the threshold
+     *
+     * @param plan The plan of the search
+     */
+    void offer(QueryPlan plan) {
+        if (plan.getTotalNanos() >= thresholdNanos) {
+            // FileHandler writes and flushes each entry under its own lock
+            files.publish(new LogRecord(Level.WARNING, plan.toString()));
+            logged.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the current file and releases its lock file
+     */
+    @Override
+    public void close() {
+        files.close();
+    }
+}
@@ -5,26 +5,55 @@
  */
 package ce190770_l02;
 
-import java.util.*;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * L02 - Student Management System
  *
  * Student class represents a student entity in the student management system.
  * This class contains basic information about a student including their ID,
- * name, and a map of semesters to courses.
+ * name, and a map of semesters to courses. The semesters and courses can also
+ * be kept in a compact coded layout (see Enrolments) to save memory.
+ * A student can be shared between threads: enrolment reads and changes lock
+ * the student itself, and the read methods return copies. The database
+ * versions of StudentDTB hold read-only copies of students, which refuse
+ * every change.
  *
  * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
  */
 public class Student {
 
     // Student's unique identifier (e.g., CE123456)
-    private String id;
+    private volatile String id;
     // Student's full name
-    private String name;
-    // Map to store semesters and their associated courses
-    // Key: semester (e.g., "SP25"), Value: Set of courses for that semester
-    private final Map<String, Set<String>> semesterCourses;
+    private volatile String name;
+    // Name trimmed and upper-cased once, used as the name sort key
+    private volatile String sortName;
+    // Storage of semesters and their associated courses, either a map of
+    // course sets or the compact coded layout (see Enrolments)
+    // Only used while holding the lock of this student
+    private Enrolments enrolments;
+    // Chronological key of the earliest semester, see StudentDTB.semesterKey
+    // Integer.MAX_VALUE when the student has no semester
+    private volatile int semesterKey = Integer.MAX_VALUE;
+    // Smallest course name over all semesters, null when there is no course
+    private volatile String minCourse;
+    // Database that currently holds this student, or null if not yet added
+    // Used to keep the database indexes in sync when the student changes
+    volatile StudentDTB owner;
+    // Position of this student in the owning database's storage list
+    int slot = -1;
+    // Order in which the owning database received this student, used to
+    // break ties between equal names in the sorted name view
+    long seq;
+    // Whether this is a read-only copy held by a database version
+    private boolean readOnly;
+    // Latest read-only copy of this student, shared by database versions
+    // until the student changes; weak so that it goes away with the last
+    // version that uses it
+    private volatile WeakReference<Student> version;
 
     /**
      * Constructor to create a new Student object with all required fields
@@ -33,12 +62,143 @@ public class Student {
      * @param name The student's full name
      */
     public Student(String id, String name) {
+        // Initialize the semester-courses map
+        this(id, name, new Enrolments.Hashed());
+    }
+
+    /**
+     * Constructor to create a new Student object that stores its semesters
+     * and courses in the compact layout: semesters as small codes and the
+     * courses of each semester as a bitset over the course dictionary
+     *
+     * @param id The student's unique identifier
+     * @param name The student's full name
+     * @param dictionary Course dictionary, usually
+     * StudentDTB.getCourseDictionary()
+     */
+    public Student(String id, String name, CourseDictionary dictionary) {
+        // Use compact storage instead of the map
+        this(id, name, new Enrolments.Compact(dictionary));
+    }
+
+    /**
+     * Constructor for students whose enrolments live in another storage, such
+     * as the row views of StudentStore
+     *
+     * @param id The student's unique identifier
+     * @param name The student's full name
+     * @param enrolments Storage of the student's semesters and courses
+     */
+    Student(String id, String name, Enrolments enrolments) {
         // Initialize the student ID
         this.id = id;
-        // Initialize the student name
-        this.name = name;
-        // Initialize the semester-courses map
-        this.semesterCourses = new HashMap<>();
+        // Initialize the student name and its sort key
+        assignName(name);
+        // Initialize the semester and course storage
+        this.enrolments = enrolments;
+    }
+
+    /**
+     * Gets a read-only copy of the student as it is now. The copy is reused
+     * until the student changes.
+     *
+     * @return Read-only copy of the student, or this student if it is
+     * already read-only
+     */
+    synchronized Student freeze() {
+        if (readOnly) {
+            return this;
+        }
+        // Reuse the last copy if the student did not change since
+        WeakReference<Student> last = version;
+        Student copy = last == null ? null : last.get();
+        if (copy == null) {
+            // Copy every field, including the cached sort keys
+            copy = new Student(id, name, enrolments.copy());
+            copy.semesterKey = semesterKey;
+            copy.minCourse = minCourse;
+            copy.seq = seq;
+            copy.readOnly = true;
+            version = new WeakReference<>(copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Lets the owning database keep a copy of the student as it is now for a
+     * version being taken, called with the student's lock held before any
+     * change
+     */
+    private void beforeChange() {
+        StudentDTB dtb = owner;
+        if (dtb != null) {
+            dtb.beforeChange(this);
+        }
+    }
+
+    /**
+     * Builds a read-only copy through the getters instead of the fields, for
+     * views whose data is kept somewhere else; the copy is never cached
+     *
+     * @return New read-only copy of the student
+     */
+    Student readOnlyCopy() {
+        Student copy = new Student(getId(), getName(), enrolments().copy());
+        copy.semesterKey = getSemesterKey();
+        copy.minCourse = getMinCourse();
+        copy.readOnly = true;
+        return copy;
+    }
+
+    /**
+     * Checks if this is a read-only copy taken from a database version
+     *
+     * @return true if every change to this student is refused
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Refuses a change to a read-only copy
+     *
+     * @throws UnsupportedOperationException if this student is read-only
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Student is a read-only copy from a database version.");
+        }
+    }
+
+    /**
+     * Gets the storage of the student's semesters and courses
+     *
+     * @return The enrolment storage
+     */
+    synchronized Enrolments enrolments() {
+        return enrolments;
+    }
+
+    /**
+     * Switches the student to the compact layout, keeping its enrolments
+     *
+     * @param dictionary Course dictionary the course bitsets refer to
+     * @throws IllegalArgumentException if a semester does not follow the
+     * SP/SU/FA + 2-digit year pattern
+     */
+    synchronized void useCompactStorage(CourseDictionary dictionary) {
+        // Nothing to do if the student is already compact or read-only
+        if (enrolments instanceof Enrolments.Compact || readOnly) {
+            return;
+        }
+        // Copy every enrolment into the new storage before switching
+        Enrolments compact = new Enrolments.Compact(dictionary);
+        for (Map.Entry<String, Set<String>> entry : enrolments.asMap().entrySet()) {
+            for (String course : entry.getValue()) {
+                compact.add(entry.getKey(), course);
+            }
+        }
+        enrolments = compact;
     }
 
     /**
@@ -55,10 +215,32 @@ public class Student {
      * Sets the student's ID
      *
      * @param id The new ID to set
+     * @throws IllegalArgumentException if another student in the owning
+     * database already uses the new ID
+     * @throws UnsupportedOperationException if this student is read-only
      */
     public void setId(String id) {
-        // Update the student's ID
+        checkWritable();
+        // Let the owning database re-key its ID index and change the ID
+        StudentDTB dtb = owner;
+        if (dtb != null) {
+            dtb.reindexId(this, id);
+        } else {
+            // Update the student's ID
+            assignId(id);
+        }
+    }
+
+    /**
+     * Changes the ID field only, called by setId and by the owning database
+     *
+     * @param id The new ID
+     */
+    void assignId(String id) {
+        beforeChange();
         this.id = id;
+        // Later database versions need a new copy
+        version = null;
     }
 
     /**
@@ -75,10 +257,81 @@ public class Student {
      * Sets the student's name
      *
      * @param name The new name to set
+     * @throws UnsupportedOperationException if this student is read-only
      */
     public void setName(String name) {
-        // Update the student's name
+        checkWritable();
+        // Let the owning database move the student in its name view
+        StudentDTB dtb = owner;
+        if (dtb != null) {
+            dtb.rename(this, name);
+        } else {
+            // Update the student's name and its sort key
+            assignName(name);
+        }
+    }
+
+    /**
+     * Changes the name and its sort key only, called by setName and by the
+     * owning database
+     *
+     * @param name The new name
+     */
+    void assignName(String name) {
+        beforeChange();
+        this.sortName = toSortName(name);
         this.name = name;
+        // Later database versions need a new copy
+        version = null;
+    }
+
+    /**
+     * Gets the name sort key, the trimmed upper-case name
+     *
+     * @return The name sort key
+     */
+    String getSortName() {
+        return sortName;
+    }
+
+    /**
+     * Gets the semester sort key, the key of the earliest semester
+     *
+     * @return The earliest semester key, or Integer.MAX_VALUE if none
+     */
+    int getSemesterKey() {
+        return semesterKey;
+    }
+
+    /**
+     * Gets the course sort key, the smallest course name
+     *
+     * @return The smallest course name, or null if the student has no course
+     */
+    String getMinCourse() {
+        return minCourse;
+    }
+
+    /**
+     * Recomputes the cached semester and course sort keys after the
+     * enrolments changed
+     */
+    void refreshSortKeys() {
+        // Ask the storage for the earliest semester and smallest course
+        semesterKey = enrolments.earliestSemesterKey();
+        minCourse = enrolments.minCourse();
+        // Later database versions need a new copy
+        version = null;
+    }
+
+    /**
+     * Converts a name to its sort key
+     *
+     * @param name The name to convert
+     * @return The trimmed upper-case name
+     */
+    private static String toSortName(String name) {
+        return name.trim().toUpperCase();
     }
 
     /**
@@ -86,9 +339,9 @@ public class Student {
      *
      * @return Set of all semesters
      */
-    public Set<String> getSemesters() {
+    public synchronized Set<String> getSemesters() {
         // Return set of all semesters
-        return new HashSet<>(semesterCourses.keySet());
+        return enrolments.semesters();
     }
 
     /**
@@ -97,19 +350,19 @@ public class Student {
      * @param semester The semester to get courses for
      * @return Set of courses for the semester, or empty set if semester not found
      */
-    public Set<String> getCourses(String semester) {
+    public synchronized Set<String> getCourses(String semester) {
         // Return courses for the semester, or empty set if semester doesn't exist
-        return semesterCourses.getOrDefault(semester, new HashSet<>());
+        return enrolments.courses(semester);
     }
 
     /**
      * Gets all semester-courses mappings
      *
-     * @return Map of all semester-courses mappings
+     * @return Read-only copy of all semester-courses mappings
      */
-    public Map<String, Set<String>> getAllSemesterCourses() {
+    public synchronized Map<String, Set<String>> getAllSemesterCourses() {
         // Return the entire semester-courses map
-        return semesterCourses;
+        return enrolments.asMap();
     }
 
     /**
@@ -118,12 +371,22 @@ public class Student {
      * @param semester The semester to add the course to
      * @param course The course to add
      * @return true if course was added, false if it was already present
+     * @throws UnsupportedOperationException if this student is read-only
      */
-    public boolean addCourse(String semester, String course) {
-        // Get or create course set for the semester
-        Set<String> courses = semesterCourses.computeIfAbsent(semester, k -> new HashSet<>());
-        // Add the course and return whether it was added
-        return courses.add(course);
+    public synchronized boolean addCourse(String semester, String course) {
+        checkWritable();
+        beforeChange();
+        // Add the course and remember whether it was added
+        boolean added = enrolments.add(semester, course);
+        // Keep the semester and course sort keys up to date
+        if (added) {
+            refreshSortKeys();
+        }
+        // Update the database's semester and course indexes
+        if (added && owner != null) {
+            owner.courseAdded(this, semester, course);
+        }
+        return added;
     }
 
     /**
@@ -132,15 +395,18 @@ public class Student {
      * @param semester The semester to remove the course from
      * @param course The course to remove
      * @return true if course was removed, false if it wasn't found
+     * @throws UnsupportedOperationException if this student is read-only
      */
-    public boolean removeCourse(String semester, String course) {
-        // Get courses for the semester
-        Set<String> courses = semesterCourses.get(semester);
-        // If semester exists and course is removed, return true
-        if (courses != null && courses.remove(course)) {
-            // If semester has no more courses, remove the semester
-            if (courses.isEmpty()) {
-                semesterCourses.remove(semester);
+    public synchronized boolean removeCourse(String semester, String course) {
+        checkWritable();
+        beforeChange();
+        // Remove the course, the storage drops the semester when it is empty
+        if (enrolments.remove(semester, course)) {
+            // Keep the semester and course sort keys up to date
+            refreshSortKeys();
+            // Update the database's semester and course indexes
+            if (owner != null) {
+                owner.courseRemoved(this, semester, course);
             }
             return true;
         }
@@ -152,9 +418,53 @@ public class Student {
      *
      * @param semester The semester to remove
      * @return true if semester was removed, false if it wasn't found
+     * @throws UnsupportedOperationException if this student is read-only
+     */
+    public synchronized boolean removeSemester(String semester) {
+        checkWritable();
+        beforeChange();
+        // Remove semester and keep its courses for the index update
+        Set<String> removed = enrolments.removeSemester(semester);
+        // Keep the semester and course sort keys up to date
+        if (removed != null) {
+            refreshSortKeys();
+        }
+        // Update the database's semester and course indexes
+        if (removed != null && owner != null) {
+            owner.semesterRemoved(this, semester, removed);
+        }
+        // Return whether the semester existed
+        return removed != null;
+    }
+
+    /**
+     * Checks if the student takes a course in any semester (case-insensitive)
+     *
+     * @param course The course to look for
+     * @return true if any semester contains the course
+     */
+    synchronized boolean hasCourse(String course) {
+        return enrolments.hasCourse(course);
+    }
+
+    /**
+     * Checks if the student has a semester (case-insensitive)
+     *
+     * @param semester The semester to look for
+     * @return true if the student has the semester
+     */
+    synchronized boolean hasSemester(String semester) {
+        return enrolments.hasSemester(semester);
+    }
+
+    /**
+     * Checks if the student takes a course in a semester (case-insensitive)
+     *
+     * @param semester The semester to look in
+     * @param course The course to look for
+     * @return true if the course is taken in that semester
      */
-    public boolean removeSemester(String semester) {
-        // Remove semester and return whether it existed
-        return semesterCourses.remove(semester) != null;
+    synchronized boolean takesCourse(String semester, String course) {
+        return enrolments.takesCourse(semester, course);
     }
 }
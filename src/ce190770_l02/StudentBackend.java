@@ -0,0 +1,152 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentBackend is what Menu and the importer need from a student database.
+ * StudentDTB is the default, thread-safe and logged backend; StudentStore is
+ * the columnar, in-memory one. The backend is chosen when the program starts.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public interface StudentBackend {
+
+    /**
+     * Adds a student to the database
+     *
+     * @param student The student to add
+     * @return true if the student was added, false if the ID already exists
+     */
+    boolean add(Student student);
+
+    /**
+     * Adds several students to the database
+     *
+     * @param students The students to add
+     * @return For each student in iteration order, true if it was added,
+     * false if its ID already existed
+     */
+    boolean[] addAll(Collection<Student> students);
+
+    /**
+     * Checks if a student ID exists in the database
+     *
+     * @param input The student ID to check
+     * @return true if the ID exists, false otherwise
+     */
+    boolean chkIdExist(String input);
+
+    /**
+     * Finds a student by exact ID
+     *
+     * @param id The student ID
+     * @return The student, or null if no student has this ID
+     */
+    Student findById(String id);
+
+    /**
+     * Finds a student by exact ID in order to change it. Unlike findById,
+     * never returns a read-only copy.
+     *
+     * @param id The student ID
+     * @return The student, or null if no student has this ID
+     */
+    Student findForUpdate(String id);
+
+    /**
+     * Finds students based on a search input and specified criteria
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by (ID, Name, Semester,
+     * Course)
+     * @return List of students matching the search criteria, in the order
+     * the backend documents for that criteria
+     */
+    List<Student> findBy(String input, StudentDTB.SortType sortType);
+
+    /**
+     * Finds students like findBy, as a stream that can be paged with skip
+     * and limit
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by
+     * @return Stream of the matching students
+     */
+    Stream<Student> find(String input, StudentDTB.SortType sortType);
+
+    /**
+     * Deletes a student from the database by ID
+     *
+     * @param id The ID of the student to delete
+     * @return true if the student was deleted, false if no student has this
+     * ID
+     */
+    boolean deleteStudent(String id);
+
+    /**
+     * Sorts the database by the given criteria
+     *
+     * @param sortType The criteria to sort by
+     */
+    void sort(StudentDTB.SortType sortType);
+
+    /**
+     * Default sort method that sorts by name
+     */
+    void sort();
+
+    /**
+     * Gets all students in the database, in the order of the last sort
+     *
+     * @return Read-only list of all students
+     */
+    List<Student> report();
+
+    /**
+     * Gets all students in the requested order, without changing the order
+     * of report()
+     *
+     * @param sortType The criteria to order by
+     * @return Read-only list of all students in the requested order
+     */
+    List<Student> sortedView(StudentDTB.SortType sortType);
+
+    /**
+     * Pins the current version of the database, holding read-only copies of
+     * the students that later changes do not affect
+     *
+     * @return The current database version
+     */
+    DatabaseVersion snapshot();
+
+    /**
+     * Gets the number of students in the database
+     *
+     * @return Number of students
+     */
+    int size();
+
+    /**
+     * Checks if the database is empty
+     *
+     * @return true if the database is empty, false otherwise
+     */
+    boolean dtbIsEmpty();
+
+    /**
+     * Blocks until every change is durable
+     *
+     * @throws IOException if a change could not be written
+     */
+    void sync() throws IOException;
+}
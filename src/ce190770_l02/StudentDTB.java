@@ -5,10 +5,38 @@
  */
 package ce190770_l02;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * L02 - Student Management System
@@ -18,116 +46,1559 @@ import java.util.Set;
  * deleting, and sorting student records. It also maintains valid courses and
  * semesters.
  *
+ * The database can be shared between threads. Lookups go through concurrent
+ * indexes without locking. Adding, deleting, re-keying, renaming and sorting
+ * take one writer lock; enrolment changes only lock the student being
+ * changed. Methods that return several students never return the internal
+ * storage: searches return new lists, and the full, ID-ordered and
+ * name-ordered lists are cached read-only snapshots that are rebuilt once
+ * after a change, so repeated reads share one copy. Those lists still hold
+ * the live students; snapshot() instead pins a DatabaseVersion of read-only
+ * student copies that later changes cannot reach.
+ *
+ * A database filled from a snapshot with loadInBackground() can be used at
+ * once: until the indexes are filled, ID checks, ID lookups and the size
+ * are answered from the mapped snapshot file, lookups as read-only copies,
+ * and every other operation waits for the load.
+ *
  * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
  */
-public class StudentDTB {
+public class StudentDTB implements StudentBackend {
 
-    // List to store all student records
+    // List to store all student records, only used while holding writeLock
+    // Deleted students leave a null slot behind until the list is compacted
     private ArrayList<Student> studentdtb = new ArrayList<>();
+    // Taken by every change to the students, their IDs, names and order
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Primary-key index: normalized student ID -> student record
+    private final Map<String, Student> idIndex = new ConcurrentHashMap<>();
+    // Inverted index: normalized semester -> students enrolled in it
+    private final ConcurrentHashMap<String, Set<Student>> semesterIndex = new ConcurrentHashMap<>();
+    // Inverted index: normalized course -> students taking it in any semester
+    private final ConcurrentHashMap<String, Set<Student>> courseIndex = new ConcurrentHashMap<>();
+    // Posting lists keep students in the order they were added
+    private static final Comparator<Student> ADDED_ORDER = Comparator.comparingLong(student -> student.seq);
+    // Sorted view: normalized ID -> student, kept in ID order on every change
+    private final NavigableMap<String, Student> idView = new ConcurrentSkipListMap<>();
+    // Sorted view of students by name, ties kept in the order they were added
+    private final NavigableSet<Student> nameView = new ConcurrentSkipListSet<>(
+            Comparator.comparing(Student::getSortName).thenComparingLong(student -> student.seq));
+    // Cached read-only copies of the student list and of the ID and name
+    // views, null once a change made them stale
+    private volatile List<Student> reportSnapshot;
+    private volatile IdSnapshot idSnapshot;
+    private volatile List<Student> nameSnapshot;
+    // Number of committed changes, including enrolment changes; a database
+    // version is labelled with it
+    private final AtomicLong changes = new AtomicLong();
+    // Latest database version, kept until memory runs short so the next
+    // version can share the copies of students that did not change
+    private volatile SoftReference<DatabaseVersion> latestVersion;
+    // Copies of the students that changed while snapshot() takes a version,
+    // from before their change; null while no version is being taken
+    private volatile Map<Student, Student> keptCopies;
+    // Lets one snapshot() at a time take a version
+    private final ReentrantLock versionLock = new ReentrantLock();
+    // Sequence number given to the next added student
+    private long nextSeq = 0;
+    // Number of null slots left in studentdtb by deleted students
+    private int deletedSlots = 0;
+    // Interned course names, shared by every compact student of this database
+    private final CourseDictionary courseDictionary = new CourseDictionary();
+    // Whether added students are switched to the compact layout
+    private volatile boolean compactStorage = false;
+    // Write-ahead log that records every change, or null if not logged
+    private volatile WriteAheadLog log;
+    // Snapshot still being loaded in the background, null once its students
+    // are in the indexes; kept if the load failed
+    private volatile StudentSnapshot pending;
+    // Completes once the background load is done, null if none was started
+    private volatile CompletableFuture<Void> loading;
+    // Log of searches slower than its threshold, or null if not logged
+    private volatile SlowQueryLog slowQueryLog;
+    // Whether sort() splits the work across a ForkJoinPool
+    private volatile boolean parallelSort = false;
+    // Size below which the parallel sort falls back to sequential sorting
+    private volatile int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
+    // Default size below which sorting in parallel is not worth it
+    public static final int DEFAULT_PARALLEL_SORT_THRESHOLD = 8192;
+    // Recent name, semester and course search results
+    private final QueryCache queryCache = new QueryCache();
+    // Latency and row counts of the operations
+    private final DatabaseMetrics metrics = new DatabaseMetrics(queryCache);
     // Set of valid courses that can be assigned to students
     private final Set<String> courses = new HashSet<>();
     // Set of valid semester prefixes (SP, SU, FA)
     private final Set<String> semesters = new HashSet<>();
 
-    // Static initialization block to set up valid courses and semesters
-    {
-        // Add valid courses to the set
-        courses.add("Java");
-        courses.add(".NET");
-        courses.add("C/C++");
+    // Static initialization block to set up valid courses and semesters
+    {
+        // Add valid courses to the set
+        Collections.addAll(courses, StudentValidator.COURSES);
+        // Give the valid courses the first bits of the course dictionary
+        for (String course : courses) {
+            courseDictionary.intern(course);
+        }
+
+        // Add valid semester prefixes: Spring, Summer, Fall
+        Collections.addAll(semesters, StudentValidator.SEASONS);
+    }
+
+    /**
+     * Adds a new student to the database
+     *
+     * @param student The student object to add
+     * @return true if the student was added, false if the ID already exists
+     * @throws IllegalArgumentException if compact storage is enabled and a
+     * semester of the student does not fit the compact layout, or if the
+     * student is a read-only copy from a database version
+     */
+    @Override
+    public boolean add(Student student) {
+        awaitLoad();
+        // Read-only copies cannot follow later changes
+        checkAddable(student);
+        long start = metrics.start();
+        writeLock.lock();
+        try {
+            return insert(student);
+        } finally {
+            writeLock.unlock();
+            metrics.add().record(start);
+        }
+    }
+
+    /**
+     * Adds many students at once, taking the writer lock once for the whole
+     * batch. Students whose ID is already taken, by the database or by an
+     * earlier student of the batch, are skipped.
+     *
+     * @param students The students to add
+     * @return Per student, in iteration order: true if it was added, false
+     * if its ID already exists
+     * @throws IllegalArgumentException if a student is a read-only copy from
+     * a database version, then nothing is added; or if compact storage is
+     * enabled and a semester does not fit the compact layout, then the
+     * students before it stay added
+     */
+    @Override
+    public boolean[] addAll(Collection<Student> students) {
+        awaitLoad();
+        // Refuse the whole batch before changing anything
+        for (Student student : students) {
+            checkAddable(student);
+        }
+        boolean[] added = new boolean[students.size()];
+        long start = metrics.start();
+        writeLock.lock();
+        try {
+            int i = 0;
+            for (Student student : students) {
+                added[i++] = insert(student);
+            }
+        } finally {
+            writeLock.unlock();
+            metrics.addAll().record(start);
+        }
+        return added;
+    }
+
+    /**
+     * Fills an empty database with the students of a snapshot in one pass.
+     * Each ordered index is filled in its own key order, so every insert
+     * lands at the end of its skip list instead of at a random position,
+     * and the query cache is dropped once instead of per student. The
+     * students are not written to the write-ahead log, as they already are
+     * in a snapshot. Falls back to adding them one by one if the database
+     * is not empty or the ID order does not hold.
+     *
+     * @param students The students in the order of the last sort; they
+     * become this database's own records
+     * @param idOrder Positions in students sorted by normalized ID, or null
+     * if unknown
+     * @return The number of students added
+     * @throws IllegalArgumentException if compact storage is enabled and a
+     * semester of a student does not fit the compact layout
+     */
+    int load(Student[] students, int[] idOrder) {
+        long start = metrics.start();
+        writeLock.lock();
+        try {
+            // Normalize every ID once, in ID order, and check the order holds
+            String[] keys = idOrder == null || idOrder.length != students.length ? null : new String[students.length];
+            for (int i = 0; keys != null && i < keys.length; i++) {
+                keys[i] = normalizeId(students[idOrder[i]].getId());
+                if (i > 0 && keys[i - 1].compareTo(keys[i]) >= 0) {
+                    keys = null;
+                }
+            }
+            if (keys == null || !studentdtb.isEmpty()) {
+                int added = 0;
+                for (Student student : students) {
+                    if (insert(student)) {
+                        added++;
+                    }
+                }
+                return added;
+            }
+            // Number the students and take them in as records
+            studentdtb.ensureCapacity(students.length);
+            for (Student student : students) {
+                if (compactStorage) {
+                    student.useCompactStorage(courseDictionary);
+                }
+                student.seq = nextSeq++;
+                student.owner = this;
+                student.slot = studentdtb.size();
+                studentdtb.add(student);
+            }
+            // ID index, and the ID view in ID order
+            for (int i = 0; i < keys.length; i++) {
+                idIndex.put(keys[i], students[idOrder[i]]);
+                idView.put(keys[i], students[idOrder[i]]);
+            }
+            // Name view in name order
+            Student[] byName = students.clone();
+            Arrays.sort(byName, nameView.comparator());
+            for (Student student : byName) {
+                nameView.add(student);
+            }
+            // Posting lists in the order the students were added; a semester
+            // or course string is normalized once, not once per enrolment
+            Map<String, Set<Student>> semesterPostings = new HashMap<>();
+            Map<String, Set<Student>> coursePostings = new HashMap<>();
+            for (Student student : students) {
+                // The students are not shared yet, so their storage is read
+                // in place instead of copied
+                student.enrolments().forEachSemester((semester, courses) -> {
+                    posting(semesterIndex, semesterPostings, semester).add(student);
+                    for (String course : courses) {
+                        posting(courseIndex, coursePostings, course).add(student);
+                    }
+                });
+            }
+            invalidateSnapshots();
+            queryCache.clear();
+            return students.length;
+        } finally {
+            writeLock.unlock();
+            metrics.addAll().record(start);
+        }
+    }
+
+    /**
+     * Starts filling the database from a snapshot on a background thread and
+     * returns at once. Until the students are in the indexes, chkIdExist,
+     * existsAll, findById, getAll, size and dtbIsEmpty read the mapped file,
+     * and every other operation waits for the load to finish. The snapshot
+     * was checked when it was opened, so a damaged file is refused before
+     * this is called; should the load fail anyway, for example for lack of
+     * memory, those keep reading the file and every other operation throws.
+     * A database that is not empty is filled before this returns.
+     *
+     * @param snapshot The opened snapshot
+     */
+    void loadInBackground(StudentSnapshot snapshot) {
+        // A second snapshot goes in after the first one
+        awaitLoad();
+        writeLock.lock();
+        try {
+            if (!studentdtb.isEmpty()) {
+                snapshot.loadInto(this);
+                return;
+            }
+            // Publish the snapshot before any reader can see the future
+            pending = snapshot;
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            loading = done;
+            Thread loader = new Thread(() -> {
+                try {
+                    snapshot.loadInto(this);
+                    pending = null;
+                    done.complete(null);
+                } catch (RuntimeException | Error e) {
+                    // Keep refusing operations, the database is incomplete;
+                    // the size still comes from the file, so it does not
+                    // look empty
+                    done.completeExceptionally(e);
+                }
+            }, "snapshot-loader");
+            loader.setDaemon(true);
+            loader.start();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a snapshot loading in the background is in the indexes
+     *
+     * @throws IllegalStateException if the snapshot could not be loaded
+     */
+    private void awaitLoad() {
+        CompletableFuture<Void> done = loading;
+        if (done != null) {
+            try {
+                done.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw new IllegalStateException("Snapshot could not be loaded: "
+                        + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()), cause);
+            }
+        }
+    }
+
+    /**
+     * Gets the posting list of a semester or course while loading, creating
+     * it if needed
+     *
+     * @param index The inverted index
+     * @param postings Posting lists already looked up, by raw string
+     * @param key The semester or course as stored by the student
+     * @return The posting list
+     */
+    private static Set<Student> posting(ConcurrentHashMap<String, Set<Student>> index,
+            Map<String, Set<Student>> postings, String key) {
+        Set<Student> res = postings.get(key);
+        if (res == null) {
+            res = index.computeIfAbsent(normalizeKey(key), k -> new Posting());
+            postings.put(key, res);
+        }
+        return res;
+    }
+
+    /**
+     * Refuses students that cannot be added to a database
+     *
+     * @param student The student to check
+     * @throws IllegalArgumentException if the student is a read-only copy
+     * from a database version
+     */
+    private static void checkAddable(Student student) {
+        if (student.isReadOnly()) {
+            throw new IllegalArgumentException("A read-only student cannot be added to a database.");
+        }
+    }
+
+    /**
+     * Adds a student, called with writeLock held
+     *
+     * @param student The student to add
+     * @return true if the student was added, false if the ID already exists
+     * @throws IllegalArgumentException if compact storage is enabled and a
+     * semester of the student does not fit the compact layout
+     */
+    private boolean insert(Student student) {
+        // Normalize the ID so lookups are case-insensitive
+        String key = normalizeId(student.getId());
+        // Reject the student if the ID is already taken
+        if (idIndex.containsKey(key)) {
+            return false;
+        }
+        Map<String, Set<String>> enrolments;
+        synchronized (student) {
+            // Convert the student to the compact layout if enabled
+            if (compactStorage) {
+                student.useCompactStorage(courseDictionary);
+            }
+            // Number the student before it enters the ordered indexes
+            student.seq = nextSeq++;
+            // Register the student's existing enrolments in the inverted indexes
+            enrolments = student.getAllSemesterCourses();
+            for (Map.Entry<String, Set<String>> entry : enrolments.entrySet()) {
+                for (String course : entry.getValue()) {
+                    indexCourse(student, entry.getKey(), course);
+                }
+            }
+            // Attach the student to this database so later changes reach the index
+            student.owner = this;
+            student.slot = studentdtb.size();
+            // Log the student with all of its enrolments
+            WriteAheadLog changes = log;
+            if (changes != null) {
+                changes.logAdd(student);
+            }
+        }
+        // Register the student in the ID index and the sorted views
+        idIndex.put(key, student);
+        idView.put(key, student);
+        nameView.add(student);
+        // Add the student to the database
+        studentdtb.add(student);
+        invalidateSnapshots();
+        queryCache.studentChanged(student.getName(), enrolments);
+        return true;
+    }
+
+    /**
+     * Finds a student by exact ID (case-insensitive) using the ID index.
+     * While a snapshot is loading, the student is read from the mapped file
+     * instead, as a read-only copy; use findForUpdate to change it.
+     *
+     * @param id The ID to look up
+     * @return The matching student, or null if no student has this ID
+     */
+    @Override
+    public Student findById(String id) {
+        // Search the mapped snapshot while it is still loading
+        StudentSnapshot loadingFrom = pending;
+        if (loadingFrom != null) {
+            return readOnly(loadingFrom.findById(id));
+        }
+        // Constant-time lookup in the ID index
+        return idIndex.get(normalizeId(id));
+    }
+
+    /**
+     * Finds a student by exact ID (case-insensitive) in order to change it,
+     * waiting for a snapshot loading in the background
+     *
+     * @param id The ID to look up
+     * @return The matching student, or null if no student has this ID
+     */
+    @Override
+    public Student findForUpdate(String id) {
+        awaitLoad();
+        return idIndex.get(normalizeId(id));
+    }
+
+    /**
+     * Turns a student read from a loading snapshot into a read-only copy,
+     * as changes to it would be lost
+     *
+     * @param student The student read from the snapshot, or null
+     * @return The read-only copy, or null
+     */
+    private static Student readOnly(Student student) {
+        return student == null ? null : student.readOnlyCopy();
+    }
+
+    /**
+     * Finds many students by exact ID (case-insensitive) in one pass over
+     * the IDs, one ID index lookup each. While a snapshot is loading, they
+     * are read from the mapped file as read-only copies, like findById.
+     *
+     * @param ids The IDs to look up
+     * @return Per ID, in iteration order: the matching student, or null if
+     * no student has the ID
+     */
+    public List<Student> getAll(Collection<String> ids) {
+        List<Student> res = new ArrayList<>(ids.size());
+        // Search the mapped snapshot while it is still loading
+        StudentSnapshot loadingFrom = pending;
+        if (loadingFrom != null) {
+            for (String id : ids) {
+                res.add(readOnly(loadingFrom.findById(id)));
+            }
+            return res;
+        }
+        for (String id : ids) {
+            res.add(idIndex.get(normalizeId(id)));
+        }
+        return res;
+    }
+
+    /**
+     * Checks many student IDs in one pass over the IDs
+     *
+     * @param ids The IDs to check
+     * @return Per ID, in iteration order: true if the ID exists
+     */
+    public boolean[] existsAll(Collection<String> ids) {
+        boolean[] exists = new boolean[ids.size()];
+        int i = 0;
+        for (String id : ids) {
+            exists[i++] = chkIdExist(id);
+        }
+        return exists;
+    }
+
+    /**
+     * Adds many enrolments at once. The enrolments are grouped by student,
+     * so every student is looked up and locked once however many of its
+     * enrolments the batch holds.
+     *
+     * @param enrolments The enrolments to add
+     * @return Per enrolment, in list order: what happened to it
+     */
+    public EnrolResult[] enrol(List<Enrolment> enrolments) {
+        awaitLoad();
+        EnrolResult[] results = new EnrolResult[enrolments.size()];
+        // Positions of the enrolments of every student, in list order
+        Map<String, List<Integer>> byStudent = new LinkedHashMap<>();
+        for (int i = 0; i < enrolments.size(); i++) {
+            byStudent.computeIfAbsent(normalizeId(enrolments.get(i).getId()), key -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : byStudent.entrySet()) {
+            Student student = idIndex.get(entry.getKey());
+            if (student == null) {
+                for (int i : entry.getValue()) {
+                    results[i] = EnrolResult.NO_SUCH_STUDENT;
+                }
+                continue;
+            }
+            // One lock for all enrolments of the student
+            synchronized (student) {
+                for (int i : entry.getValue()) {
+                    Enrolment enrolment = enrolments.get(i);
+                    try {
+                        results[i] = student.addCourse(enrolment.getSemester(), enrolment.getCourse())
+                                ? EnrolResult.ADDED : EnrolResult.ALREADY_ENROLLED;
+                    } catch (IllegalArgumentException e) {
+                        // A semester that does not fit the compact layout
+                        results[i] = EnrolResult.REJECTED;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds students whose ID contains the input (case-insensitive)
+     *
+     * @param input The partial ID to look for
+     * @return List of students whose ID contains the input
+     */
+    public List<Student> searchById(String input) {
+        awaitLoad();
+        // Create list to store matching students
+        List<Student> res = new ArrayList<>();
+        // Compile the search term once for the whole scan
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        // Scan every student since a partial ID cannot use the index
+        for (Student student : report()) {
+            if (matcher.matches(student.getId())) {
+                res.add(student);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Finds students based on a search input and specified criteria. A name,
+     * semester or course search repeated before any change affects its
+     * result is answered from the query cache. Students found by name come
+     * in the order of the last sort, like report(); students found by
+     * semester or course come from the inverted indexes in the order they
+     * were added to the database, which sorting does not change.
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by (ID, Name, Semester,
+     * Course)
+     * @return List of students matching the search criteria, in the order
+     * described above
+     */
+    @Override
+    public List<Student> findBy(String input, SortType sortType) {
+        awaitLoad();
+        long start = metrics.start();
+        // Answer a repeated search from the cache, without scanning anything
+        QueryCache.Key key = queryCache.key(input, sortType);
+        if (key != null) {
+            List<Student> cached = queryCache.get(key);
+            if (cached != null) {
+                metrics.find(sortType).record(start, 0, cached.size());
+                return cached;
+            }
+        }
+        // Read before searching, so a change made meanwhile is not cached
+        long version = queryCache.version();
+        // Trace the phases when a slow search is logged with its plan, or
+        // when the cache needs the access path of a semester or course search
+        SlowQueryLog slow = slowQueryLog;
+        QueryPlan plan = slow == null && (key == null || sortType == SortType.BY_NAME) ? null
+                : new QueryPlan(input, sortType);
+        // Create list to store matching students
+        List<Student> res = new ArrayList<>();
+        int scanned = search(input, sortType, res, plan);
+        metrics.find(sortType).record(start, scanned, res.size());
+        if (key != null) {
+            queryCache.put(key, input, res,
+                    plan == null ? QueryPlan.AccessPath.FULL_SCAN : plan.getAccessPath(), version);
+        }
+        if (slow != null) {
+            slow.offer(plan);
+        }
+        return res;
+    }
+
+    /**
+     * Runs a search like findBy and tells how it was answered: the access
+     * path, the index keys and students examined and the time spent in each
+     * phase. The search always runs, even if its result is cached, and it is
+     * not counted in the metrics nor written to the slow-query log.
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by
+     * @return The plan of the search
+     */
+    public QueryPlan explain(String input, SortType sortType) {
+        awaitLoad();
+        QueryPlan plan = new QueryPlan(input, sortType);
+        search(input, sortType, new ArrayList<>(), plan);
+        return plan;
+    }
+
+    /**
+     * Answers findBy and explain
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by
+     * @param res Receives the students matching the search
+     * @param plan Receives the plan of the search, or null to skip tracing
+     * @return The number of students looked at
+     */
+    private int search(String input, SortType sortType, List<Student> res, QueryPlan plan) {
+        long started = clock(plan);
+        // Number of students looked at, for the metrics
+        int scanned = 0;
+
+        // Switch based on search criteria
+        switch (sortType) {
+            case BY_ID:
+                // Search by exact student ID through the ID index
+                Student found = findById(input);
+                // Add the student to result if the ID exists
+                if (found != null) {
+                    res.add(found);
+                }
+                scanned = res.size();
+                if (plan != null) {
+                    plan.accessPath = QueryPlan.AccessPath.ID_INDEX;
+                    plan.planNanos = System.nanoTime() - started;
+                }
+                break;
+
+            case BY_NAME:
+                // Compile the search term once for the whole scan
+                QueryMatcher matcher = QueryMatcher.compile(input);
+                // Search by student name
+                List<Student> all = report();
+                long scanStarted = clock(plan);
+                for (Student student : all) {
+                    // Add student to result if the name matches
+                    if (matcher.matches(student.getName())) {
+                        res.add(student);
+                    }
+                }
+                scanned = all.size();
+                if (plan != null) {
+                    plan.accessPath = QueryPlan.AccessPath.FULL_SCAN;
+                    plan.planNanos = scanStarted - started;
+                    plan.scanNanos = System.nanoTime() - scanStarted;
+                }
+                break;
+
+            case BY_SEMESTER:
+                // Search by semester through the semester index
+                scanned = lookup(semesterIndex, input, res, plan, started);
+                break;
+
+            case BY_COURSE:
+                // Search by course through the course index
+                scanned = lookup(courseIndex, input, res, plan, started);
+                break;
+        }
+        if (plan != null) {
+            plan.rowsExamined = scanned;
+            plan.rowsMatched = res.size();
+        }
+        return scanned;
+    }
+
+    /**
+     * Reads the clock for a plan being traced
+     *
+     * @param plan The plan, or null if not tracing
+     * @return System.nanoTime(), or 0 if not tracing
+     */
+    private static long clock(QueryPlan plan) {
+        return plan == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Finds students like findBy, but lazily: matches are produced while the
+     * stream is read, so stream.skip(offset).limit(n) returns a page in time
+     * and memory that depend on the page, not on the number of matches. The
+     * stream reads the live indexes, so it sees changes made while it is
+     * read; use snapshot() for a fixed result.
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by; an ID is matched
+     * exactly, names are scanned in ID order, semesters and courses come
+     * from the inverted indexes in the order the students were added
+     * @return Lazy stream of the matching students
+     */
+    @Override
+    public Stream<Student> find(String input, SortType sortType) {
+        awaitLoad();
+        switch (sortType) {
+            case BY_ID:
+                // At most one student has the ID
+                Student found = findById(input);
+                return found == null ? Stream.<Student>empty() : Stream.of(found);
+            case BY_NAME:
+                // Scan the ID view lazily, testing each name
+                QueryMatcher matcher = QueryMatcher.compile(input);
+                return idView.values().stream().filter(student -> matcher.matches(student.getName()));
+            case BY_SEMESTER:
+                // Read the semester posting lists lazily
+                return stream(semesterIndex, input);
+            default:
+                // Read the course posting lists lazily
+                return stream(courseIndex, input);
+        }
+    }
+
+    /**
+     * Streams every student in ID order, starting after a given ID. Passing
+     * the last ID of one page gives the next page (keyset pagination), which
+     * costs the same for the last page as for the first.
+     *
+     * @param afterId The last ID already seen, or null to start at the
+     * beginning
+     * @return Lazy stream of the students after afterId, in ID order
+     */
+    public Stream<Student> streamById(String afterId) {
+        awaitLoad();
+        NavigableMap<String, Student> range = afterId == null ? idView : idView.tailMap(normalizeId(afterId), false);
+        return range.values().stream();
+    }
+
+    /**
+     * Streams every student in name order, starting after a given student.
+     * Passing the last student of one page gives the next page (keyset
+     * pagination). Students with equal names keep the order they were added.
+     *
+     * @param after The last student already seen (from this database or a
+     * version of it), or null to start at the beginning
+     * @return Lazy stream of the students after the given one, in name order
+     */
+    public Stream<Student> streamByName(Student after) {
+        awaitLoad();
+        NavigableSet<Student> range = after == null ? nameView : nameView.tailSet(after, false);
+        return range.stream();
+    }
+
+    /**
+     * Streams a semester or course search from an inverted index: one
+     * posting list for an exact key, otherwise the posting lists of every
+     * key containing the input, merged in the order the students were added
+     *
+     * @param index The inverted index to search
+     * @param input The search term to look for
+     * @return Lazy stream of the matching students
+     */
+    private static Stream<Student> stream(ConcurrentHashMap<String, Set<Student>> index, String input) {
+        // Try the exact key first
+        Set<Student> posting = index.get(normalizeKey(input));
+        if (posting != null) {
+            return posting.stream();
+        }
+        // Collect the matching keys, there are only a few distinct ones
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        List<Set<Student>> postings = new ArrayList<>();
+        for (Map.Entry<String, Set<Student>> entry : index.entrySet()) {
+            if (matcher.matches(entry.getKey())) {
+                postings.add(entry.getValue());
+            }
+        }
+        // A chained iterator instead of flatMap, which reads each posting
+        // list completely before limit() can stop it on Java 8
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new MergedPostings(postings),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Walks several posting lists at once in the order the students were
+     * added, always taking the lowest student at the head of a list. A
+     * student in several lists comes up from each of them in a row and is
+     * returned once.
+     */
+    private static final class MergedPostings implements Iterator<Student> {
+
+        // Iterators over the posting lists, keyed by the student each one
+        // gives next, the earliest added at the head
+        private final PriorityQueue<Map.Entry<Student, Iterator<Student>>> heads = new PriorityQueue<>(
+                (a, b) -> ADDED_ORDER.compare(a.getKey(), b.getKey()));
+        // Last student returned, to skip it in the other lists
+        private Student last;
+        // Next student to return, or null if not found yet
+        private Student next;
+
+        /**
+         * Constructor to merge posting lists
+         *
+         * @param postings The posting lists to walk
+         */
+        MergedPostings(List<Set<Student>> postings) {
+            for (Set<Student> posting : postings) {
+                advance(posting.iterator());
+            }
+        }
+
+        /**
+         * Queues the next student of a posting list, if it has one
+         *
+         * @param students Iterator over the posting list
+         */
+        private void advance(Iterator<Student> students) {
+            if (students.hasNext()) {
+                heads.add(new AbstractMap.SimpleEntry<>(students.next(), students));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                Map.Entry<Student, Iterator<Student>> head = heads.poll();
+                if (head == null) {
+                    return false;
+                }
+                advance(head.getValue());
+                // Skip a student another posting list just produced
+                if (head.getKey() != last) {
+                    next = head.getKey();
+                    last = next;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Student next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Student res = next;
+            next = null;
+            return res;
+        }
+    }
+
+    /**
+     * Finds students enrolled in a course during a specific semester
+     *
+     * @param semester The semester to look for
+     * @param course The course to look for
+     * @return List of students taking the course in that semester
+     */
+    public List<Student> findBySemesterAndCourse(String semester, String course) {
+        awaitLoad();
+        // Create list to store matching students
+        List<Student> res = new ArrayList<>();
+        // Get the posting lists of both keys
+        Set<Student> bySemester = semesterIndex.get(normalizeKey(semester));
+        Set<Student> byCourse = courseIndex.get(normalizeKey(course));
+        // No student can match if either key is unknown
+        if (bySemester == null || byCourse == null) {
+            return res;
+        }
+        // Walk the shorter posting list; taking the course in that exact
+        // semester implies being in the longer one too
+        Set<Student> smaller = bySemester.size() <= byCourse.size() ? bySemester : byCourse;
+        for (Student student : smaller) {
+            if (student.takesCourse(semester, course)) {
+                res.add(student);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Answers a semester or course search from an inverted index. An exact
+     * key is a single posting-list lookup; otherwise every key containing the
+     * input is merged, which only scans the distinct keys, not the students.
+     * Either way the students come in the order they were added.
+     *
+     * @param index The inverted index to search
+     * @param input The search term to look for
+     * @param res Receives the students matching the search term
+     * @param plan Receives the path and phase times, or null to skip tracing
+     * @param started clock(plan) when the search started
+     * @return The number of students scanned
+     */
+    private int lookup(Map<String, Set<Student>> index, String input, List<Student> res, QueryPlan plan,
+            long started) {
+        // Try the exact key first
+        Set<Student> posting = index.get(normalizeKey(input));
+        if (posting != null) {
+            long collectStarted = clock(plan);
+            int before = res.size();
+            res.addAll(posting);
+            if (plan != null) {
+                plan.accessPath = QueryPlan.AccessPath.INDEX_KEY;
+                plan.planNanos = collectStarted - started;
+                plan.collectNanos = System.nanoTime() - collectStarted;
+            }
+            return res.size() - before;
+        }
+        // Otherwise find every key containing the input
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        long scanStarted = clock(plan);
+        List<Set<Student>> matching = new ArrayList<>();
+        int keys = 0;
+        for (Map.Entry<String, Set<Student>> entry : index.entrySet()) {
+            keys++;
+            if (matcher.matches(entry.getKey())) {
+                matching.add(entry.getValue());
+            }
+        }
+        // And merge their posting lists in the order the students were added
+        long collectStarted = clock(plan);
+        List<Student> merged = new ArrayList<>();
+        int scanned = 0;
+        for (Set<Student> students : matching) {
+            // Students in several posting lists are scanned once per list
+            scanned += students.size();
+            merged.addAll(students);
+        }
+        if (matching.size() > 1) {
+            // Each list is already in that order, so the sort only merges
+            // runs, and a student in several lists lands next to itself
+            merged.sort(ADDED_ORDER);
+        }
+        Student previous = null;
+        for (Student student : merged) {
+            if (student != previous) {
+                res.add(student);
+            }
+            previous = student;
+        }
+        if (plan != null) {
+            plan.accessPath = QueryPlan.AccessPath.INDEX_KEY_SCAN;
+            plan.keysExamined = keys;
+            plan.planNanos = scanStarted - started;
+            plan.scanNanos = collectStarted - scanStarted;
+            plan.collectNanos = System.nanoTime() - collectStarted;
+        }
+        return scanned;
+    }
+
+    /**
+     * Updates the inverted indexes after a course was added, called by
+     * Student.addCourse while it holds the student's lock
+     *
+     * @param student The student that got the course
+     * @param semester The semester the course was added to
+     * @param course The course that was added
+     */
+    void courseAdded(Student student, String semester, String course) {
+        indexCourse(student, semester, course);
+        changes.incrementAndGet();
+        queryCache.enrolmentChanged(semester, Collections.singleton(course));
+        // Log the new enrolment
+        WriteAheadLog changes = log;
+        if (changes != null) {
+            changes.logAddCourse(student.getId(), semester, course);
+        }
+    }
+
+    /**
+     * Adds a student to the posting lists of a semester and a course
+     *
+     * @param student The student to index
+     * @param semester The semester the student takes the course in
+     * @param course The course the student takes
+     */
+    private void indexCourse(Student student, String semester, String course) {
+        // Add the student to both posting lists (no-op if already present);
+        // compute() keeps this atomic with unindex dropping an empty list
+        semesterIndex.compute(normalizeKey(semester), (key, posting) -> post(posting, student));
+        courseIndex.compute(normalizeKey(course), (key, posting) -> post(posting, student));
+    }
+
+    /**
+     * Adds a student to a posting list, creating the list if needed
+     *
+     * @param posting The posting list, or null if the key is new
+     * @param student The student to add
+     * @return The posting list
+     */
+    private static Set<Student> post(Set<Student> posting, Student student) {
+        Set<Student> res = posting == null ? new Posting() : posting;
+        res.add(student);
+        return res;
+    }
+
+    /**
+     * Updates the inverted indexes after a course was removed, called by
+     * Student.removeCourse while it holds the student's lock
+     *
+     * @param student The student that lost the course
+     * @param semester The semester the course was removed from
+     * @param course The course that was removed
+     */
+    void courseRemoved(Student student, String semester, String course) {
+        // Drop the semester posting if the semester is gone
+        boolean semesterGone = !student.hasSemester(semester);
+        if (semesterGone) {
+            unindex(semesterIndex, semester, student);
+        }
+        // Drop the course posting if no other semester still has the course
+        boolean courseGone = !student.hasCourse(course);
+        if (courseGone) {
+            unindex(courseIndex, course, student);
+        }
+        changes.incrementAndGet();
+        queryCache.enrolmentChanged(semesterGone ? semester : null,
+                courseGone ? Collections.singleton(course) : Collections.<String>emptySet());
+        // Log the removed enrolment
+        WriteAheadLog changes = log;
+        if (changes != null) {
+            changes.logRemoveCourse(student.getId(), semester, course);
+        }
+    }
+
+    /**
+     * Updates the inverted indexes after a whole semester was removed, called
+     * by Student.removeSemester while it holds the student's lock
+     *
+     * @param student The student that lost the semester
+     * @param semester The semester that was removed
+     * @param courses The courses the semester contained
+     */
+    void semesterRemoved(Student student, String semester, Set<String> courses) {
+        // Drop the semester posting unless another key differs only in case
+        boolean semesterGone = !student.hasSemester(semester);
+        if (semesterGone) {
+            unindex(semesterIndex, semester, student);
+        }
+        // Drop the course postings no other semester still needs
+        List<String> coursesGone = new ArrayList<>();
+        for (String course : courses) {
+            if (!student.hasCourse(course)) {
+                unindex(courseIndex, course, student);
+                coursesGone.add(course);
+            }
+        }
+        changes.incrementAndGet();
+        queryCache.enrolmentChanged(semesterGone ? semester : null, coursesGone);
+        // Log the removed semester
+        WriteAheadLog changes = log;
+        if (changes != null) {
+            changes.logRemoveSemester(student.getId(), semester);
+        }
+    }
+
+    /**
+     * Removes a student from one posting list, dropping the key when the
+     * posting list becomes empty
+     *
+     * @param index The inverted index to update
+     * @param key The key whose posting list to update
+     * @param student The student to remove
+     */
+    private void unindex(ConcurrentHashMap<String, Set<Student>> index, String key, Student student) {
+        // Remove the student and drop empty posting lists in one atomic step
+        index.computeIfPresent(normalizeKey(key), (k, posting) -> {
+            posting.remove(student);
+            return posting.isEmpty() ? null : posting;
+        });
+    }
+
+    /**
+     * Deletes a student from the database by their ID
+     *
+     * @param id The ID of the student to delete
+     * @return true if delete successfully, else return false
+     */
+    @Override
+    public boolean deleteStudent(String id) {
+        awaitLoad();
+        long start = metrics.start();
+        writeLock.lock();
+        try {
+            boolean deleted = remove(id);
+            // Compact once more than half of the slots are empty
+            if (deletedSlots > studentdtb.size() / 2) {
+                compact();
+            }
+            return deleted;
+        } finally {
+            writeLock.unlock();
+            metrics.delete().record(start);
+        }
+    }
+
+    /**
+     * Deletes many students at once, taking the writer lock once for the
+     * whole batch and compacting the storage at most once
+     *
+     * @param ids The IDs of the students to delete
+     * @return Per ID, in iteration order: true if the student was deleted,
+     * false if no student had the ID (or it was deleted earlier in the batch)
+     */
+    public boolean[] deleteAll(Collection<String> ids) {
+        awaitLoad();
+        boolean[] deleted = new boolean[ids.size()];
+        long start = metrics.start();
+        writeLock.lock();
+        try {
+            int i = 0;
+            for (String id : ids) {
+                deleted[i++] = remove(id);
+            }
+            // Compact once more than half of the slots are empty
+            if (deletedSlots > studentdtb.size() / 2) {
+                compact();
+            }
+        } finally {
+            writeLock.unlock();
+            metrics.deleteAll().record(start);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes a student without compacting the storage, called with
+     * writeLock held
+     *
+     * @param id The ID of the student to delete
+     * @return true if the student was deleted, false if the ID is unknown
+     */
+    private boolean remove(String id) {
+        // Remove the student from the ID index in constant time
+        Student student = idIndex.remove(normalizeId(id));
+        // Nothing to delete if the ID is unknown
+        if (student == null) {
+            return false;
+        }
+        Map<String, Set<String>> enrolments;
+        synchronized (student) {
+            // A version being taken keeps the student as it was
+            beforeChange(student);
+            // Remove the student from the semester and course indexes
+            enrolments = student.getAllSemesterCourses();
+            for (Map.Entry<String, Set<String>> entry : enrolments.entrySet()) {
+                unindex(semesterIndex, entry.getKey(), student);
+                for (String course : entry.getValue()) {
+                    unindex(courseIndex, course, student);
+                }
+            }
+            // Remove the student from the sorted views
+            idView.remove(normalizeId(student.getId()));
+            nameView.remove(student);
+            // Leave a null slot instead of shifting the rest of the list
+            studentdtb.set(student.slot, null);
+            deletedSlots++;
+            // Detach the student from this database
+            student.owner = null;
+            student.slot = -1;
+            // Log the deletion
+            WriteAheadLog changes = log;
+            if (changes != null) {
+                changes.logDelete(student.getId());
+            }
+        }
+        invalidateSnapshots();
+        queryCache.studentChanged(student.getName(), enrolments);
+        return true;
+    }
+
+    /**
+     * Re-keys a student in the ID index and changes its ID, called by
+     * Student.setId
+     *
+     * @param student The student whose ID is changing
+     * @param newId The new ID of the student
+     * @throws IllegalArgumentException if another student already has newId
+     */
+    void reindexId(Student student, String newId) {
+        writeLock.lock();
+        try {
+            synchronized (student) {
+                // The student may have been deleted in the meantime
+                if (student.owner != this) {
+                    student.assignId(newId);
+                    return;
+                }
+                // Normalize both the old and the new key
+                String oldKey = normalizeId(student.getId());
+                String newKey = normalizeId(newId);
+                // Nothing to re-key if only the letter case changed
+                if (!oldKey.equals(newKey)) {
+                    // Refuse to overwrite another student's entry
+                    if (idIndex.containsKey(newKey)) {
+                        throw new IllegalArgumentException("Student ID already exist in database.");
+                    }
+                    // Move the index entry to the new key
+                    idIndex.put(newKey, student);
+                    idIndex.remove(oldKey);
+                    // Move the student to its new position in the ID view
+                    idView.put(newKey, student);
+                    idView.remove(oldKey);
+                }
+                // Log the new ID, even a change of letter case is kept
+                WriteAheadLog changes = log;
+                if (changes != null) {
+                    changes.logSetId(student.getId(), newId);
+                }
+                student.assignId(newId);
+            }
+            invalidateSnapshots();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Changes the name of a student and moves it in the name view, called
+     * by Student.setName
+     *
+     * @param student The student being renamed
+     * @param name The new name
+     */
+    void rename(Student student, String name) {
+        writeLock.lock();
+        try {
+            String oldName;
+            synchronized (student) {
+                // The student may have been deleted in the meantime
+                if (student.owner != this) {
+                    student.assignName(name);
+                    return;
+                }
+                // Take the student out of the name view while the key changes
+                oldName = student.getName();
+                nameView.remove(student);
+                student.assignName(name);
+                nameView.add(student);
+                // Log the new name
+                WriteAheadLog changes = log;
+                if (changes != null) {
+                    changes.logSetName(student.getId(), name);
+                }
+            }
+            invalidateSnapshots();
+            queryCache.studentRenamed(oldName, name);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the cached read-only lists after a change, called with writeLock
+     * held
+     */
+    private void invalidateSnapshots() {
+        reportSnapshot = null;
+        idSnapshot = null;
+        nameSnapshot = null;
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Pins the current version of the database. The version holds read-only
+     * copies of the students, so it can be read for as long as needed without
+     * blocking or seeing later changes. Students that did not change since
+     * an earlier version share their copy with it, so taking a version after
+     * a few changes only copies the changed students. Only the list of
+     * students is taken under writeLock; each student is then copied under
+     * its own lock, so writers are not held up. A student that changes
+     * before it was copied first hands over its copy from before the change,
+     * so the version is always one point in time.
+     *
+     * @return The current database version
+     */
+    @Override
+    public DatabaseVersion snapshot() {
+        awaitLoad();
+        // Reuse the latest version if nothing changed since
+        DatabaseVersion pinned = latest();
+        if (pinned != null && pinned.getVersion() == changes.get()) {
+            return pinned;
+        }
+        // One version is taken at a time
+        versionLock.lock();
+        try {
+            // Another reader may have taken it while this one waited
+            pinned = latest();
+            if (pinned != null && pinned.getVersion() == changes.get()) {
+                return pinned;
+            }
+            Student[] copies;
+            long version;
+            Map<Student, Student> kept = new ConcurrentHashMap<>();
+            writeLock.lock();
+            try {
+                // Remove deleted slots, then take the list as it is now
+                compact();
+                copies = studentdtb.toArray(new Student[0]);
+                version = changes.get();
+                // From now on a student keeps its copy before it changes
+                keptCopies = kept;
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                // Copy every student outside writeLock, under the lock its
+                // changes take, preferring the copy it kept
+                for (int i = 0; i < copies.length; i++) {
+                    Student student = copies[i];
+                    synchronized (student) {
+                        Student copy = kept.get(student);
+                        copies[i] = copy != null ? copy : student.freeze();
+                    }
+                }
+            } finally {
+                keptCopies = null;
+            }
+            pinned = new DatabaseVersion(version, Arrays.asList(copies), this);
+            latestVersion = new SoftReference<>(pinned);
+            return pinned;
+        } finally {
+            versionLock.unlock();
+        }
+    }
 
-        // Add valid semester prefixes
-        semesters.add("SP");  // Spring
-        semesters.add("SU");  // Summer
-        semesters.add("FA");  // Fall
+    /**
+     * Keeps the copy of a student from before a change while a version is
+     * being taken, called with the student's lock held just before it
+     * changes
+     *
+     * @param student The student about to change
+     */
+    void beforeChange(Student student) {
+        Map<Student, Student> kept = keptCopies;
+        // Only the first change counts, later ones happened after it
+        if (kept != null && !kept.containsKey(student)) {
+            kept.put(student, student.freeze());
+        }
     }
 
     /**
-     * Adds a new student to the database
+     * Gets read-only copies of the students in ID or name order from the
+     * maintained views, for a database version that is still current. The
+     * copies are the ones the version holds, as a student that did not
+     * change keeps its copy.
      *
-     * @param student The student object to add
+     * @param sortType BY_ID or BY_NAME
+     * @param version The number of changes the version was taken at
+     * @return Read-only list of read-only students, or null if the database
+     * changed since the version was taken
      */
-    public void add(Student student) {
-        // Add the student to the database
-        studentdtb.add(student);
+    List<Student> frozenView(SortType sortType, long version) {
+        if (changes.get() != version) {
+            return null;
+        }
+        List<Student> live = sortedView(sortType);
+        Student[] copies = new Student[live.size()];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = live.get(i).freeze();
+        }
+        // A change meanwhile may have copied a student anew
+        return changes.get() == version ? Collections.unmodifiableList(Arrays.asList(copies)) : null;
     }
 
     /**
-     * Finds students based on a search input and specified criteria
+     * Gets the latest database version if it was not reclaimed
      *
-     * @param input The search term to look for
-     * @param sortType The type of attribute to search by (ID, Name, Semester,
-     * Course)
-     * @return List of students matching the search criteria
+     * @return The latest version, or null if there is none
      */
-    public List<Student> findBy(String input, SortType sortType) {
-        // Create list to store matching students
-        List<Student> res = new ArrayList<>();
+    private DatabaseVersion latest() {
+        SoftReference<DatabaseVersion> last = latestVersion;
+        return last == null ? null : last.get();
+    }
 
-        // Switch based on search criteria
-        switch (sortType) {
-            case BY_ID:
-                // Search by student ID
-                for (Student student : studentdtb) {
-                    // If input matches any student in database, add student to result
-                    if (matchesInput(student.getId(), input)) {
-                        res.add(student);
-                    }
+    /**
+     * Gets the cached ID-ordered list, building it if a change made it stale
+     *
+     * @return The ID-ordered students with their normalized IDs
+     */
+    private IdSnapshot idSnapshot() {
+        IdSnapshot snapshot = idSnapshot;
+        if (snapshot == null) {
+            // Build under the lock so no change happens halfway through
+            writeLock.lock();
+            try {
+                snapshot = idSnapshot;
+                if (snapshot == null) {
+                    snapshot = new IdSnapshot(idView);
+                    idSnapshot = snapshot;
                 }
-                return res;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return snapshot;
+    }
 
+    /**
+     * Gets all students in sorted order without sorting. The ID and name
+     * orders come from views that are kept sorted as students are added,
+     * deleted and renamed, so this only copies them out.
+     *
+     * @param sortType The criteria to order by
+     * @return Read-only list of all students in the requested order
+     */
+    @Override
+    public List<Student> sortedView(SortType sortType) {
+        awaitLoad();
+        switch (sortType) {
+            case BY_ID:
+                // The cached copy of the ID view in key order
+                return idSnapshot().students;
             case BY_NAME:
-                // Search by student name
-                for (Student student : studentdtb) {
-                    // If input matches any student in database, add student to result
-                    if (matchesInput(student.getName(), input)) {
-                        res.add(student);
+                // The cached copy of the name view in name order
+                List<Student> byName = nameSnapshot;
+                if (byName == null) {
+                    // Build under the lock so no change happens halfway through
+                    writeLock.lock();
+                    try {
+                        byName = nameSnapshot;
+                        if (byName == null) {
+                            byName = Collections.unmodifiableList(new ArrayList<>(nameView));
+                            nameSnapshot = byName;
+                        }
+                    } finally {
+                        writeLock.unlock();
                     }
                 }
-                return res;
+                return byName;
+            default:
+                // No maintained view for this criteria, sort a copy instead
+                List<Student> copy = new ArrayList<>(idSnapshot().students);
+                StudentSorter.sort(copy, comparator(sortType));
+                return Collections.unmodifiableList(copy);
+        }
+    }
 
-            case BY_SEMESTER:
-                // Search by semester
-                for (Student student : studentdtb) {
-                    // Check if any of student's semesters match the input
-                    if (student.getSemesters().stream()
-                            .anyMatch(sem -> matchesInput(sem, input))) {
-                        res.add(student);
-                    }
-                }
-                return res;
+    /**
+     * Gets the students whose ID lies in a range, in ID order, using the ID
+     * view (e.g. rangeById("CE100000", "CE199999"))
+     *
+     * @param fromId The lowest ID of the range (inclusive)
+     * @param toId The highest ID of the range (inclusive)
+     * @return Read-only list of the students in the range
+     */
+    public List<Student> rangeById(String fromId, String toId) {
+        awaitLoad();
+        // Binary search the bounds in the cached ID-ordered keys
+        IdSnapshot snapshot = idSnapshot();
+        int from = Arrays.binarySearch(snapshot.keys, normalizeId(fromId));
+        int to = Arrays.binarySearch(snapshot.keys, normalizeId(toId));
+        // A missing key gives its insertion point as -(point) - 1
+        from = from < 0 ? -from - 1 : from;
+        to = to < 0 ? -to - 1 : to + 1;
+        return from >= to ? Collections.<Student>emptyList() : snapshot.students.subList(from, to);
+    }
 
-            case BY_COURSE:
-                // Search by course
-                for (Student student : studentdtb) {
-                    // Check all semesters for matching courses
-                    boolean hasMatchingCourse = student.getSemesters().stream()
-                            .anyMatch(semester -> student.getCourses(semester).stream()
-                            .anyMatch(course -> matchesInput(course, input)));
-                    if (hasMatchingCourse) {
-                        res.add(student);
-                    }
-                }
-                return res;
+    /**
+     * Read-only copy of the ID view: the students in ID order and their
+     * normalized IDs, so ranges can be found by binary search
+     */
+    private static final class IdSnapshot {
+
+        // Normalized IDs in ascending order
+        final String[] keys;
+        // Students in the same order as keys
+        final List<Student> students;
+
+        /**
+         * Constructor to copy an ID view
+         *
+         * @param view The ID view to copy
+         */
+        IdSnapshot(NavigableMap<String, Student> view) {
+            keys = view.keySet().toArray(new String[0]);
+            List<Student> list = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                list.add(view.get(key));
+            }
+            students = Collections.unmodifiableList(list);
         }
-        return res;
     }
 
     /**
-     * Deletes a student from the database by their ID
+     * Posting list of an inverted index: students in the order they were
+     * added, safe to read while another thread changes it, with a size that
+     * does not need a full scan
+     */
+    private static final class Posting extends ConcurrentSkipListSet<Student> {
+
+        private static final long serialVersionUID = 1L;
+
+        // Number of students in the list
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Constructor to create an empty posting list
+         */
+        Posting() {
+            super(ADDED_ORDER);
+        }
+
+        @Override
+        public boolean add(Student student) {
+            boolean added = super.add(student);
+            if (added) {
+                count.incrementAndGet();
+            }
+            return added;
+        }
+
+        @Override
+        public boolean remove(Object student) {
+            boolean removed = super.remove(student);
+            if (removed) {
+                count.decrementAndGet();
+            }
+            return removed;
+        }
+
+        @Override
+        public int size() {
+            return count.get();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count.get() == 0;
+        }
+    }
+
+    /**
+     * Normalizes a student ID for use as an index key
      *
-     * @param id The ID of the student to delete
-     * @return true if delete successfully, else return false
+     * @param id The ID to normalize
+     * @return The trimmed, upper-case ID
      */
-    public boolean deleteStudent(String id) {
-        // Iterate through the database to find and remove the student
+    static String normalizeId(String id) {
+        return id.trim().toUpperCase();
+    }
+
+    /**
+     * Normalizes a semester or course for use as an inverted index key
+     *
+     * @param key The semester or course to normalize
+     * @return The trimmed, upper-case key
+     */
+    static String normalizeKey(String key) {
+        return key.trim().toUpperCase();
+    }
+
+    /**
+     * Removes the null slots left by deleted students and renumbers the
+     * remaining students, called with writeLock held
+     */
+    private void compact() {
+        // Skip the work if nothing was deleted
+        if (deletedSlots == 0) {
+            return;
+        }
+        // Copy the remaining students into a new list, keeping their order
+        ArrayList<Student> compacted = new ArrayList<>(idIndex.size());
         for (Student student : studentdtb) {
-            // If input matches any student in database, remove student from database
-            if (matchesInput(student.getId(), id)) {
-                return studentdtb.remove(student);
+            if (student != null) {
+                student.slot = compacted.size();
+                compacted.add(student);
             }
         }
-        return false;
+        // Replace the storage list and reset the deleted slot counter
+        studentdtb = compacted;
+        deletedSlots = 0;
     }
 
     /**
@@ -138,8 +1609,8 @@ public class StudentDTB {
      * @return true if the attribute contains the input, false otherwise
      */
     public boolean matchesInput(String attr, String input) {
-        // Convert both strings to uppercase and check if attr contains input
-        return attr.toUpperCase().contains(input.toUpperCase());
+        // A single check is cheaper than compiling, and needs no shared cache
+        return QueryMatcher.contains(attr, input);
     }
 
     /**
@@ -148,19 +1619,35 @@ public class StudentDTB {
      * @param input The ID to check
      * @return true if the ID exists, false otherwise
      */
+    @Override
     public boolean chkIdExist(String input) {
-        // Flag to track if ID exists
-        boolean exist = false;
-        // Check each student in the database
-        for (Student student : studentdtb) {
-            // If input matches any student, set flag to true then break out of loops
-            if (matchesInput(student.getId(), input)) {
-                exist = true;
-                break;
-            }
+        // Search the mapped snapshot while it is still loading; nothing can
+        // change before the load is done, so the file is up to date
+        StudentSnapshot loadingFrom = pending;
+        if (loadingFrom != null) {
+            return loadingFrom.contains(input);
         }
-        // return existence of studentID
-        return exist;
+        // Constant-time existence check in the ID index
+        return idIndex.containsKey(normalizeId(input));
+    }
+
+    /**
+     * Gets the latency and row counts of the operations of this database
+     *
+     * @return The metrics, updated by every findBy, sort, add and delete
+     */
+    public DatabaseMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the cache of findBy results, to read its hit rate or change its
+     * capacity
+     *
+     * @return The query cache of this database
+     */
+    public QueryCache queryCache() {
+        return queryCache;
     }
 
     /**
@@ -172,6 +1659,103 @@ public class StudentDTB {
         return courses;
     }
 
+    /**
+     * Gets the dictionary that interns course names for compact students
+     *
+     * @return The course dictionary of this database
+     */
+    public CourseDictionary getCourseDictionary() {
+        return courseDictionary;
+    }
+
+    /**
+     * Enables or disables the compact storage mode. When enabled, every
+     * student already in the database and every student added later keeps
+     * its semesters as small codes and its courses as bitsets over the
+     * course dictionary. Disabling it only affects students added later.
+     *
+     * @param compactStorage true to store students in the compact layout
+     * @throws IllegalArgumentException if a stored semester does not fit the
+     * compact layout; students converted before it keep the compact layout
+     */
+    public void setCompactStorage(boolean compactStorage) {
+        awaitLoad();
+        writeLock.lock();
+        try {
+            // Convert the students that are already stored
+            if (compactStorage) {
+                for (Student student : studentdtb) {
+                    if (student != null) {
+                        student.useCompactStorage(courseDictionary);
+                    }
+                }
+            }
+            this.compactStorage = compactStorage;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the compact storage mode is enabled
+     *
+     * @return true if added students use the compact layout
+     */
+    public boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    /**
+     * Attaches a write-ahead log that records every later change. Attach it
+     * after recovery, so the replayed changes are not logged again.
+     *
+     * @param log The log to write changes to, or null to stop logging
+     */
+    public void setWriteAheadLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Gets the attached write-ahead log
+     *
+     * @return The log, or null if changes are not logged
+     */
+    public WriteAheadLog getWriteAheadLog() {
+        return log;
+    }
+
+    /**
+     * Sets the log that findBy writes slow searches to, with their plans
+     *
+     * @param slowQueryLog The log, or null to stop logging
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Gets the log that findBy writes slow searches to
+     *
+     * @return The log, or null if slow searches are not logged
+     */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Blocks until every logged change is on disk. Changes are logged
+     * without waiting, so a burst of changes shares one fsync; call this
+     * where the changes must be durable.
+     *
+     * @throws IOException if a change could not be written to the log
+     */
+    @Override
+    public void sync() throws IOException {
+        if (log != null) {
+            log.sync();
+        }
+    }
+
     /**
      * Gets the set of valid semester prefixes
      *
@@ -191,231 +1775,282 @@ public class StudentDTB {
         BY_COURSE   // Sort by course
     }
 
+    /**
+     * Enumeration of the outcomes of one enrolment of enrol(List)
+     */
+    public enum EnrolResult {
+        ADDED, // The course was added to the semester
+        ALREADY_ENROLLED, // The student already took the course that semester
+        NO_SUCH_STUDENT, // No student has the ID
+        REJECTED // The semester does not fit the compact layout
+    }
+
+    /**
+     * One enrolment for enrol(List): a student ID, a semester and a course
+     */
+    public static final class Enrolment {
+
+        // ID of the student to enrol
+        private final String id;
+        // Semester to enrol in (e.g. SP25)
+        private final String semester;
+        // Course to enrol in
+        private final String course;
+
+        /**
+         * Constructor to create an enrolment
+         *
+         * @param id ID of the student to enrol
+         * @param semester Semester to enrol in
+         * @param course Course to enrol in
+         */
+        public Enrolment(String id, String semester, String course) {
+            this.id = id;
+            this.semester = semester;
+            this.course = course;
+        }
+
+        /**
+         * Gets the ID of the student to enrol
+         *
+         * @return The student ID
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Gets the semester to enrol in
+         *
+         * @return The semester
+         */
+        public String getSemester() {
+            return semester;
+        }
+
+        /**
+         * Gets the course to enrol in
+         *
+         * @return The course
+         */
+        public String getCourse() {
+            return course;
+        }
+    }
+
     /**
      * Sorts the student database by the specified criteria
      *
      * @param sortType The criteria to sort by
      */
+    @Override
     public void sort(SortType sortType) {
-        // Call mergeSort with the specified sort type
-        mergeSort(studentdtb, sortType);
+        awaitLoad();
+        long start = metrics.start();
+        // Sort by the precomputed key of the selected criteria
+        switch (sortType) {
+            case BY_ID:
+                // Compare student IDs lexicographically
+                sortBy(Student::getId, Comparator.naturalOrder());
+                break;
+            case BY_NAME:
+                // Compare the cached trimmed upper-case names
+                sortBy(Student::getSortName, Comparator.naturalOrder());
+                break;
+            case BY_SEMESTER:
+                // Compare the cached earliest semester keys, no semester last
+                sortBy(Student::getSemesterKey, Comparator.naturalOrder());
+                break;
+            case BY_COURSE:
+                // Compare the cached smallest course names, no course last
+                sortBy(Student::getMinCourse, Comparator.nullsLast(Comparator.naturalOrder()));
+                break;
+        }
+        metrics.sort(sortType).record(start);
     }
 
     /**
-     * Default sort method that sorts by name
+     * Sorts the student database with a comparator. Comparators can be
+     * composed, e.g. comparator(BY_NAME).thenComparing(comparator(BY_ID)), to
+     * sort by several keys in a single pass.
+     *
+     * @param order The comparator to sort by
      */
-    public void sort() {
-        // Sort by name by default
-        sort(SortType.BY_NAME);
+    public void sort(Comparator<? super Student> order) {
+        awaitLoad();
+        // The student itself is the sort key
+        sortBy(student -> student, order);
     }
 
     /**
-     * Gets all students in the database
+     * Enables or disables the parallel sort mode
      *
-     * @return List of all students
+     * @param parallelSort true to sort large databases on a ForkJoinPool
      */
-    public List<Student> report() {
-        return studentdtb;
+    public void setParallelSort(boolean parallelSort) {
+        this.parallelSort = parallelSort;
     }
 
     /**
-     * Checks if the database is empty
+     * Checks if the parallel sort mode is enabled
      *
-     * @return true if the database is empty, false otherwise
+     * @return true if large databases are sorted on a ForkJoinPool
      */
-    public boolean dtbIsEmpty() {
-        return studentdtb.isEmpty();
+    public boolean isParallelSort() {
+        return parallelSort;
     }
 
     /**
-     * Merges two sorted arrays into one sorted array based on the specified
-     * criteria
+     * Sets the size below which the parallel sort sorts sequentially
      *
-     * @param leftArray The left sub-array
-     * @param rightArray The right sub-array
-     * @param array The original array to store merged result
-     * @param sortType The criteria to sort by
+     * @param threshold Minimum size of a range that is split across threads
+     * @throws IllegalArgumentException if threshold is less than 2
      */
-    private void merge(List<Student> leftArray, List<Student> rightArray, List<Student> array, SortType sortType) {
-        // Get sizes of sub-arrays
-        int leftSize = leftArray.size();
-        int rightSize = rightArray.size();
-        // Initialize indices
-        int i = 0;  // Index for merged array
-        int l = 0;  // Index for left array
-        int r = 0;  // Index for right array
-
-        // Merge while both arrays have elements
-        while (l < leftSize && r < rightSize) {
-            // Get students to compare from both arrays
-            Student leftStudent = leftArray.get(l);
-            Student rightStudent = rightArray.get(r);
-            // Flag to determine which element should be taken next
-            // If true: take from left array, If false: take from right array
-            boolean shouldTakeLeft = false;
-
-            // Compare based on sort type and set shouldTakeLeft flag
-            switch (sortType) {
-                case BY_ID:
-                    // Compare student IDs lexicographically
-                    // shouldTakeLeft will be true if leftStudent's ID comes before or equals rightStudent's ID
-                    shouldTakeLeft = leftStudent.getId().compareTo(rightStudent.getId()) <= 0;
-                    break;
-                case BY_NAME:
-                    // Normalize names by trimming and converting to uppercase for case-insensitive comparison
-                    String leftName = leftStudent.getName().trim().toUpperCase();
-                    String rightName = rightStudent.getName().trim().toUpperCase();
-                    // shouldTakeLeft will be true if leftStudent's name comes before or equals rightStudent's name
-                    shouldTakeLeft = leftName.compareTo(rightName) <= 0;
-                    break;
-                    
-//                case BY_SEMESTER:
-//                    // Get earliest semester from each student (or empty string if no semesters)
-//                    String leftSem = leftStudent.getSemesters().stream()
-//                            .min((s1, s2) -> {
-//                                // Compare years first
-//                                int year1 = Integer.parseInt(s1.substring(2));
-//                                int year2 = Integer.parseInt(s2.substring(2));
-//                                if (year1 != year2) {
-//                                    return year1 - year2;
-//                                }
-//                                // If years are equal, compare seasons (SP < SU < FA)
-//                                String season1 = s1.substring(0, 2);
-//                                String season2 = s2.substring(0, 2);
-//                                // Define season order: SP=1, SU=2, FA=3
-//                                int seasonOrder1 = getSeasonOrder(season1);
-//                                int seasonOrder2 = getSeasonOrder(season2);
-//                                return seasonOrder1 - seasonOrder2;
-//                            }).orElse("");
-//                    String rightSem = rightStudent.getSemesters().stream()
-//                            .min((s1, s2) -> {
-//                                // Compare years first
-//                                int year1 = Integer.parseInt(s1.substring(2));
-//                                int year2 = Integer.parseInt(s2.substring(2));
-//                                if (year1 != year2) {
-//                                    return year1 - year2;
-//                                }
-//                                // If years are equal, compare seasons (SP < SU < FA)
-//                                String season1 = s1.substring(0, 2);
-//                                String season2 = s2.substring(0, 2);
-//                                // Define season order: SP=1, SU=2, FA=3
-//                                int seasonOrder1 = getSeasonOrder(season1);
-//                                int seasonOrder2 = getSeasonOrder(season2);
-//                                return seasonOrder1 - seasonOrder2;
-//                            }).orElse("");
-//
-//                    // Compare semesters using the same logic
-//                    if (!leftSem.isEmpty() && !rightSem.isEmpty()) {
-//                        // Extract the year portion (last 2 digits) from each semester string
-//                        int leftYear = Integer.parseInt(leftSem.substring(2));
-//                        // Extract the year portion (last 2 digits) from each semester string
-//                        int rightYear = Integer.parseInt(rightSem.substring(2));
-//                        
-//                        // Check if years are different
-//                        if (leftYear != rightYear) {
-//                            // If years are different, sort by year in ascending order
-//                            // shouldTakeLeft = true if leftYear is earlier or equal to rightYear
-//                            // This ensures earlier years come first in the sorted result
-//                            shouldTakeLeft = leftYear <= rightYear;
-//                        } else {
-//                            // If years are the same, compare by season (SP, SU, FA)
-//                            // Extract the season code (first 2 characters) from each semester
-//                            int leftSeasonOrder = getSeasonOrder(leftSem.substring(0, 2));
-//                            // Extract the season code (first 2 characters) from each semester
-//                            int rightSeasonOrder = getSeasonOrder(rightSem.substring(0, 2));
-//                            
-//                            // Sort by season in chronological order (Spring → Summer → Fall)
-//                            // shouldTakeLeft = true if leftSeason comes before or equals rightSeason
-//                            // This ensures semesters within the same year appear in proper sequence
-//                            shouldTakeLeft = leftSeasonOrder <= rightSeasonOrder;
-//                        }
-//                    } else {
-//                        // Handle case where one or both semesters are empty
-//                        // Empty semesters should be placed last in sorting order
-//                        // shouldTakeLeft = true if leftSem exists OR both are empty
-//                        // shouldTakeLeft = false if only rightSem exists
-//                        shouldTakeLeft = !leftSem.isEmpty() || rightSem.isEmpty();
-//                    }
-//                    break;
-//                case BY_COURSE:
-//                    // Get all courses from all semesters for each student
-//                    Set<String> leftCourses = new HashSet<>();
-//                    Set<String> rightCourses = new HashSet<>();
-//
-//                    // Collect all unique courses for left student
-//                    leftStudent.getSemesters().forEach(sem
-//                            -> leftCourses.addAll(leftStudent.getCourses(sem)));
-//
-//                    // Collect all unique courses for right student
-//                    rightStudent.getSemesters().forEach(sem
-//                            -> rightCourses.addAll(rightStudent.getCourses(sem)));
-//
-//                    // Get earliest course from each student (or empty string if no courses)
-//                    String leftCourse = leftCourses.stream().min(String::compareTo).orElse("");
-//                    String rightCourse = rightCourses.stream().min(String::compareTo).orElse("");
-//                    // Compare earliest courses lexicographically
-//                    shouldTakeLeft = leftCourse.compareTo(rightCourse) <= 0;
-//                    break;
-            }
-
-            // Based on the comparison result, take the appropriate element
-            if (shouldTakeLeft) {
-                // If shouldTakeLeft is true, the left element should come first
-                array.set(i, leftArray.get(l));
-                i++;  // Move to next position in merged array
-                l++;  // Move to next element in left array
-            } else {
-                // If shouldTakeLeft is false, the right element should come first
-                array.set(i, rightArray.get(r));
-                i++;  // Move to next position in merged array
-                r++;  // Move to next element in right array
-            }
+    public void setParallelSortThreshold(int threshold) {
+        // A range of one element cannot be split
+        if (threshold < 2) {
+            throw new IllegalArgumentException("Parallel sort threshold must be at least 2.");
         }
+        this.parallelSortThreshold = threshold;
+    }
 
-        // Copy remaining elements from left array if any
-        while (l < leftSize) {
-            array.set(i, leftArray.get(l));
-            // Increase index i of merged array
-            i++;
-            // Increase index l of left array
-            l++;
+    /**
+     * Gets a comparator for one sort criteria, for use with sort(Comparator)
+     *
+     * @param sortType The criteria to compare by
+     * @return Comparator of students for the criteria
+     */
+    public static Comparator<Student> comparator(SortType sortType) {
+        switch (sortType) {
+            case BY_ID:
+                // Compare student IDs lexicographically
+                return Comparator.comparing(Student::getId);
+            case BY_NAME:
+                // Compare the cached trimmed upper-case names
+                return Comparator.comparing(Student::getSortName);
+            case BY_SEMESTER:
+                // Compare the cached earliest semester keys, no semester last
+                return Comparator.comparingInt(Student::getSemesterKey);
+            default:
+                // Compare the cached smallest course names, no course last
+                return Comparator.comparing(Student::getMinCourse, Comparator.nullsLast(Comparator.naturalOrder()));
         }
+    }
 
-        // Copy remaining elements from right array if any
-        while (r < rightSize) {
-            array.set(i, rightArray.get(r));
-            // Increase index i of merged array
-            i++;
-            // Increase index r of right array
-            r++;
+    /**
+     * Sorts the student database by a key computed once per student
+     *
+     * @param <K> The type of the sort key
+     * @param keyExtractor Computes the sort key of a student
+     * @param keyOrder The order of the sort keys
+     */
+    private <K> void sortBy(Function<? super Student, ? extends K> keyExtractor,
+            Comparator<? super K> keyOrder) {
+        writeLock.lock();
+        try {
+            // Remove deleted slots so the sort only sees real students
+            compact();
+            // Run the stable merge sort engine, in parallel if enabled
+            if (parallelSort) {
+                StudentSorter.parallelSort(studentdtb, keyExtractor, keyOrder, parallelSortThreshold);
+            } else {
+                StudentSorter.sort(studentdtb, keyExtractor, keyOrder);
+            }
+            // Record the new position of every student
+            for (int i = 0; i < studentdtb.size(); i++) {
+                studentdtb.get(i).slot = i;
+            }
+            reportSnapshot = null;
+            changes.incrementAndGet();
+            // Name searches return students in the order of the last sort
+            queryCache.orderChanged();
+        } finally {
+            writeLock.unlock();
         }
     }
 
     /**
-     * Main merge sort method that recursively divides and sorts the array
+     * Default sort method that sorts by name
+     */
+    @Override
+    public void sort() {
+        // Sort by name by default
+        sort(SortType.BY_NAME);
+    }
+
+    /**
+     * Gets all students in the database, in the order of the last sort. The
+     * list is a read-only copy that later changes do not affect.
      *
-     * @param array The array to be sorted
-     * @param sortType The criteria to sort by
+     * @return Read-only list of all students
      */
-    private void mergeSort(List<Student> array, SortType sortType) {
-        // Get array length
-        int length = array.size();
-        // Base case: if array has 1 or fewer elements, it's already sorted
-        if (length <= 1) {
-            return;
+    @Override
+    public List<Student> report() {
+        awaitLoad();
+        List<Student> snapshot = reportSnapshot;
+        if (snapshot == null) {
+            // Build under the lock so no change happens halfway through
+            writeLock.lock();
+            try {
+                snapshot = reportSnapshot;
+                if (snapshot == null) {
+                    // Remove deleted slots before copying the list
+                    compact();
+                    snapshot = Collections.unmodifiableList(new ArrayList<>(studentdtb));
+                    reportSnapshot = snapshot;
+                }
+            } finally {
+                writeLock.unlock();
+            }
         }
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of students in the database
+     *
+     * @return The number of students
+     */
+    @Override
+    public int size() {
+        StudentSnapshot loadingFrom = pending;
+        return loadingFrom != null ? loadingFrom.size() : idIndex.size();
+    }
 
-        // Calculate middle point
-        int middle = length / 2;
-        // Create left and right subarrays
-        List<Student> leftArray = new ArrayList<>(array.subList(0, middle));
-        List<Student> rightArray = new ArrayList<>(array.subList(middle, length));
+    /**
+     * Checks if the database is empty
+     *
+     * @return true if the database is empty, false otherwise
+     */
+    @Override
+    public boolean dtbIsEmpty() {
+        return size() == 0;
+    }
 
-        // Recursively sort both halves
-        mergeSort(leftArray, sortType);
-        mergeSort(rightArray, sortType);
-        // Merge the sorted halves
-        merge(leftArray, rightArray, array, sortType);
+    /**
+     * Encodes a semester as a chronological integer key, year * 4 + season
+     * order, so semesters can be compared without parsing them again
+     *
+     * @param semester The semester (e.g. SP25)
+     * @return The semester key, or Integer.MAX_VALUE if the year is not a number
+     */
+    static int semesterKey(String semester) {
+        // Read the digits after the season code without creating substrings
+        int year = 0;
+        for (int i = 2; i < semester.length(); i++) {
+            char c = semester.charAt(i);
+            // Place semesters with a malformed year at the end
+            if (c < '0' || c > '9' || year > 99999) {
+                return Integer.MAX_VALUE;
+            }
+            year = year * 10 + (c - '0');
+        }
+        // A semester without a year also goes to the end
+        if (semester.length() <= 2) {
+            return Integer.MAX_VALUE;
+        }
+        // Combine the year with the order of the season inside the year
+        return year * 4 + getSeasonOrder(semester.substring(0, 2).toUpperCase());
     }
 
     /**
@@ -425,7 +2060,7 @@ public class StudentDTB {
      * @param season The season code (SP, SU, or FA)
      * @return The numerical order of the season (1 for Spring, 2 for Summer, 3 for Fall, 4 for invalid)
      */
-    private int getSeasonOrder(String season) {
+    static int getSeasonOrder(String season) {
         // Use switch statement to convert season code to numerical value
         switch (season) {
             case "SP":
@@ -0,0 +1,507 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentImporter loads students and enrolments in bulk from a CSV file with
+ * one enrolment per line:
+ * <pre>
+ * id,name,semester,course
+ * CE190770,Dinh Cong Phuc,SP25,Java
+ * </pre>
+ * The file is read line by line, so it never has to fit in memory. Each line
+ * is checked with the same rules as the Menu prompts. Lines for an ID that is
+ * already in the database add an enrolment to that student, as long as the
+ * name matches. New students are collected into batches and added one batch
+ * at a time, and the database is synced after each batch, so a write-ahead
+ * log pays one fsync per batch. Enrolments of a new student are counted once
+ * the student is added; if its ID was taken in the meantime, its lines are
+ * rejected instead. Rejected lines are reported with their line numbers
+ * instead of stopping the import.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class StudentImporter {
+
+    // Default number of new students added to the database at once
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    // Optional first line naming the columns
+    static final String HEADER = "id,name,semester,course";
+    // Reason for the lines of a new student whose ID was taken before its batch was added
+    static final String ID_TAKEN = "Student ID was added to the database during the import.";
+
+    // Database the students are imported into
+    private final StudentBackend dtb;
+    // Number of new students added to the database at once
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    // New students of the current batch by ID, in the order they were read
+    private final Map<String, Student> batch = new LinkedHashMap<>();
+    // Lines applied to students of the current batch, counted once added
+    private final List<Row> batchRows = new ArrayList<>();
+
+    /**
+     * Constructor to create an importer for a database
+     *
+     * @param dtb The database to import into
+     */
+    public StudentImporter(StudentBackend dtb) {
+        this.dtb = dtb;
+    }
+
+    /**
+     * Sets the number of new students added to the database at once
+     *
+     * @param batchSize The batch size
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a UTF-8 CSV file
+     *
+     * @param file The CSV file
+     * @return What was imported and which lines were rejected
+     * @throws IOException if the file cannot be read or a batch cannot be
+     * synced to the write-ahead log
+     */
+    public Report importFile(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader);
+        }
+    }
+
+    /**
+     * Imports CSV lines from a reader
+     *
+     * @param reader The reader to take lines from
+     * @return What was imported and which lines were rejected
+     * @throws IOException if a line cannot be read or a batch cannot be
+     * synced to the write-ahead log
+     */
+    public Report importFrom(BufferedReader reader) throws IOException {
+        Report report = new Report();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            report.lines++;
+            try {
+                // Check the line, then apply it to the batch or the database
+                Row row = parse(line, report.lines);
+                if (row != null) {
+                    apply(row, report);
+                }
+            } catch (IllegalArgumentException e) {
+                report.reject(report.lines, line, e.getMessage());
+            }
+        }
+        // Add the last, partly filled batch
+        finish(report);
+        return report;
+    }
+
+    /**
+     * Checks one CSV line. Touches no shared state, so lines can be checked
+     * on several threads at once.
+     *
+     * @param line The CSV line
+     * @param lineNumber Line number in the file, starting at 1
+     * @return The checked fields, or null for a blank line or the column
+     * names
+     * @throws IllegalArgumentException if the line is rejected
+     */
+    static Row parse(String line, int lineNumber) {
+        // Skip blank lines and the column names
+        if (line.trim().isEmpty() || (lineNumber == 1 && line.trim().equalsIgnoreCase(HEADER))) {
+            return null;
+        }
+        // Split into exactly four fields and check each of them
+        String[] fields = split(line);
+        return new Row(lineNumber, line, parseId(fields[0]), parseName(fields[1]),
+                parseSemester(fields[2]), parseCourse(fields[3]));
+    }
+
+    /**
+     * Applies a checked line to the current batch or the database. Must be
+     * called from one thread, in line order.
+     *
+     * @param row The checked line
+     * @param report The report to update
+     * @throws IOException if a full batch cannot be synced
+     * @throws IllegalArgumentException if the line conflicts with the
+     * database
+     */
+    void apply(Row row, Report report) throws IOException {
+        // Look for the student in the current batch, then in the database
+        Student student = batch.get(row.id);
+        boolean batched = student != null;
+        if (student == null) {
+            student = dtb.findForUpdate(row.id);
+        }
+        if (student == null) {
+            // Add the full batch before starting a new student
+            if (batch.size() >= batchSize) {
+                flush(report);
+            }
+            student = new Student(row.id, row.name);
+            batch.put(row.id, student);
+            batched = true;
+        } else if (!student.getName().equalsIgnoreCase(row.name)) {
+            // Same ID with another name is a conflict, not a new enrolment
+            throw new IllegalArgumentException("Student ID already exist in database with another name.");
+        }
+        // Add the enrolment
+        if (!student.addCourse(row.semester, row.course)) {
+            throw new IllegalArgumentException("Course already exists for this semester.");
+        }
+        // A new student's enrolment only counts once the student is added
+        if (batched) {
+            batchRows.add(row);
+        } else {
+            report.enrolmentsAdded++;
+        }
+    }
+
+    /**
+     * Adds the last, partly filled batch once every line was applied
+     *
+     * @param report The report to update
+     * @throws IOException if the changes cannot be synced
+     */
+    void finish(Report report) throws IOException {
+        flush(report);
+    }
+
+    /**
+     * Adds the new students of the current batch to the database and waits
+     * until the changes are durable. A student whose ID was added to the
+     * database since its lines were read is not added, and its lines are
+     * rejected.
+     *
+     * @param report The report to update
+     * @throws IOException if the changes cannot be synced
+     */
+    private void flush(Report report) throws IOException {
+        // One writer lock for the whole batch
+        boolean[] added = dtb.addAll(batch.values());
+        Set<String> taken = new HashSet<>();
+        int i = 0;
+        for (String id : batch.keySet()) {
+            if (added[i++]) {
+                report.studentsAdded++;
+            } else {
+                taken.add(id);
+            }
+        }
+        // Count the enrolments of the added students, reject the others
+        for (Row row : batchRows) {
+            if (taken.contains(row.id)) {
+                report.reject(row.lineNumber, row.line, ID_TAKEN);
+            } else {
+                report.enrolmentsAdded++;
+            }
+        }
+        batch.clear();
+        batchRows.clear();
+        // One sync for the whole batch
+        dtb.sync();
+    }
+
+    /**
+     * Splits a CSV line into its four fields
+     *
+     * @param line The CSV line
+     * @return The id, name, semester and course fields
+     * @throws IllegalArgumentException if the line does not have 4 fields
+     */
+    private static String[] split(String line) {
+        String[] fields = new String[4];
+        int start = 0;
+        for (int i = 0; i < 3; i++) {
+            int comma = line.indexOf(',', start);
+            if (comma < 0) {
+                throw new IllegalArgumentException("Line must have 4 fields: " + HEADER + ".");
+            }
+            fields[i] = line.substring(start, comma);
+            start = comma + 1;
+        }
+        if (line.indexOf(',', start) >= 0) {
+            throw new IllegalArgumentException("Line must have 4 fields: " + HEADER + ".");
+        }
+        fields[3] = line.substring(start);
+        return fields;
+    }
+
+    /**
+     * Checks a student ID with the rules of Menu.inID
+     *
+     * @param field The ID field
+     * @return The upper-case ID
+     * @throws IllegalArgumentException if the ID is not valid
+     */
+    static String parseId(String field) {
+        // Spaces are dropped and the ID is upper-cased, like the prompt does
+        String id = StudentValidator.normalizeCode(field);
+        String error = StudentValidator.checkId(id);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        return id;
+    }
+
+    /**
+     * Checks a student name with the rules of Menu.inName
+     *
+     * @param field The name field
+     * @return The name with runs of spaces collapsed
+     * @throws IllegalArgumentException if the name is not valid
+     */
+    static String parseName(String field) {
+        String error = StudentValidator.checkName(field);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        return StudentValidator.normalizeName(field);
+    }
+
+    /**
+     * Checks a semester with the rules of Menu.inSemester
+     *
+     * @param field The semester field
+     * @return The upper-case semester
+     * @throws IllegalArgumentException if the semester is not valid
+     */
+    static String parseSemester(String field) {
+        String semester = StudentValidator.normalizeCode(field);
+        String error = StudentValidator.checkSemester(semester);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        return semester;
+    }
+
+    /**
+     * Checks a course against the courses Menu.inCourse offers
+     *
+     * @param field The course field, matched case-insensitively
+     * @return The course name as the database spells it
+     * @throws IllegalArgumentException if the course is not offered
+     */
+    static String parseCourse(String field) {
+        String course = StudentValidator.courseOf(field);
+        if (course == null) {
+            throw new IllegalArgumentException(StudentValidator.COURSE_UNKNOWN);
+        }
+        return course;
+    }
+
+    /**
+     * A CSV line whose fields passed the checks
+     */
+    static final class Row {
+
+        // Line number in the file and the line, kept to reject it later
+        final int lineNumber;
+        final String line;
+        // Checked fields
+        final String id;
+        final String name;
+        final String semester;
+        final String course;
+
+        /**
+         * Constructor to create a checked line
+         *
+         * @param lineNumber Line number in the file, starting at 1
+         * @param line The line as read from the file
+         * @param id The upper-case ID
+         * @param name The name
+         * @param semester The upper-case semester
+         * @param course The course as the database spells it
+         */
+        Row(int lineNumber, String line, String id, String name, String semester, String course) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.id = id;
+            this.name = name;
+            this.semester = semester;
+            this.course = course;
+        }
+    }
+
+    /**
+     * A CSV line that was not imported
+     */
+    public static final class Rejection {
+
+        // Line number in the file, starting at 1
+        private final int lineNumber;
+        // The rejected line
+        private final String line;
+        // Why the line was rejected
+        private final String reason;
+
+        /**
+         * Constructor to create a rejection
+         *
+         * @param lineNumber Line number in the file, starting at 1
+         * @param line The rejected line
+         * @param reason Why the line was rejected
+         */
+        Rejection(int lineNumber, String line, String reason) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.reason = reason;
+        }
+
+        /**
+         * Gets the line number in the file
+         *
+         * @return The line number, starting at 1
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * Gets the rejected line
+         *
+         * @return The line as read from the file
+         */
+        public String getLine() {
+            return line;
+        }
+
+        /**
+         * Gets why the line was rejected
+         *
+         * @return The reason
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Returns a string representation of the rejection
+         *
+         * @return "Line n: reason"
+         */
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + reason;
+        }
+    }
+
+    /**
+     * Summary of one import
+     */
+    public static final class Report {
+
+        // Number of rejected lines kept with their text and reason
+        public static final int MAX_REJECTIONS = 1000;
+
+        // Number of lines read, including blank and rejected ones
+        int lines;
+        // Number of new students added
+        private int studentsAdded;
+        // Number of enrolments added, to new and existing students
+        private int enrolmentsAdded;
+        // Number of lines that were not imported
+        private int rejectedLines;
+        // The kept rejections, highest line number at the head so it is the
+        // one dropped when a lower line is rejected later
+        private final PriorityQueue<Rejection> rejections = new PriorityQueue<>(
+                Comparator.comparingInt((Rejection rejection) -> rejection.lineNumber).reversed());
+
+        /**
+         * Gets the number of lines read
+         *
+         * @return The number of lines, including blank and rejected ones
+         */
+        public int getLines() {
+            return lines;
+        }
+
+        /**
+         * Gets the number of new students added
+         *
+         * @return The number of students
+         */
+        public int getStudentsAdded() {
+            return studentsAdded;
+        }
+
+        /**
+         * Gets the number of enrolments added
+         *
+         * @return The number of enrolments, to new and existing students
+         */
+        public int getEnrolmentsAdded() {
+            return enrolmentsAdded;
+        }
+
+        /**
+         * Gets the number of lines that were not imported
+         *
+         * @return The number of rejected lines, including those not kept by
+         * getRejections
+         */
+        public int getRejectedLines() {
+            return rejectedLines;
+        }
+
+        /**
+         * Gets the first lines that were not imported, at most
+         * MAX_REJECTIONS of them
+         *
+         * @return Read-only list of rejections in line order
+         */
+        public List<Rejection> getRejections() {
+            List<Rejection> sorted = new ArrayList<>(rejections);
+            sorted.sort(Comparator.comparingInt(Rejection::getLineNumber));
+            return Collections.unmodifiableList(sorted);
+        }
+
+        /**
+         * Records a line that was not imported. Only the MAX_REJECTIONS
+         * lowest line numbers are kept, the rest are only counted.
+         *
+         * @param lineNumber Line number in the file, starting at 1
+         * @param line The rejected line
+         * @param reason Why the line was rejected
+         */
+        void reject(int lineNumber, String line, String reason) {
+            rejectedLines++;
+            if (rejections.size() < MAX_REJECTIONS) {
+                rejections.add(new Rejection(lineNumber, line, reason));
+            } else if (rejections.peek().lineNumber > lineNumber) {
+                // Rejections of a batch arrive after later lines of the file
+                rejections.poll();
+                rejections.add(new Rejection(lineNumber, line, reason));
+            }
+        }
+    }
+}
@@ -0,0 +1,774 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentServer serves a StudentDTB over HTTP with JSON bodies, so other
+ * systems can look up and change enrolments without the console Menu:
+ * <pre>
+ * GET    /students                        all students (a pinned version)
+ * GET    /students?limit=50[&amp;after=ID]     one page of students in ID order
+ * GET    /students?by=name&amp;q=Phuc         findBy (by = id, name, semester, course)
+ *                                         [&amp;offset=100][&amp;limit=50]
+ * GET    /students/CE190770               one student by exact ID
+ * POST   /students                        add {"id", "name"[, "semester", "course"]}
+ * DELETE /students/CE190770               delete a student
+ * POST   /students/CE190770/enrolments    add {"semester", "course"}
+ * DELETE /students/CE190770/enrolments?semester=SP25[&amp;course=Java]
+ *                                         remove a course, or a whole semester
+ * </pre>
+ * Input is checked with the same rules as the Menu prompts. Changes are
+ * synced to the write-ahead log, if any, before the response is sent; the
+ * log's group commit lets concurrent requests share one fsync. It uses the
+ * HTTP server built into the JDK, which keeps connections alive and answers
+ * the requests of one connection in order. Requests run on a fixed pool of
+ * threads; the database itself is safe for concurrent access.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class StudentServer implements AutoCloseable {
+
+    // Port used when none is given
+    public static final int DEFAULT_PORT = 8080;
+    // Largest request body accepted, in bytes
+    private static final int MAX_BODY = 64 * 1024;
+    // Number of connections waiting to be accepted
+    private static final int BACKLOG = 1024;
+    // Path every request is served under
+    private static final String ROOT = "/students";
+
+    static {
+        // The JDK server writes the headers and the body separately; with
+        // Nagle's algorithm on, every small response then waits for the
+        // client's delayed ACK (about 40 ms), which caps a keep-alive
+        // connection at a few dozen requests per second
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    // Database being served
+    private final StudentDTB dtb;
+    // The HTTP server
+    private final HttpServer server;
+    // Threads that run the requests
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor to create a server on a port of every network interface,
+     * with two threads per processor
+     *
+     * @param dtb The database to serve
+     * @param port The TCP port, or 0 to pick a free one
+     * @throws IOException if the port cannot be bound
+     */
+    public StudentServer(StudentDTB dtb, int port) throws IOException {
+        this(dtb, new InetSocketAddress(port), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor to create a server on an address with a fixed number of
+     * request threads
+     *
+     * @param dtb The database to serve
+     * @param address The address and port to listen on
+     * @param threads Number of threads that run requests
+     * @throws IOException if the address cannot be bound
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public StudentServer(StudentDTB dtb, InetSocketAddress address, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+        this.dtb = dtb;
+        // Fixed pool: requests are short, so a queue beats more threads
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "student-server-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        server.createContext(ROOT, this::handle);
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Gets the port the server listens on
+     *
+     * @return The TCP port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, lets running requests finish for up to one
+     * second and stops the request threads
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Answers one request, on a request thread
+     *
+     * @param exchange The request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        int status;
+        String body;
+        try {
+            // Split the path after /students into its segments
+            String path = exchange.getRequestURI().getRawPath().substring(ROOT.length());
+            String[] segments = path.isEmpty() || path.equals("/") ? new String[0] : path.substring(1).split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = decodeSegment(segments[i]);
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            StringBuilder out = new StringBuilder();
+            // Paths such as /studentsX only share the prefix
+            status = !path.isEmpty() && path.charAt(0) != '/' ? notFound(out, "Unknown path.")
+                    : route(exchange.getRequestMethod(), segments, query, exchange, out);
+            body = out.toString();
+        } catch (IllegalArgumentException e) {
+            // Input that breaks the rules of the Menu prompts
+            status = 400;
+            body = error(e.getMessage());
+        } catch (IOException e) {
+            // The change could not be made durable
+            status = 500;
+            body = error("Could not save the change: " + e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(String.valueOf(e.getMessage()));
+        }
+        send(exchange, status, body);
+    }
+
+    /**
+     * Runs the request that matches a method and path
+     *
+     * @param method The HTTP method
+     * @param segments The decoded path segments after /students
+     * @param query The decoded query parameters
+     * @param exchange The request, for its body
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IOException if the body cannot be read or a change cannot be
+     * synced
+     * @throws IllegalArgumentException if the input is not valid
+     */
+    private int route(String method, String[] segments, Map<String, String> query,
+            HttpExchange exchange, StringBuilder out) throws IOException {
+        switch (segments.length) {
+            case 0:
+                // The collection of students
+                if (method.equals("GET")) {
+                    return query.containsKey("by") ? find(query, out) : report(query, out);
+                }
+                if (method.equals("POST")) {
+                    return add(readJson(exchange), out);
+                }
+                break;
+            case 1:
+                // One student
+                if (method.equals("GET")) {
+                    return get(segments[0], out);
+                }
+                if (method.equals("DELETE")) {
+                    return delete(segments[0], out);
+                }
+                break;
+            case 2:
+                // The enrolments of one student
+                if (!segments[1].equals("enrolments")) {
+                    return notFound(out, "Unknown path.");
+                }
+                if (method.equals("POST")) {
+                    Map<String, String> fields = readJson(exchange);
+                    return enrol(segments[0], required(fields, "semester"), required(fields, "course"), out);
+                }
+                if (method.equals("DELETE")) {
+                    return unenrol(segments[0], required(query, "semester"), query.get("course"), out);
+                }
+                break;
+            default:
+                return notFound(out, "Unknown path.");
+        }
+        out.append(error("Method " + method + " is not allowed here."));
+        return 405;
+    }
+
+    /**
+     * Lists every student of a pinned database version, or one page of
+     * students in ID order when a limit is given. A full page ends with
+     * "next", the ID to pass as after for the following page.
+     *
+     * @param query The query parameters limit and after
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IllegalArgumentException if limit is not a valid count
+     */
+    private int report(Map<String, String> query, StringBuilder out) {
+        if (!query.containsKey("limit")) {
+            appendStudents(out, dtb.snapshot().students());
+            return 200;
+        }
+        // Keyset pagination: the page after the last ID the client saw
+        int limit = count(query, "limit", 0);
+        List<Student> page = dtb.streamById(query.get("after")).limit(limit).collect(Collectors.toList());
+        appendStudents(out, page);
+        if (limit > 0 && page.size() == limit) {
+            // Replace the closing brace with the key of the next page
+            out.setLength(out.length() - 1);
+            out.append(",\"next\":");
+            appendString(out, page.get(limit - 1).getId());
+            out.append('}');
+        }
+        return 200;
+    }
+
+    /**
+     * Searches the students with StudentDTB.find, reading only the matches
+     * of the requested page
+     *
+     * @param query The query parameters by, q, offset and limit
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IllegalArgumentException if by is unknown, q is missing or
+     * offset or limit is not a valid count
+     */
+    private int find(Map<String, String> query, StringBuilder out) {
+        StudentDTB.SortType type;
+        switch (query.get("by")) {
+            case "id":
+                type = StudentDTB.SortType.BY_ID;
+                break;
+            case "name":
+                type = StudentDTB.SortType.BY_NAME;
+                break;
+            case "semester":
+                type = StudentDTB.SortType.BY_SEMESTER;
+                break;
+            case "course":
+                type = StudentDTB.SortType.BY_COURSE;
+                break;
+            default:
+                throw new IllegalArgumentException("Search must be by id, name, semester or course.");
+        }
+        long offset = count(query, "offset", 0);
+        long limit = count(query, "limit", Integer.MAX_VALUE);
+        appendStudents(out, dtb.find(required(query, "q"), type).skip(offset).limit(limit).collect(Collectors.toList()));
+        return 200;
+    }
+
+    /**
+     * Gets a count parameter such as limit or offset
+     *
+     * @param query The query parameters
+     * @param name Name of the parameter
+     * @param missing Value when the parameter is missing
+     * @return The count
+     * @throws IllegalArgumentException if the parameter is not a number from
+     * 0 to Integer.MAX_VALUE
+     */
+    private static int count(Map<String, String> query, String name, int missing) {
+        String value = query.get(name);
+        if (value == null) {
+            return missing;
+        }
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(name + " must be a number of at least 0.");
+    }
+
+    /**
+     * Looks up one student by exact ID
+     *
+     * @param id The ID from the path
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     */
+    private int get(String id, StringBuilder out) {
+        Student student = dtb.findById(id);
+        if (student == null) {
+            return notFound(out, "Student ID not found.");
+        }
+        appendStudent(out, student);
+        return 200;
+    }
+
+    /**
+     * Adds a student, with an optional first enrolment
+     *
+     * @param fields The JSON fields id, name and optionally semester and
+     * course
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IOException if the change cannot be synced
+     * @throws IllegalArgumentException if a field is missing or not valid
+     */
+    private int add(Map<String, String> fields, StringBuilder out) throws IOException {
+        // Check the fields with the rules of the Menu prompts
+        Student student = new Student(StudentImporter.parseId(required(fields, "id")),
+                StudentImporter.parseName(required(fields, "name")));
+        if (fields.containsKey("semester") || fields.containsKey("course")) {
+            student.addCourse(StudentImporter.parseSemester(required(fields, "semester")),
+                    StudentImporter.parseCourse(required(fields, "course")));
+        }
+        if (!dtb.add(student)) {
+            out.append(error("Student ID already exist in database."));
+            return 409;
+        }
+        dtb.sync();
+        appendStudent(out, student);
+        return 201;
+    }
+
+    /**
+     * Deletes a student
+     *
+     * @param id The ID from the path
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IOException if the change cannot be synced
+     */
+    private int delete(String id, StringBuilder out) throws IOException {
+        if (!dtb.deleteStudent(id)) {
+            return notFound(out, "Student ID not found.");
+        }
+        dtb.sync();
+        out.append("{\"deleted\":true}");
+        return 200;
+    }
+
+    /**
+     * Adds a course to a semester of a student
+     *
+     * @param id The ID from the path
+     * @param semester The semester field
+     * @param course The course field
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IOException if the change cannot be synced
+     * @throws IllegalArgumentException if the semester or course is not valid
+     */
+    private int enrol(String id, String semester, String course, StringBuilder out) throws IOException {
+        Student student = dtb.findForUpdate(id);
+        if (student == null) {
+            return notFound(out, "Student ID not found.");
+        }
+        boolean changed = student.addCourse(StudentImporter.parseSemester(semester), StudentImporter.parseCourse(course));
+        dtb.sync();
+        out.append("{\"changed\":").append(changed).append('}');
+        return 200;
+    }
+
+    /**
+     * Removes a course, or a whole semester, from a student
+     *
+     * @param id The ID from the path
+     * @param semester The semester parameter
+     * @param course The course parameter, or null to remove the semester
+     * @param out Receives the JSON response body
+     * @return The HTTP status
+     * @throws IOException if the change cannot be synced
+     * @throws IllegalArgumentException if the semester or course is not valid
+     */
+    private int unenrol(String id, String semester, String course, StringBuilder out) throws IOException {
+        Student student = dtb.findForUpdate(id);
+        if (student == null) {
+            return notFound(out, "Student ID not found.");
+        }
+        String code = StudentImporter.parseSemester(semester);
+        boolean changed = course == null ? student.removeSemester(code)
+                : student.removeCourse(code, StudentImporter.parseCourse(course));
+        dtb.sync();
+        out.append("{\"changed\":").append(changed).append('}');
+        return 200;
+    }
+
+    /**
+     * Writes a not-found error
+     *
+     * @param out Receives the JSON response body
+     * @param message What was not found
+     * @return The HTTP status 404
+     */
+    private static int notFound(StringBuilder out, String message) {
+        out.append(error(message));
+        return 404;
+    }
+
+    /**
+     * Gets a field that must be present
+     *
+     * @param fields The fields or query parameters
+     * @param name Name of the field
+     * @return The value of the field
+     * @throws IllegalArgumentException if the field is missing
+     */
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field: " + name + ".");
+        }
+        return value;
+    }
+
+    /**
+     * Sends a JSON response with a known length, so the connection can be
+     * kept alive for the next request
+     *
+     * @param exchange The request and its response
+     * @param status The HTTP status
+     * @param body The JSON body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the request body as a JSON object of string fields
+     *
+     * @param exchange The request
+     * @return The fields of the object
+     * @throws IOException if the body cannot be read
+     * @throws IllegalArgumentException if the body is too large or is not a
+     * JSON object of strings
+     */
+    private static Map<String, String> readJson(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+                if (bytes.size() > MAX_BODY) {
+                    throw new IllegalArgumentException("Request body is larger than " + MAX_BODY + " bytes.");
+                }
+            }
+        }
+        return parseObject(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a flat JSON object whose values are all strings, such as
+     * {"id": "CE190770", "name": "Dinh Cong Phuc"}
+     *
+     * @param json The JSON text
+     * @return The fields of the object
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skipSpaces(json, 0)};
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                // "name": "value"
+                String name = parseString(json, pos);
+                expect(json, pos, ':');
+                fields.put(name, parseString(json, pos));
+                if (peek(json, pos) == ',') {
+                    pos[0]++;
+                    continue;
+                }
+                expect(json, pos, '}');
+                break;
+            }
+        }
+        if (skipSpaces(json, pos[0]) != json.length()) {
+            throw new IllegalArgumentException("Body must be one JSON object.");
+        }
+        return fields;
+    }
+
+    /**
+     * Parses a JSON string at a position
+     *
+     * @param json The JSON text
+     * @param pos The position, moved past the string
+     * @return The string value
+     * @throws IllegalArgumentException if there is no valid string there
+     */
+    private static String parseString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0];
+        while (true) {
+            if (i >= json.length()) {
+                throw new IllegalArgumentException("Unterminated JSON string.");
+            }
+            char c = json.charAt(i++);
+            if (c == '"') {
+                break;
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            // Escape sequence
+            char e = i < json.length() ? json.charAt(i++) : 0;
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > json.length()) {
+                        throw new IllegalArgumentException("Invalid JSON escape.");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid JSON escape.");
+                    }
+                    i += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid JSON escape.");
+            }
+        }
+        pos[0] = i;
+        return sb.toString();
+    }
+
+    /**
+     * Skips whitespace and checks the next character
+     *
+     * @param json The JSON text
+     * @param pos The position, moved past the character
+     * @param expected The character that must come next
+     * @throws IllegalArgumentException if another character comes next
+     */
+    private static void expect(String json, int[] pos, char expected) {
+        if (peek(json, pos) != expected) {
+            throw new IllegalArgumentException("Body must be a JSON object of strings.");
+        }
+        pos[0]++;
+    }
+
+    /**
+     * Skips whitespace and gets the next character without consuming it
+     *
+     * @param json The JSON text
+     * @param pos The position, moved past the whitespace
+     * @return The next character, or 0 at the end of the text
+     */
+    private static char peek(String json, int[] pos) {
+        pos[0] = skipSpaces(json, pos[0]);
+        return pos[0] < json.length() ? json.charAt(pos[0]) : 0;
+    }
+
+    /**
+     * Finds the first non-whitespace character
+     *
+     * @param json The JSON text
+     * @param i Where to start
+     * @return Position of the first non-whitespace character at or after i
+     */
+    private static int skipSpaces(String json, int i) {
+        while (i < json.length() && (json.charAt(i) == ' ' || json.charAt(i) == '\t'
+                || json.charAt(i) == '\n' || json.charAt(i) == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes the %XX escapes of one path segment. Unlike a query string, a
+     * '+' in a path is a plus sign, as in C++.
+     *
+     * @param segment The raw path segment
+     * @return The decoded segment
+     * @throws IllegalArgumentException if an escape is malformed
+     */
+    private static String decodeSegment(String segment) {
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        try {
+            return URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a query string into its parameters
+     *
+     * @param rawQuery The raw query string, or null
+     * @return The parameters; the last one wins when a name repeats
+     * @throws IllegalArgumentException if an escape is malformed
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        try {
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                query.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return query;
+    }
+
+    /**
+     * Formats an error body
+     *
+     * @param message The error message
+     * @return {"error": message}
+     */
+    private static String error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        appendString(sb, message);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Appends a list of students as {"count": n, "students": [...]}
+     *
+     * @param out The JSON being built
+     * @param students The students
+     */
+    private static void appendStudents(StringBuilder out, List<Student> students) {
+        out.append("{\"count\":").append(students.size()).append(",\"students\":[");
+        for (int i = 0; i < students.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendStudent(out, students.get(i));
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Appends a student as {"id", "name", "semesters": {semester: [courses]}}
+     *
+     * @param out The JSON being built
+     * @param student The student
+     */
+    static void appendStudent(StringBuilder out, Student student) {
+        out.append("{\"id\":");
+        appendString(out, student.getId());
+        out.append(",\"name\":");
+        appendString(out, student.getName());
+        out.append(",\"semesters\":{");
+        boolean firstSemester = true;
+        // One copy of the enrolments, so the JSON is one state of the student
+        for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+            if (!firstSemester) {
+                out.append(',');
+            }
+            firstSemester = false;
+            appendString(out, entry.getKey());
+            out.append(":[");
+            boolean firstCourse = true;
+            for (String course : entry.getValue()) {
+                if (!firstCourse) {
+                    out.append(',');
+                }
+                firstCourse = false;
+                appendString(out, course);
+            }
+            out.append(']');
+        }
+        out.append("}}");
+    }
+
+    /**
+     * Appends a JSON string literal, escaping quotes, backslashes and
+     * control characters
+     *
+     * @param out The JSON being built
+     * @param value The string
+     */
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,739 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentSnapshot stores a StudentDTB in a compact binary file and reads it
+ * back through a memory-mapped FileChannel. Layout of the file:
+ * <pre>
+ * [int MAGIC][int VERSION][long logSequence]
+ * [int stringCount] then each string as [u16 length][UTF-8 bytes]
+ * records: [u8 idLength][id][u16 nameLength][name][u8 semesterCount]
+ *          then per semester [u16 semester][u8 courseCount][u16 course]...
+ *          (semesters and courses are positions in the string table)
+ *          (a student with more than 255 semesters, or more than 255
+ *          courses in a semester, cannot be written)
+ * index:   [int recordOffset] per student, sorted by upper-case ID
+ * footer:  [long recordsOffset][long indexOffset][int count][int MAGIC]
+ * </pre>
+ * Opening a snapshot walks every record and the index once without creating
+ * any Student, so a damaged file is refused at once rather than halfway
+ * through a load. An opened snapshot answers ID lookups by binary search
+ * over the index in the mapped pages, creating only the Student that was
+ * asked for; a database loading it in the background answers ID lookups
+ * that way until its indexes are filled. The log sequence is the last
+ * write-ahead log record the snapshot contains; compacting the log merges
+ * its changes into a new file, copying the records it did not touch.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class StudentSnapshot {
+
+    // File signature, "SDTB"
+    private static final int MAGIC = 0x53445442;
+    // Version of the file layout
+    private static final int VERSION = 2;
+    // Size of the footer in bytes
+    private static final int FOOTER_SIZE = 24;
+
+    // Mapped content of the snapshot file
+    private final MappedByteBuffer buffer;
+    // Semester and course strings, by position in the string table
+    private final String[] strings;
+    // Start of the records and of the index
+    private final int recordsOffset;
+    private final int indexOffset;
+    // Number of students in the snapshot
+    private final int count;
+    // Last write-ahead log record contained in the snapshot
+    private final long logSequence;
+    // Offsets of the records in the order they were written
+    private final int[] recordOffsets;
+    // Positions in recordOffsets sorted by upper-case ID, as in the index
+    private final int[] idOrder;
+
+    /**
+     * Constructor to wrap a mapped snapshot file
+     *
+     * @param buffer The mapped file content
+     * @throws IOException if the file is not a valid snapshot
+     */
+    private StudentSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        // Check the header and the footer signatures
+        int size = buffer.capacity();
+        if (size < 20 + FOOTER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a student snapshot file.");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ".");
+        }
+        // Read the footer, the index must fill the space up to it
+        long records = buffer.getLong(size - FOOTER_SIZE);
+        long index = buffer.getLong(size - FOOTER_SIZE + 8);
+        count = buffer.getInt(size - 8);
+        if (count < 0 || records < 20 || index < records || index + count * 4L != size - FOOTER_SIZE) {
+            throw new IOException("Snapshot footer does not match its size.");
+        }
+        recordsOffset = (int) records;
+        indexOffset = (int) index;
+        logSequence = buffer.getLong(8);
+        // Read the string table once, it is shared by every record
+        int pos = 16;
+        int stringCount = buffer.getInt(pos);
+        pos += 4;
+        // Every string takes at least its 2-byte length
+        if (stringCount < 0 || stringCount > (recordsOffset - pos) / 2) {
+            throw new IOException("Snapshot string table does not fit the file.");
+        }
+        strings = new String[stringCount];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            if (length > recordsOffset - pos - 2) {
+                throw new IOException("Snapshot string table does not fit the file.");
+            }
+            strings[i] = readString(pos + 2, length);
+            pos += 2 + length;
+        }
+        if (pos != recordsOffset) {
+            throw new IOException("Snapshot string table does not end where its records start.");
+        }
+        recordOffsets = checkRecords();
+        idOrder = checkIndex();
+    }
+
+    /**
+     * Walks every record without creating any Student, checking that each
+     * one lies between the string table and the index and only refers to
+     * strings of the table
+     *
+     * @return Offsets of the records in the order they were written
+     * @throws IOException if a record does not fit the file
+     */
+    private int[] checkRecords() throws IOException {
+        int[] offsets = new int[count];
+        int pos = recordsOffset;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = pos;
+            // ID and name
+            pos = recordField(pos, 1);
+            pos = recordField(pos, buffer.get(pos - 1) & 0xFF);
+            pos = recordField(pos, 2);
+            pos = recordField(pos, buffer.getShort(pos - 2) & 0xFFFF);
+            // Semesters and their courses
+            pos = recordField(pos, 1);
+            int semesters = buffer.get(pos - 1) & 0xFF;
+            for (int s = 0; s < semesters; s++) {
+                pos = recordField(pos, 3);
+                int courses = buffer.get(pos - 1) & 0xFF;
+                checkString(pos - 3);
+                pos = recordField(pos, 2 * courses);
+                for (int c = 0; c < courses; c++) {
+                    checkString(pos - 2 * (courses - c));
+                }
+            }
+        }
+        if (pos != indexOffset) {
+            throw new IOException("Snapshot records do not end where its index starts.");
+        }
+        return offsets;
+    }
+
+    /**
+     * Checks that every index entry is the offset of a record
+     *
+     * @return Positions in recordOffsets in the order of the index
+     * @throws IOException if an index entry is not a record offset
+     */
+    private int[] checkIndex() throws IOException {
+        // Records follow each other, so their offsets ascend and the index
+        // entries can be turned into record positions by binary search
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = Arrays.binarySearch(recordOffsets, buffer.getInt(indexOffset + i * 4));
+            if (order[i] < 0) {
+                throw new IOException("Snapshot index does not match its records.");
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Steps over a field of a record
+     *
+     * @param pos Offset of the field
+     * @param length Length of the field in bytes
+     * @return Offset after the field
+     * @throws IOException if the field runs into the index
+     */
+    private int recordField(int pos, int length) throws IOException {
+        if (length > indexOffset - pos) {
+            throw new IOException("Snapshot record at " + pos + " is cut off.");
+        }
+        return pos + length;
+    }
+
+    /**
+     * Checks that a string table position stored in a record exists
+     *
+     * @param pos Offset of the 2-byte position
+     * @throws IOException if the table has no such string
+     */
+    private void checkString(int pos) throws IOException {
+        if ((buffer.getShort(pos) & 0xFFFF) >= strings.length) {
+            throw new IOException("Snapshot record at " + pos + " refers to a missing string.");
+        }
+    }
+
+    /**
+     * Maps a snapshot file for reading
+     *
+     * @param file The snapshot file
+     * @return The opened snapshot
+     * @throws IOException if the file cannot be read, is not a snapshot or
+     * is damaged
+     */
+    public static StudentSnapshot open(Path file) throws IOException {
+        // Map the whole file read-only; the mapping stays valid after closing
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new StudentSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes every student of a database to a snapshot file. The file is
+     * written next to the target and then moved over it, so a crash never
+     * leaves a half-written snapshot behind. The students are taken from a
+     * pinned database version, so changes made while the file is written do
+     * not end up half in it.
+     *
+     * @param dtb The database to write
+     * @param file The snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(StudentDTB dtb, Path file) throws IOException {
+        write(dtb.snapshot().students(), file, 0);
+    }
+
+    /**
+     * Writes every student of a database to a snapshot file, recording the
+     * last write-ahead log record the database contains
+     *
+     * @param dtb The database to write
+     * @param file The snapshot file
+     * @param logSequence The last log record applied to the database
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(StudentDTB dtb, Path file, long logSequence) throws IOException {
+        write(dtb.snapshot().students(), file, logSequence);
+    }
+
+    /**
+     * Writes a list of students to a snapshot file, replacing it atomically
+     *
+     * @param students The students to write
+     * @param file The snapshot file
+     * @param logSequence The last log record contained in the students
+     * @throws IOException if the file cannot be written
+     */
+    static void write(List<Student> students, Path file, long logSequence) throws IOException {
+        // Collect every distinct semester and course into the string table
+        Map<String, Integer> table = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Student student : students) {
+            for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+                intern(entry.getKey(), table, strings);
+                for (String course : entry.getValue()) {
+                    intern(course, table, strings);
+                }
+            }
+        }
+        // Table positions are stored in 2 bytes
+        if (strings.size() > 0xFFFF) {
+            throw new IOException("Too many distinct semesters and courses for a snapshot.");
+        }
+        // Write to a temporary file in the same directory
+        Path temp = tempFile(file);
+        int[] offsets = new int[students.size()];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            // Header and string table
+            long recordsOffset = writeHeader(out, logSequence, strings);
+            // Records
+            for (int i = 0; i < students.size(); i++) {
+                offsets[i] = out.size();
+                writeRecord(out, students.get(i), table);
+            }
+            // Index of record offsets sorted by upper-case ID
+            long indexOffset = out.size();
+            for (Integer i : idOrder(students)) {
+                out.writeInt(offsets[i]);
+            }
+            writeFooter(out, recordsOffset, indexOffset, students.size());
+        }
+        replace(temp, file);
+    }
+
+    /**
+     * Writes a new snapshot file holding this snapshot's students with the
+     * changes of a write-ahead log merged in. Records of students the log
+     * did not touch are copied byte for byte from the mapped file and their
+     * index order is reused, so only the touched and added students exist
+     * as Student objects. The file may be the one this snapshot was opened
+     * from; it is replaced atomically and this mapping stays readable.
+     *
+     * @param changed Record position -> the student that replaces it, or
+     * null if the student was deleted
+     * @param added Students the log added, in the order they were added
+     * @param file The snapshot file
+     * @param logSequence The last log record contained in the result
+     * @throws IOException if the file cannot be written
+     */
+    void merge(Map<Integer, Student> changed, List<Student> added, Path file, long logSequence) throws IOException {
+        // The new string table starts with this one, so copied records still
+        // point at the right strings
+        Map<String, Integer> table = new HashMap<>();
+        List<String> newStrings = new ArrayList<>(Arrays.asList(strings));
+        for (int i = 0; i < strings.length; i++) {
+            table.putIfAbsent(strings[i], i);
+        }
+        // Students written from objects: replacements in record order, then
+        // the added ones
+        List<Student> written = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Student student = changed.get(i);
+            if (student != null) {
+                written.add(student);
+            }
+        }
+        written.addAll(added);
+        for (Student student : written) {
+            for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+                intern(entry.getKey(), table, newStrings);
+                for (String course : entry.getValue()) {
+                    intern(course, table, newStrings);
+                }
+            }
+        }
+        if (newStrings.size() > 0xFFFF) {
+            throw new IOException("Too many distinct semesters and courses for a snapshot.");
+        }
+        Path temp = tempFile(file);
+        // New offsets of the copied records, -1 for replaced or deleted ones
+        int[] copiedOffsets = new int[count];
+        int[] writtenOffsets = new int[written.size()];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            long recordsOffset = writeHeader(out, logSequence, newStrings);
+            // Records in their old order, then the added students
+            ByteBuffer view = buffer.duplicate();
+            byte[] bytes = new byte[256];
+            int next = 0;
+            for (int i = 0; i < count; i++) {
+                copiedOffsets[i] = -1;
+                if (changed.containsKey(i)) {
+                    Student student = changed.get(i);
+                    if (student != null) {
+                        writtenOffsets[next++] = out.size();
+                        writeRecord(out, student, table);
+                    }
+                } else {
+                    // Copy the unchanged record without decoding it
+                    copiedOffsets[i] = out.size();
+                    int length = (i + 1 < count ? recordOffsets[i + 1] : indexOffset) - recordOffsets[i];
+                    if (bytes.length < length) {
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    }
+                    view.position(recordOffsets[i]);
+                    view.get(bytes, 0, length);
+                    out.write(bytes, 0, length);
+                }
+            }
+            for (Student student : added) {
+                writtenOffsets[next++] = out.size();
+                writeRecord(out, student, table);
+            }
+            // Index: the copied records in their old ID order, merged with
+            // the written students sorted by ID
+            long indexOffset = out.size();
+            Integer[] writtenOrder = idOrder(written);
+            int w = 0;
+            for (int position : idOrder) {
+                if (copiedOffsets[position] < 0) {
+                    continue;
+                }
+                // The log never named a copied record's ID, so no ID is equal
+                while (w < writtenOrder.length && compareId(recordOffsets[position],
+                        StudentDTB.normalizeId(written.get(writtenOrder[w]).getId())
+                        .getBytes(StandardCharsets.UTF_8)) > 0) {
+                    out.writeInt(writtenOffsets[writtenOrder[w++]]);
+                }
+                out.writeInt(copiedOffsets[position]);
+            }
+            while (w < writtenOrder.length) {
+                out.writeInt(writtenOffsets[writtenOrder[w++]]);
+            }
+            // One 4-byte index entry per student
+            writeFooter(out, recordsOffset, indexOffset, (int) ((out.size() - indexOffset) / 4));
+        }
+        replace(temp, file);
+    }
+
+    /**
+     * Gets the path of the temporary file a snapshot is written to before
+     * it replaces the target
+     *
+     * @param file The snapshot file
+     * @return The temporary file in the same directory
+     */
+    private static Path tempFile(Path file) {
+        Path absolute = file.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    }
+
+    /**
+     * Writes the header and the string table
+     *
+     * @param out The output stream
+     * @param logSequence The last log record contained in the snapshot
+     * @param strings Semesters and courses by table position
+     * @return Offset of the first record
+     * @throws IOException if a string is too long or cannot be written
+     */
+    private static long writeHeader(DataOutputStream out, long logSequence, List<String> strings) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(logSequence);
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s, 0xFFFF);
+        }
+        return out.size();
+    }
+
+    /**
+     * Writes the record of a student
+     *
+     * @param out The output stream
+     * @param student The student
+     * @param table Semester or course -> position in the string table
+     * @throws IOException if the student does not fit the layout or cannot
+     * be written
+     */
+    private static void writeRecord(DataOutputStream out, Student student, Map<String, Integer> table)
+            throws IOException {
+        writeString(out, student.getId(), 0xFF);
+        writeString(out, student.getName(), 0xFFFF);
+        Map<String, Set<String>> semesters = student.getAllSemesterCourses();
+        // Counts are stored in 1 byte
+        if (semesters.size() > 0xFF) {
+            throw new IOException("Too many semesters for snapshot: " + student.getId());
+        }
+        out.writeByte(semesters.size());
+        for (Map.Entry<String, Set<String>> entry : semesters.entrySet()) {
+            if (entry.getValue().size() > 0xFF) {
+                throw new IOException("Too many courses in " + entry.getKey() + " for snapshot: " + student.getId());
+            }
+            out.writeShort(table.get(entry.getKey()));
+            out.writeByte(entry.getValue().size());
+            for (String course : entry.getValue()) {
+                out.writeShort(table.get(course));
+            }
+        }
+    }
+
+    /**
+     * Sorts the positions of students by upper-case ID
+     *
+     * @param students The students
+     * @return Positions in students, in the order of the index
+     */
+    private static Integer[] idOrder(List<Student> students) {
+        Integer[] order = new Integer[students.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> StudentDTB.normalizeId(students.get(i).getId())));
+        return order;
+    }
+
+    /**
+     * Writes the footer
+     *
+     * @param out The output stream
+     * @param recordsOffset Offset of the first record
+     * @param indexOffset Offset of the index
+     * @param count Number of students
+     * @throws IOException if the footer cannot be written or the file is
+     * larger than 2 GB
+     */
+    private static void writeFooter(DataOutputStream out, long recordsOffset, long indexOffset, int count)
+            throws IOException {
+        out.writeLong(recordsOffset);
+        out.writeLong(indexOffset);
+        out.writeInt(count);
+        out.writeInt(MAGIC);
+        // DataOutputStream counts bytes in an int
+        if (out.size() < 0) {
+            throw new IOException("Snapshot is larger than 2 GB.");
+        }
+    }
+
+    /**
+     * Flushes a written temporary file to disk and moves it over the
+     * snapshot file
+     *
+     * @param temp The temporary file
+     * @param file The snapshot file
+     * @throws IOException if the file cannot be flushed or moved
+     */
+    private static void replace(Path temp, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file.toAbsolutePath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Fall back to a plain replace on file systems without atomic moves
+            Files.move(temp, file.toAbsolutePath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Gets the number of students in the snapshot
+     *
+     * @return The number of students
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the last write-ahead log record contained in the snapshot
+     *
+     * @return The log sequence number, 0 if no record was logged before it
+     */
+    public long getLogSequence() {
+        return logSequence;
+    }
+
+    /**
+     * Finds a student by exact ID (case-insensitive) directly in the mapped
+     * file, without reading any other record
+     *
+     * @param id The ID to look up
+     * @return A new Student read from the snapshot, or null if not found
+     */
+    public Student findById(String id) {
+        int record = recordOf(id);
+        return record < 0 ? null : readStudent(record);
+    }
+
+    /**
+     * Checks if a student ID is in the snapshot directly in the mapped file,
+     * without creating any Student
+     *
+     * @param id The ID to check (case-insensitive)
+     * @return true if the ID is in the snapshot, false otherwise
+     */
+    public boolean contains(String id) {
+        return recordOf(id) >= 0;
+    }
+
+    /**
+     * Gets the position of a student ID among the records, in the order
+     * they were written
+     *
+     * @param id The ID to look up (case-insensitive)
+     * @return The record position, or -1 if not found
+     */
+    int positionOf(String id) {
+        int record = recordOf(id);
+        return record < 0 ? -1 : Arrays.binarySearch(recordOffsets, record);
+    }
+
+    /**
+     * Creates the student of a record position
+     *
+     * @param position The record position, as given by positionOf
+     * @return A new Student read from the snapshot
+     */
+    Student read(int position) {
+        return readStudent(recordOffsets[position]);
+    }
+
+    /**
+     * Finds the record of a student ID by binary search over the index
+     *
+     * @param id The ID to look up (case-insensitive)
+     * @return Offset of the record, or -1 if not found
+     */
+    private int recordOf(String id) {
+        // Compare against the upper-case ID bytes
+        byte[] key = StudentDTB.normalizeId(id).getBytes(StandardCharsets.UTF_8);
+        // Binary search over the sorted index
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int middle = (lo + hi) >>> 1;
+            int record = buffer.getInt(indexOffset + middle * 4);
+            int cmp = compareId(record, key);
+            if (cmp < 0) {
+                lo = middle + 1;
+            } else if (cmp > 0) {
+                hi = middle - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates every student of the snapshot and adds it to a database. An
+     * empty database is filled in bulk: the ID order comes from the index
+     * checked when the snapshot was opened, so its sorted views are built
+     * without a search per student.
+     *
+     * @param dtb The database to fill
+     * @return The number of students added
+     */
+    public int loadInto(StudentDTB dtb) {
+        // Create the students in the order they were written
+        Student[] students = new Student[count];
+        for (int i = 0; i < count; i++) {
+            students[i] = readStudent(recordOffsets[i]);
+        }
+        return dtb.load(students, idOrder);
+    }
+
+    /**
+     * Creates the Student stored at a record offset
+     *
+     * @param record Offset of the record
+     * @return The student
+     */
+    private Student readStudent(int record) {
+        int pos = record;
+        // ID and name
+        int idLength = buffer.get(pos) & 0xFF;
+        String id = readString(pos + 1, idLength);
+        pos += 1 + idLength;
+        int nameLength = buffer.getShort(pos) & 0xFFFF;
+        String name = readString(pos + 2, nameLength);
+        pos += 2 + nameLength;
+        // Enrolments, semesters and courses come from the string table
+        Enrolments enrolments = new Enrolments.Hashed();
+        int semesters = buffer.get(pos++) & 0xFF;
+        for (int s = 0; s < semesters; s++) {
+            String semester = strings[buffer.getShort(pos) & 0xFFFF];
+            int courses = buffer.get(pos + 2) & 0xFF;
+            pos += 3;
+            for (int c = 0; c < courses; c++) {
+                enrolments.add(semester, strings[buffer.getShort(pos) & 0xFFFF]);
+                pos += 2;
+            }
+        }
+        // Work out the sort keys once, not once per course
+        Student student = new Student(id, name, enrolments);
+        student.refreshSortKeys();
+        return student;
+    }
+
+    /**
+     * Compares the upper-case ID of a record with a key
+     *
+     * @param record Offset of the record
+     * @param key Upper-case ID bytes
+     * @return Negative, zero or positive like Comparator.compare
+     */
+    private int compareId(int record, byte[] key) {
+        int length = buffer.get(record) & 0xFF;
+        // Compare byte by byte, folding ASCII letters to upper case
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int b = buffer.get(record + 1 + i) & 0xFF;
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != (key[i] & 0xFF)) {
+                return b - (key[i] & 0xFF);
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Reads a UTF-8 string from the mapped file
+     *
+     * @param pos Offset of the first byte
+     * @param length Number of bytes
+     * @return The string
+     */
+    private String readString(int pos, int length) {
+        byte[] bytes = new byte[length];
+        // Copy through a view, so the shared buffer's position never moves
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string
+     *
+     * @param out The output stream
+     * @param s The string to write
+     * @param maxLength 0xFF for a 1-byte length, 0xFFFF for a 2-byte length
+     * @throws IOException if the string is too long or cannot be written
+     */
+    private static void writeString(DataOutputStream out, String s, int maxLength) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxLength) {
+            throw new IOException("Value too long for snapshot: " + s);
+        }
+        if (maxLength == 0xFF) {
+            out.writeByte(bytes.length);
+        } else {
+            out.writeShort(bytes.length);
+        }
+        out.write(bytes);
+    }
+
+    /**
+     * Gives a string its position in the string table
+     *
+     * @param s The string
+     * @param table String -> position
+     * @param strings Strings by position
+     */
+    private static void intern(String s, Map<String, Integer> table, List<String> strings) {
+        if (!table.containsKey(s)) {
+            table.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+}
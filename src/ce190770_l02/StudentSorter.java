@@ -0,0 +1,306 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentSorter is the stable merge sort engine used by StudentDTB. The sort
+ * key of every student is computed once before sorting (decorate), the keys
+ * and students are merged side by side using a single scratch copy of the
+ * arrays (sort), and the sorted students are written back to the list
+ * (undecorate). Large lists can be sorted in parallel on a ForkJoinPool; the
+ * parallel path splits and merges exactly like the sequential one, so both
+ * give the same stable order.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class StudentSorter {
+
+    // Ranges shorter than this are sorted with insertion sort
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Private constructor, this class only has static methods
+     */
+    private StudentSorter() {
+    }
+
+    /**
+     * Sorts a list of students with a comparator, keeping equal students in
+     * their current order
+     *
+     * @param list The list to sort in place
+     * @param order The comparator to sort by, may be composed with
+     * thenComparing for multi-key sorts
+     */
+    public static void sort(List<Student> list, Comparator<? super Student> order) {
+        // The student itself is the sort key
+        sort(list, Function.identity(), order);
+    }
+
+    /**
+     * Sorts a list of students by a key computed once per student, keeping
+     * students with equal keys in their current order
+     *
+     * @param <K> The type of the sort key
+     * @param list The list to sort in place
+     * @param keyExtractor Computes the sort key of a student
+     * @param keyOrder The order of the sort keys
+     */
+    public static <K> void sort(List<Student> list, Function<? super Student, ? extends K> keyExtractor,
+            Comparator<? super K> keyOrder) {
+        // Nothing to sort for 0 or 1 elements
+        int length = list.size();
+        if (length <= 1) {
+            return;
+        }
+        // Decorate: compute the key of every student once
+        Object[] keys = new Object[length];
+        Student[] items = new Student[length];
+        for (int i = 0; i < length; i++) {
+            items[i] = list.get(i);
+            keys[i] = keyExtractor.apply(items[i]);
+        }
+        // Sort keys and students together, using copies as the scratch buffer
+        new Merger<K>(keyOrder).mergeSort(keys.clone(), items.clone(), keys, items, 0, length);
+        // Undecorate: write the sorted students back
+        for (int i = 0; i < length; i++) {
+            list.set(i, items[i]);
+        }
+    }
+
+    /**
+     * Sorts a list of students by a key computed once per student, splitting
+     * the work across the common ForkJoinPool. Ranges shorter than the
+     * threshold are sorted sequentially; a list shorter than the threshold
+     * takes the sequential path entirely.
+     *
+     * @param <K> The type of the sort key
+     * @param list The list to sort in place
+     * @param keyExtractor Computes the sort key of a student
+     * @param keyOrder The order of the sort keys
+     * @param threshold Size below which a range is sorted sequentially
+     */
+    public static <K> void parallelSort(List<Student> list, Function<? super Student, ? extends K> keyExtractor,
+            Comparator<? super K> keyOrder, int threshold) {
+        // Small lists are not worth the fork/join overhead
+        int length = list.size();
+        if (length < threshold || length <= 1) {
+            sort(list, keyExtractor, keyOrder);
+            return;
+        }
+        // Decorate: compute the key of every student once
+        Object[] keys = new Object[length];
+        Student[] items = new Student[length];
+        for (int i = 0; i < length; i++) {
+            items[i] = list.get(i);
+            keys[i] = keyExtractor.apply(items[i]);
+        }
+        // Sort keys and students together on the common pool
+        Merger<K> merger = new Merger<>(keyOrder);
+        ForkJoinPool.commonPool().invoke(new MergeTask<>(merger, keys.clone(), items.clone(), keys, items,
+                0, length, Math.max(threshold, INSERTION_SORT_THRESHOLD)));
+        // Undecorate: write the sorted students back
+        for (int i = 0; i < length; i++) {
+            list.set(i, items[i]);
+        }
+    }
+
+    /**
+     * Fork/join task that sorts both halves of a range in parallel and then
+     * merges them, with the same array roles as Merger.mergeSort
+     *
+     * @param <K> The type of the sort key
+     */
+    private static final class MergeTask<K> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // Merger holding the key order
+        private final Merger<K> merger;
+        // Scratch arrays of this range
+        private final Object[] srcKeys;
+        private final Student[] srcItems;
+        // Arrays that receive the sorted range
+        private final Object[] dstKeys;
+        private final Student[] dstItems;
+        // Range to sort, [lo, hi)
+        private final int lo;
+        private final int hi;
+        // Size below which the range is sorted sequentially
+        private final int threshold;
+
+        /**
+         * Constructor to create a task for one range
+         *
+         * @param merger Merger holding the key order
+         * @param srcKeys Scratch keys
+         * @param srcItems Scratch students
+         * @param dstKeys Keys that receive the sorted range
+         * @param dstItems Students that receive the sorted range
+         * @param lo First index of the range (inclusive)
+         * @param hi Last index of the range (exclusive)
+         * @param threshold Size below which the range is sorted sequentially
+         */
+        MergeTask(Merger<K> merger, Object[] srcKeys, Student[] srcItems, Object[] dstKeys, Student[] dstItems,
+                int lo, int hi, int threshold) {
+            this.merger = merger;
+            this.srcKeys = srcKeys;
+            this.srcItems = srcItems;
+            this.dstKeys = dstKeys;
+            this.dstItems = dstItems;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            // Small ranges are sorted on the current thread
+            if (hi - lo < threshold) {
+                merger.mergeSort(srcKeys, srcItems, dstKeys, dstItems, lo, hi);
+                return;
+            }
+            // Calculate middle point the same way as the sequential sort
+            int middle = (lo + hi) >>> 1;
+            // Sort both halves into the scratch arrays in parallel
+            invokeAll(new MergeTask<>(merger, dstKeys, dstItems, srcKeys, srcItems, lo, middle, threshold),
+                    new MergeTask<>(merger, dstKeys, dstItems, srcKeys, srcItems, middle, hi, threshold));
+            // Merge the sorted halves back into the destination
+            merger.merge(srcKeys, srcItems, dstKeys, dstItems, lo, middle, hi);
+        }
+    }
+
+    /**
+     * Holds the key order and performs the actual merge sort. The source and
+     * destination arrays swap roles on every level, so no level allocates.
+     *
+     * @param <K> The type of the sort key
+     */
+    private static final class Merger<K> {
+
+        // Order of the sort keys
+        private final Comparator<? super K> order;
+
+        /**
+         * Constructor to create a merger for a key order
+         *
+         * @param order The order of the sort keys
+         */
+        Merger(Comparator<? super K> order) {
+            this.order = order;
+        }
+
+        /**
+         * Compares two decorated keys
+         *
+         * @param left The left key
+         * @param right The right key
+         * @return Negative, zero or positive like Comparator.compare
+         */
+        @SuppressWarnings("unchecked")
+        int compare(Object left, Object right) {
+            return order.compare((K) left, (K) right);
+        }
+
+        /**
+         * Sorts the range [lo, hi) into the destination arrays. On entry the
+         * source and destination hold the same elements in that range.
+         *
+         * @param srcKeys Scratch keys
+         * @param srcItems Scratch students
+         * @param dstKeys Keys that receive the sorted range
+         * @param dstItems Students that receive the sorted range
+         * @param lo First index of the range (inclusive)
+         * @param hi Last index of the range (exclusive)
+         */
+        void mergeSort(Object[] srcKeys, Student[] srcItems, Object[] dstKeys, Student[] dstItems, int lo, int hi) {
+            // Small ranges: insertion sort directly in the destination
+            if (hi - lo < INSERTION_SORT_THRESHOLD) {
+                insertionSort(dstKeys, dstItems, lo, hi);
+                return;
+            }
+            // Calculate middle point
+            int middle = (lo + hi) >>> 1;
+            // Recursively sort both halves into the scratch arrays
+            mergeSort(dstKeys, dstItems, srcKeys, srcItems, lo, middle);
+            mergeSort(dstKeys, dstItems, srcKeys, srcItems, middle, hi);
+            // Merge the sorted halves back into the destination
+            merge(srcKeys, srcItems, dstKeys, dstItems, lo, middle, hi);
+        }
+
+        /**
+         * Merges the sorted ranges [lo, middle) and [middle, hi) of the source
+         * into the destination, taking from the left on ties
+         *
+         * @param srcKeys Keys of the two sorted halves
+         * @param srcItems Students of the two sorted halves
+         * @param dstKeys Keys that receive the merged range
+         * @param dstItems Students that receive the merged range
+         * @param lo First index of the left half
+         * @param middle First index of the right half
+         * @param hi End of the right half (exclusive)
+         */
+        void merge(Object[] srcKeys, Student[] srcItems, Object[] dstKeys, Student[] dstItems,
+                int lo, int middle, int hi) {
+            // Already in order: copy the whole range in one go
+            if (compare(srcKeys[middle - 1], srcKeys[middle]) <= 0) {
+                System.arraycopy(srcKeys, lo, dstKeys, lo, hi - lo);
+                System.arraycopy(srcItems, lo, dstItems, lo, hi - lo);
+                return;
+            }
+            // Initialize indices
+            int l = lo;      // Index for left half
+            int r = middle;  // Index for right half
+            // Fill every position of the merged range
+            for (int i = lo; i < hi; i++) {
+                // Take from the left while it is not greater than the right
+                if (r >= hi || (l < middle && compare(srcKeys[l], srcKeys[r]) <= 0)) {
+                    dstKeys[i] = srcKeys[l];
+                    dstItems[i] = srcItems[l];
+                    l++;
+                } else {
+                    dstKeys[i] = srcKeys[r];
+                    dstItems[i] = srcItems[r];
+                    r++;
+                }
+            }
+        }
+
+        /**
+         * Stable insertion sort of a small range
+         *
+         * @param keys Keys to sort
+         * @param items Students to reorder along with the keys
+         * @param lo First index of the range (inclusive)
+         * @param hi Last index of the range (exclusive)
+         */
+        void insertionSort(Object[] keys, Student[] items, int lo, int hi) {
+            for (int i = lo + 1; i < hi; i++) {
+                // Element being inserted
+                Object key = keys[i];
+                Student item = items[i];
+                // Shift greater elements one position to the right
+                int j = i - 1;
+                while (j >= lo && compare(keys[j], key) > 0) {
+                    keys[j + 1] = keys[j];
+                    items[j + 1] = items[j];
+                    j--;
+                }
+                // Insert the element in its position
+                keys[j + 1] = key;
+                items[j + 1] = item;
+            }
+        }
+    }
+}
@@ -0,0 +1,1298 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentStore is a columnar (struct-of-arrays) alternative to StudentDTB with
+ * the same add, find, delete, sort and report operations. Every column is a
+ * primitive array indexed by row:
+ * <ul>
+ * <li>IDs are packed into a long (2-letter major code and 6 digits)</li>
+ * <li>names live in one shared char arena, addressed by offset and length</li>
+ * <li>enrolments live in one shared long arena, one long per semester
+ * holding the semester code (upper 16 bits) and a bitset of courses (lower
+ * 48 bits), the same entry as the compact layout of Student</li>
+ * </ul>
+ * Scans by ID, semester and course therefore walk contiguous memory. Students
+ * are handed out as lightweight Student views that read and write the
+ * columns, so Menu can keep working with Student objects. Menu runs on this
+ * store when the program is started with -Dce190770_l02.backend=columnar.
+ *
+ * This class is not thread-safe, and nothing it holds is saved to disk.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public class StudentStore implements StudentBackend {
+
+    // Initial number of rows the columns have room for
+    private static final int INITIAL_CAPACITY = 16;
+    // Courses are stored in the lower bits of an enrolment entry, one bit
+    // per course of the dictionary
+    private static final int COURSE_BITS = CourseDictionary.MAX_COURSES;
+    // Mask of the course bits of an enrolment entry
+    private static final long COURSE_MASK = (1L << COURSE_BITS) - 1;
+    // Packed ID of a deleted row
+    private static final long DELETED = -1L;
+    // Number of distinct semester codes (2-digit years, 4 slots per year)
+    private static final int SEMESTER_CODES = 400;
+
+    // Dictionary that gives every course its bit
+    private final CourseDictionary dictionary;
+
+    // ID column, DELETED for deleted rows
+    private long[] ids = new long[INITIAL_CAPACITY];
+    // Name columns: start and length of each name in the name arena
+    private int[] nameStart = new int[INITIAL_CAPACITY];
+    private int[] nameLength = new int[INITIAL_CAPACITY];
+    // Enrolment columns: start, used and reserved entries in the enrolment arena
+    private int[] enrolStart = new int[INITIAL_CAPACITY];
+    private int[] enrolCount = new int[INITIAL_CAPACITY];
+    private int[] enrolCapacity = new int[INITIAL_CAPACITY];
+    // Shared arena of name characters
+    private char[] names = new char[INITIAL_CAPACITY * 16];
+    private int namesUsed = 0;
+    // Shared arena of enrolment entries, sorted by semester code within a row
+    private long[] enrolments = new long[INITIAL_CAPACITY * 2];
+    private int enrolmentsUsed = 0;
+    // Number of rows in use (live and deleted) and number of deleted rows
+    private int rows = 0;
+    private int deletedRows = 0;
+    // Number of changes made, the version number of snapshots
+    private long changes = 0;
+
+    // Open-addressing hash index: packed ID + 1 (0 = empty slot) -> row
+    private long[] hashKeys = new long[INITIAL_CAPACITY * 2];
+    private int[] hashRows = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Constructor to create an empty store with its own course dictionary
+     */
+    public StudentStore() {
+        this(new CourseDictionary());
+    }
+
+    /**
+     * Constructor to create an empty store sharing a course dictionary, e.g.
+     * StudentDTB.getCourseDictionary()
+     *
+     * @param dictionary Dictionary that gives every course its bit
+     */
+    public StudentStore(CourseDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Packs a student ID into a long
+     *
+     * @param id The student ID (e.g. CE123456), case-insensitive
+     * @return The packed ID, or -1 if the ID is not 2 letters and 6 digits
+     */
+    static long packId(CharSequence id) {
+        // The ID must be exactly 2 letters followed by 6 digits
+        if (id.length() != 8) {
+            return -1;
+        }
+        // Encode the major code as a number from 0 to 675
+        long packed = 0;
+        for (int i = 0; i < 2; i++) {
+            char c = Character.toUpperCase(id.charAt(i));
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            packed = packed * 26 + (c - 'A');
+        }
+        // Append the 6 digits
+        for (int i = 2; i < 8; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            packed = packed * 10 + (c - '0');
+        }
+        return packed;
+    }
+
+    /**
+     * Writes a packed ID back into its 8 characters
+     *
+     * @param packed The packed ID
+     * @param out Buffer of at least 8 characters receiving the ID
+     */
+    static void unpackId(long packed, char[] out) {
+        // Write the 6 digits from the right
+        for (int i = 7; i >= 2; i--) {
+            out[i] = (char) ('0' + packed % 10);
+            packed /= 10;
+        }
+        // Write the 2 letters of the major code
+        out[1] = (char) ('A' + packed % 26);
+        out[0] = (char) ('A' + packed / 26);
+    }
+
+    /**
+     * Converts a packed ID back to text
+     *
+     * @param packed The packed ID
+     * @return The student ID
+     */
+    static String unpackId(long packed) {
+        char[] out = new char[8];
+        unpackId(packed, out);
+        return new String(out);
+    }
+
+    /**
+     * Packs an ID, rejecting IDs that do not fit the packed layout
+     *
+     * @param id The student ID
+     * @return The packed ID
+     * @throws IllegalArgumentException if the ID is not 2 letters and 6 digits
+     */
+    private static long packIdOrFail(String id) {
+        long packed = packId(id);
+        if (packed < 0) {
+            throw new IllegalArgumentException("ID must be 2 letters of major code followed by 6 digits (CE123456).");
+        }
+        return packed;
+    }
+
+    /**
+     * Adds a new student to the store, copying its ID, name and enrolments
+     * into the columns
+     *
+     * @param student The student to add
+     * @return true if the student was added, false if the ID already exists
+     * @throws IllegalArgumentException if the ID or a semester does not fit
+     * the columnar layout
+     */
+    @Override
+    public boolean add(Student student) {
+        // Check every semester before anything is written
+        Map<String, Set<String>> semesters = student.getAllSemesterCourses();
+        for (String semester : semesters.keySet()) {
+            if (Enrolments.Compact.encode(semester) < 0) {
+                throw new IllegalArgumentException("Semester must be a season code followed by 2 digits of year (e.g. SP25).");
+            }
+        }
+        // Add the ID and name row
+        if (!add(student.getId(), student.getName())) {
+            return false;
+        }
+        // Copy the enrolments into the new row
+        int row = rows - 1;
+        for (Map.Entry<String, Set<String>> entry : semesters.entrySet()) {
+            int code = Enrolments.Compact.encode(entry.getKey());
+            for (String course : entry.getValue()) {
+                addEnrolment(row, code, courseBit(course));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a new student without enrolments to the store
+     *
+     * @param id The student ID (2 letters and 6 digits)
+     * @param name The student's name
+     * @return true if the student was added, false if the ID already exists
+     * @throws IllegalArgumentException if the ID does not fit the packed layout
+     */
+    public boolean add(String id, String name) {
+        // Reject the student if the ID is already taken
+        long packed = packIdOrFail(id);
+        if (rowOf(packed) >= 0) {
+            return false;
+        }
+        // Make room for one more row
+        ensureRowCapacity(rows + 1);
+        int row = rows++;
+        // Fill the ID and name columns
+        ids[row] = packed;
+        nameStart[row] = appendName(name);
+        nameLength[row] = name.length();
+        // Start with an empty enrolment segment
+        enrolStart[row] = enrolmentsUsed;
+        enrolCount[row] = 0;
+        enrolCapacity[row] = 0;
+        // Register the row in the hash index
+        hashPut(packed, row);
+        changes++;
+        return true;
+    }
+
+    /**
+     * Adds several students to the store, one after the other
+     *
+     * @param students The students to add
+     * @return For each student in iteration order, true if it was added,
+     * false if its ID already existed
+     * @throws IllegalArgumentException if an ID or a semester does not fit
+     * the columnar layout; the students before it stay added
+     */
+    @Override
+    public boolean[] addAll(Collection<Student> students) {
+        boolean[] res = new boolean[students.size()];
+        int i = 0;
+        for (Student student : students) {
+            res[i++] = add(student);
+        }
+        return res;
+    }
+
+    /**
+     * Checks if a student ID already exists in the store
+     *
+     * @param id The ID to check
+     * @return true if the ID exists, false otherwise
+     */
+    @Override
+    public boolean chkIdExist(String id) {
+        long packed = packId(id);
+        return packed >= 0 && rowOf(packed) >= 0;
+    }
+
+    /**
+     * Finds a student by exact ID (case-insensitive)
+     *
+     * @param id The ID to look up
+     * @return A view of the student, or null if no student has this ID
+     */
+    @Override
+    public Student findById(String id) {
+        long packed = packId(id);
+        return packed < 0 || rowOf(packed) < 0 ? null : new RowView(packed);
+    }
+
+    /**
+     * Finds a student by exact ID in order to change it; the views of the
+     * store can always be changed, so this is findById
+     *
+     * @param id The student ID
+     * @return A view of the student, or null if no student has this ID
+     */
+    @Override
+    public Student findForUpdate(String id) {
+        return findById(id);
+    }
+
+    /**
+     * Finds students based on a search input and specified criteria, with the
+     * same rules as StudentDTB.findBy: exact ID, or case-insensitive partial
+     * name, semester or course
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by
+     * @return List of views of the matching students, in store order
+     */
+    @Override
+    public List<Student> findBy(String input, StudentDTB.SortType sortType) {
+        // Create list to store matching students
+        List<Student> res = new ArrayList<>();
+        switch (sortType) {
+            case BY_ID:
+                // Exact ID through the hash index
+                Student found = findById(input);
+                if (found != null) {
+                    res.add(found);
+                }
+                return res;
+            case BY_NAME:
+                // Scan the name arena in place through a reusable window
+                QueryMatcher matcher = QueryMatcher.compile(input);
+                CharBuffer window = CharBuffer.wrap(names);
+                for (int row = 0; row < rows; row++) {
+                    if (ids[row] != DELETED) {
+                        window.limit(nameStart[row] + nameLength[row]).position(nameStart[row]);
+                        if (matcher.matches(window)) {
+                            res.add(new RowView(ids[row]));
+                        }
+                    }
+                }
+                return res;
+            case BY_SEMESTER:
+                // Work out once which semester codes match, then scan codes
+                boolean[] codes = matchingSemesterCodes(input);
+                for (int row = 0; row < rows; row++) {
+                    if (ids[row] != DELETED && hasMatchingSemester(row, codes)) {
+                        res.add(new RowView(ids[row]));
+                    }
+                }
+                return res;
+            default:
+                // Work out once which course bits match, then scan bitsets
+                long mask = matchingCourseMask(input);
+                for (int row = 0; row < rows; row++) {
+                    if (ids[row] != DELETED && hasMatchingCourse(row, mask)) {
+                        res.add(new RowView(ids[row]));
+                    }
+                }
+                return res;
+        }
+    }
+
+    /**
+     * Finds students like findBy. The matches are collected before the
+     * stream is returned, since the views must not outlive a later change
+     * of the store.
+     *
+     * @param input The search term to look for
+     * @param sortType The type of attribute to search by
+     * @return Stream of views of the matching students, in store order
+     */
+    @Override
+    public Stream<Student> find(String input, StudentDTB.SortType sortType) {
+        return findBy(input, sortType).stream();
+    }
+
+    /**
+     * Finds students whose ID contains the input (case-insensitive)
+     *
+     * @param input The partial ID to look for
+     * @return List of views of the matching students, in store order
+     */
+    public List<Student> searchById(String input) {
+        // Create list to store matching students
+        List<Student> res = new ArrayList<>();
+        // Unpack every ID into one reusable buffer and match it in place
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        char[] buffer = new char[8];
+        CharBuffer window = CharBuffer.wrap(buffer);
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] != DELETED) {
+                unpackId(ids[row], buffer);
+                if (matcher.matches(window)) {
+                    res.add(new RowView(ids[row]));
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Deletes a student from the store by their ID
+     *
+     * @param id The ID of the student to delete
+     * @return true if delete successfully, else return false
+     */
+    @Override
+    public boolean deleteStudent(String id) {
+        // Find the row through the hash index
+        long packed = packId(id);
+        int row = packed < 0 ? -1 : rowOf(packed);
+        if (row < 0) {
+            return false;
+        }
+        // Mark the row deleted and drop it from the hash index
+        hashRemove(packed);
+        ids[row] = DELETED;
+        deletedRows++;
+        changes++;
+        // Reclaim the space once more than half of the rows are deleted
+        if (deletedRows > rows / 2) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the store by the specified criteria, keeping rows with equal keys
+     * in their current order
+     *
+     * @param sortType The criteria to sort by
+     */
+    @Override
+    public void sort(StudentDTB.SortType sortType) {
+        // Rewrite the columns in the new order
+        rebuild(sortedRows(sortType));
+        changes++;
+    }
+
+    /**
+     * Default sort method that sorts by name
+     */
+    @Override
+    public void sort() {
+        sort(StudentDTB.SortType.BY_NAME);
+    }
+
+    /**
+     * Gets all students in sorted order, leaving the columns in store order
+     *
+     * @param sortType The criteria to order by
+     * @return Read-only list of views of all students in the requested order
+     */
+    @Override
+    public List<Student> sortedView(StudentDTB.SortType sortType) {
+        return views(sortedRows(sortType));
+    }
+
+    /**
+     * Gets the live rows sorted by the specified criteria, keeping rows with
+     * equal keys in store order
+     *
+     * @param sortType The criteria to sort by
+     * @return Array of live row numbers in sorted order
+     */
+    private int[] sortedRows(StudentDTB.SortType sortType) {
+        // Collect the live rows
+        int[] order = liveRows();
+        // Precompute one primitive key per row where the criteria allows it
+        long[] keys = null;
+        switch (sortType) {
+            case BY_ID:
+                keys = new long[rows];
+                for (int row : order) {
+                    keys[row] = ids[row];
+                }
+                break;
+            case BY_SEMESTER:
+                keys = new long[rows];
+                for (int row : order) {
+                    // Entries are sorted by code, so the first one is the earliest
+                    keys[row] = enrolCount[row] == 0 ? Long.MAX_VALUE
+                            : enrolments[enrolStart[row]] >>> COURSE_BITS;
+                }
+                break;
+            case BY_COURSE:
+                keys = new long[rows];
+                int[] rank = courseRanks();
+                for (int row : order) {
+                    keys[row] = minCourseRank(row, rank);
+                }
+                break;
+            default:
+                // Names are compared in place in the arena
+                break;
+        }
+        // Stable merge sort of the row numbers
+        mergeSort(order, order.clone(), 0, order.length, keys);
+        return order;
+    }
+
+    /**
+     * Gets all students in the store
+     *
+     * @return Read-only list of views of all students, in store order
+     */
+    @Override
+    public List<Student> report() {
+        return views(liveRows());
+    }
+
+    /**
+     * Copies every student out of the columns. The store has no copies to
+     * share between versions, so every call copies all students.
+     *
+     * @return The current version of the store
+     */
+    @Override
+    public DatabaseVersion snapshot() {
+        List<Student> copies = new ArrayList<>(size());
+        for (int row : liveRows()) {
+            copies.add(new RowView(ids[row]).freeze());
+        }
+        return new DatabaseVersion(changes, copies, null);
+    }
+
+    /**
+     * Does nothing, since the store keeps no log
+     */
+    @Override
+    public void sync() {
+        // Nothing is written to disk
+    }
+
+    /**
+     * Wraps rows into views
+     *
+     * @param order The row numbers
+     * @return Read-only list of views of the rows, in the given order
+     */
+    private List<Student> views(int[] order) {
+        List<Student> res = new ArrayList<>(order.length);
+        for (int row : order) {
+            res.add(new RowView(ids[row]));
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    /**
+     * Gets the number of students in the store
+     *
+     * @return The number of students
+     */
+    @Override
+    public int size() {
+        return rows - deletedRows;
+    }
+
+    /**
+     * Checks if the store is empty
+     *
+     * @return true if the store is empty, false otherwise
+     */
+    @Override
+    public boolean dtbIsEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Rewrites the columns without deleted rows and without the unused space
+     * left in the arenas by renamed students and grown enrolment lists
+     */
+    public void compact() {
+        rebuild(liveRows());
+    }
+
+    /**
+     * Gets the row numbers of all live rows in store order
+     *
+     * @return Array of live row numbers
+     */
+    private int[] liveRows() {
+        int[] res = new int[size()];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] != DELETED) {
+                res[n++] = row;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Rewrites every column so that the given rows become rows 0, 1, 2, ...
+     * with tightly packed arenas, then rebuilds the hash index
+     *
+     * @param order Row numbers in their new order
+     */
+    private void rebuild(int[] order) {
+        // Allocate the new columns
+        int capacity = Math.max(INITIAL_CAPACITY, order.length);
+        long[] newIds = new long[capacity];
+        int[] newNameStart = new int[capacity];
+        int[] newNameLength = new int[capacity];
+        int[] newEnrolStart = new int[capacity];
+        int[] newEnrolCount = new int[capacity];
+        // Size the arenas to what the live rows actually use
+        int nameChars = 0;
+        int entries = 0;
+        for (int row : order) {
+            nameChars += nameLength[row];
+            entries += enrolCount[row];
+        }
+        char[] newNames = new char[Math.max(16, nameChars)];
+        long[] newEnrolments = new long[Math.max(16, entries)];
+        // Copy every row to its new position
+        int namePos = 0;
+        int enrolPos = 0;
+        for (int i = 0; i < order.length; i++) {
+            int row = order[i];
+            newIds[i] = ids[row];
+            System.arraycopy(names, nameStart[row], newNames, namePos, nameLength[row]);
+            newNameStart[i] = namePos;
+            newNameLength[i] = nameLength[row];
+            namePos += nameLength[row];
+            System.arraycopy(enrolments, enrolStart[row], newEnrolments, enrolPos, enrolCount[row]);
+            newEnrolStart[i] = enrolPos;
+            newEnrolCount[i] = enrolCount[row];
+            enrolPos += enrolCount[row];
+        }
+        // Switch to the new columns
+        ids = newIds;
+        nameStart = newNameStart;
+        nameLength = newNameLength;
+        enrolStart = newEnrolStart;
+        enrolCount = newEnrolCount;
+        enrolCapacity = newEnrolCount.clone();
+        names = newNames;
+        namesUsed = namePos;
+        enrolments = newEnrolments;
+        enrolmentsUsed = enrolPos;
+        rows = order.length;
+        deletedRows = 0;
+        // Rebuild the hash index for the new row numbers
+        hashKeys = new long[Integer.highestOneBit(Math.max(INITIAL_CAPACITY, rows) * 2) * 2];
+        hashRows = new int[hashKeys.length];
+        for (int row = 0; row < rows; row++) {
+            hashPut(ids[row], row);
+        }
+    }
+
+    /**
+     * Stable merge sort of row numbers into dst, using src as scratch. Both
+     * arrays hold the same rows in [lo, hi) on entry.
+     *
+     * @param dst Row numbers that receive the sorted range
+     * @param src Scratch row numbers
+     * @param lo First index of the range (inclusive)
+     * @param hi Last index of the range (exclusive)
+     * @param keys Primitive key per row, or null to compare names
+     */
+    private void mergeSort(int[] dst, int[] src, int lo, int hi, long[] keys) {
+        // Small ranges: insertion sort directly in the destination
+        if (hi - lo < 16) {
+            for (int i = lo + 1; i < hi; i++) {
+                int row = dst[i];
+                int j = i - 1;
+                while (j >= lo && compareRows(dst[j], row, keys) > 0) {
+                    dst[j + 1] = dst[j];
+                    j--;
+                }
+                dst[j + 1] = row;
+            }
+            return;
+        }
+        // Sort both halves into the scratch array
+        int middle = (lo + hi) >>> 1;
+        mergeSort(src, dst, lo, middle, keys);
+        mergeSort(src, dst, middle, hi, keys);
+        // Merge the halves back, taking from the left on ties
+        int l = lo;
+        int r = middle;
+        for (int i = lo; i < hi; i++) {
+            if (r >= hi || (l < middle && compareRows(src[l], src[r], keys) <= 0)) {
+                dst[i] = src[l++];
+            } else {
+                dst[i] = src[r++];
+            }
+        }
+    }
+
+    /**
+     * Compares two rows by their precomputed key, or by name if there is none
+     *
+     * @param a The left row
+     * @param b The right row
+     * @param keys Primitive key per row, or null to compare names
+     * @return Negative, zero or positive like Comparator.compare
+     */
+    private int compareRows(int a, int b, long[] keys) {
+        return keys != null ? Long.compare(keys[a], keys[b]) : compareNames(a, b);
+    }
+
+    /**
+     * Compares two names in the arena like the trimmed upper-case names used
+     * by StudentDTB, without creating strings
+     *
+     * @param a The left row
+     * @param b The right row
+     * @return Negative, zero or positive like String.compareTo
+     */
+    private int compareNames(int a, int b) {
+        // Find the trimmed bounds of both names
+        int aFrom = nameStart[a];
+        int aTo = aFrom + nameLength[a];
+        int bFrom = nameStart[b];
+        int bTo = bFrom + nameLength[b];
+        while (aFrom < aTo && names[aFrom] <= ' ') {
+            aFrom++;
+        }
+        while (aTo > aFrom && names[aTo - 1] <= ' ') {
+            aTo--;
+        }
+        while (bFrom < bTo && names[bFrom] <= ' ') {
+            bFrom++;
+        }
+        while (bTo > bFrom && names[bTo - 1] <= ' ') {
+            bTo--;
+        }
+        // Compare character by character in upper case
+        while (aFrom < aTo && bFrom < bTo) {
+            char ca = Character.toUpperCase(names[aFrom++]);
+            char cb = Character.toUpperCase(names[bFrom++]);
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        // The shorter name comes first
+        return (aTo - aFrom) - (bTo - bFrom);
+    }
+
+    /**
+     * Ranks the courses of the dictionary by name
+     *
+     * @return Rank of every course bit, in name order
+     */
+    private int[] courseRanks() {
+        // Sort the bits by course name
+        int size = dictionary.size();
+        Integer[] bits = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            bits[i] = i;
+        }
+        Arrays.sort(bits, (x, y) -> dictionary.name(x).compareTo(dictionary.name(y)));
+        // Invert the sorted order into a rank per bit
+        int[] rank = new int[size];
+        for (int i = 0; i < size; i++) {
+            rank[bits[i]] = i;
+        }
+        return rank;
+    }
+
+    /**
+     * Gets the smallest course rank of a row
+     *
+     * @param row The row
+     * @param rank Rank of every course bit
+     * @return The smallest rank, or Long.MAX_VALUE if the row has no course
+     */
+    private long minCourseRank(int row, int[] rank) {
+        // Combine the course bits of all semesters
+        long all = 0;
+        for (int i = enrolStart[row], end = i + enrolCount[row]; i < end; i++) {
+            all |= enrolments[i] & COURSE_MASK;
+        }
+        // Find the smallest rank among the set bits
+        long min = Long.MAX_VALUE;
+        while (all != 0) {
+            min = Math.min(min, rank[Long.numberOfTrailingZeros(all)]);
+            all &= all - 1;
+        }
+        return min;
+    }
+
+    /**
+     * Works out which semester codes contain the search term
+     *
+     * @param input The search term
+     * @return Table of matching semester codes
+     */
+    private boolean[] matchingSemesterCodes(String input) {
+        boolean[] res = new boolean[SEMESTER_CODES];
+        // An exact semester only matches its own code
+        int exact = Enrolments.Compact.encode(input);
+        if (exact >= 0) {
+            res[exact] = true;
+            return res;
+        }
+        // Otherwise test the text of every valid code once
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        for (int code = 0; code < SEMESTER_CODES; code++) {
+            if (code % 4 != 0 && matcher.matches(Enrolments.Compact.decode(code))) {
+                res[code] = true;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Works out which course bits contain the search term
+     *
+     * @param input The search term
+     * @return Bitset of the matching courses
+     */
+    private long matchingCourseMask(String input) {
+        long mask = 0;
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        for (int bit = 0; bit < dictionary.size(); bit++) {
+            if (matcher.matches(dictionary.name(bit))) {
+                mask |= 1L << bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Checks if a row has a semester marked in the code table
+     *
+     * @param row The row
+     * @param codes Table of matching semester codes
+     * @return true if any semester of the row matches
+     */
+    private boolean hasMatchingSemester(int row, boolean[] codes) {
+        for (int i = enrolStart[row], end = i + enrolCount[row]; i < end; i++) {
+            if (codes[(int) (enrolments[i] >>> COURSE_BITS)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a row takes any course of a bitset
+     *
+     * @param row The row
+     * @param mask Bitset of the matching courses
+     * @return true if any semester of the row has a matching course
+     */
+    private boolean hasMatchingCourse(int row, long mask) {
+        for (int i = enrolStart[row], end = i + enrolCount[row]; i < end; i++) {
+            if ((enrolments[i] & mask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the bit of a course, interning it
+     *
+     * @param course The course name
+     * @return The course bit
+     * @throws IllegalArgumentException if the dictionary is full
+     */
+    private int courseBit(String course) {
+        return dictionary.intern(course);
+    }
+
+    /**
+     * Appends a name to the name arena
+     *
+     * @param name The name to append
+     * @return The start of the name in the arena
+     */
+    private int appendName(String name) {
+        // Grow the arena if needed
+        if (namesUsed + name.length() > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesUsed + name.length()));
+        }
+        // Copy the characters into the arena
+        name.getChars(0, name.length(), names, namesUsed);
+        int start = namesUsed;
+        namesUsed += name.length();
+        return start;
+    }
+
+    /**
+     * Makes sure the row columns can hold a number of rows
+     *
+     * @param capacity The number of rows needed
+     */
+    private void ensureRowCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        // Grow every row column together
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        nameStart = Arrays.copyOf(nameStart, newCapacity);
+        nameLength = Arrays.copyOf(nameLength, newCapacity);
+        enrolStart = Arrays.copyOf(enrolStart, newCapacity);
+        enrolCount = Arrays.copyOf(enrolCount, newCapacity);
+        enrolCapacity = Arrays.copyOf(enrolCapacity, newCapacity);
+    }
+
+    /**
+     * Finds the position of a semester code in a row's enrolment segment
+     *
+     * @param row The row
+     * @param code The semester code
+     * @return The arena index, or (-(insertion index) - 1) if not present
+     */
+    private int findEnrolment(int row, int code) {
+        // Segments are short and sorted, a linear scan is enough
+        int start = enrolStart[row];
+        int end = start + enrolCount[row];
+        for (int i = start; i < end; i++) {
+            int entryCode = (int) (enrolments[i] >>> COURSE_BITS);
+            if (entryCode == code) {
+                return i;
+            }
+            if (entryCode > code) {
+                return -i - 1;
+            }
+        }
+        return -end - 1;
+    }
+
+    /**
+     * Adds a course to a semester of a row
+     *
+     * @param row The row
+     * @param code The semester code
+     * @param bit The course bit
+     * @return true if the course was added, false if it was already present
+     */
+    private boolean addEnrolment(int row, int code, int bit) {
+        // Existing semester: set the course bit
+        int index = findEnrolment(row, code);
+        if (index >= 0) {
+            if ((enrolments[index] & (1L << bit)) != 0) {
+                return false;
+            }
+            enrolments[index] |= 1L << bit;
+            changes++;
+            return true;
+        }
+        // New semester: move the segment to the end of the arena if it is full
+        int offset = -index - 1 - enrolStart[row];
+        if (enrolCount[row] == enrolCapacity[row]) {
+            int newCapacity = Math.max(2, enrolCapacity[row] * 2);
+            if (enrolmentsUsed + newCapacity > enrolments.length) {
+                enrolments = Arrays.copyOf(enrolments, Math.max(enrolments.length * 2, enrolmentsUsed + newCapacity));
+            }
+            System.arraycopy(enrolments, enrolStart[row], enrolments, enrolmentsUsed, enrolCount[row]);
+            enrolStart[row] = enrolmentsUsed;
+            enrolCapacity[row] = newCapacity;
+            enrolmentsUsed += newCapacity;
+        }
+        // Shift the later semesters and insert the new one in code order
+        int at = enrolStart[row] + offset;
+        System.arraycopy(enrolments, at, enrolments, at + 1, enrolCount[row] - offset);
+        enrolments[at] = (long) code << COURSE_BITS | 1L << bit;
+        enrolCount[row]++;
+        changes++;
+        return true;
+    }
+
+    /**
+     * Removes the semester entry at an arena index from a row
+     *
+     * @param row The row
+     * @param index The arena index of the entry
+     */
+    private void removeEnrolmentAt(int row, int index) {
+        // Shift the later semesters one position to the left
+        int end = enrolStart[row] + enrolCount[row];
+        System.arraycopy(enrolments, index + 1, enrolments, index, end - index - 1);
+        enrolCount[row]--;
+        changes++;
+    }
+
+    /**
+     * Converts a course bitset to a set of course names
+     *
+     * @param mask The course bitset
+     * @return New set of the course names
+     */
+    private Set<String> courseNames(long mask) {
+        Set<String> res = new HashSet<>();
+        while (mask != 0) {
+            res.add(dictionary.name(Long.numberOfTrailingZeros(mask)));
+            mask &= mask - 1;
+        }
+        return res;
+    }
+
+    /**
+     * Finds the row of a packed ID in the hash index
+     *
+     * @param packed The packed ID
+     * @return The row, or -1 if the ID is not in the store
+     */
+    private int rowOf(long packed) {
+        // Linear probing from the hashed slot; slots store packed + 1
+        int mask = hashKeys.length - 1;
+        for (int slot = hash(packed) & mask; hashKeys[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashKeys[slot] == packed + 1) {
+                return hashRows[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds or updates the row of a packed ID in the hash index
+     *
+     * @param packed The packed ID
+     * @param row The row
+     */
+    private void hashPut(long packed, int row) {
+        // Keep the table at most half full
+        if ((size() + 1) * 2 > hashKeys.length) {
+            long[] oldKeys = hashKeys;
+            int[] oldRows = hashRows;
+            hashKeys = new long[oldKeys.length * 2];
+            hashRows = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    hashInsert(oldKeys[i], oldRows[i]);
+                }
+            }
+        }
+        hashInsert(packed + 1, row);
+    }
+
+    /**
+     * Inserts a stored key (packed + 1) into the hash table
+     *
+     * @param key The stored key
+     * @param row The row
+     */
+    private void hashInsert(long key, int row) {
+        int mask = hashKeys.length - 1;
+        int slot = hash(key - 1) & mask;
+        while (hashKeys[slot] != 0 && hashKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        hashKeys[slot] = key;
+        hashRows[slot] = row;
+    }
+
+    /**
+     * Removes a packed ID from the hash index, shifting later entries of the
+     * probe chain back so lookups keep working without tombstones
+     *
+     * @param packed The packed ID
+     */
+    private void hashRemove(long packed) {
+        int mask = hashKeys.length - 1;
+        // Find the slot of the key
+        int slot = hash(packed) & mask;
+        while (hashKeys[slot] != packed + 1) {
+            if (hashKeys[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Move back every following entry that may no longer be reachable
+        int next = (slot + 1) & mask;
+        while (hashKeys[next] != 0) {
+            int home = hash(hashKeys[next] - 1) & mask;
+            // The entry can fill the gap if its home is not between gap and entry
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                hashKeys[slot] = hashKeys[next];
+                hashRows[slot] = hashRows[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        hashKeys[slot] = 0;
+    }
+
+    /**
+     * Spreads the bits of a packed ID for the hash table
+     *
+     * @param packed The packed ID
+     * @return The hash code
+     */
+    private static int hash(long packed) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Student view of one row. The view remembers the packed ID and finds its
+     * row on every access, so it stays valid across sorting and compaction.
+     */
+    private final class RowView extends Student {
+
+        // Packed ID of the viewed student
+        private long packed;
+
+        /**
+         * Constructor to create a view of a row
+         *
+         * @param packed The packed ID of the row
+         */
+        RowView(long packed) {
+            super(unpackId(packed), "", new RowEnrolments());
+            ((RowEnrolments) enrolments()).view = this;
+            this.packed = packed;
+        }
+
+        /**
+         * Gets the current row of the viewed student
+         *
+         * @return The row
+         * @throws IllegalStateException if the student was deleted
+         */
+        int row() {
+            int row = rowOf(packed);
+            if (row < 0) {
+                throw new IllegalStateException("Student " + unpackId(packed) + " no longer exists.");
+            }
+            return row;
+        }
+
+        @Override
+        public String getId() {
+            return unpackId(packed);
+        }
+
+        @Override
+        public void setId(String id) {
+            // Move the row to the new key in the hash index
+            long newPacked = packIdOrFail(id);
+            int row = row();
+            if (newPacked == packed) {
+                return;
+            }
+            if (rowOf(newPacked) >= 0) {
+                throw new IllegalArgumentException("Student ID already exist in database.");
+            }
+            hashRemove(packed);
+            ids[row] = newPacked;
+            hashPut(newPacked, row);
+            packed = newPacked;
+            changes++;
+        }
+
+        @Override
+        public String getName() {
+            int row = row();
+            return new String(names, nameStart[row], nameLength[row]);
+        }
+
+        @Override
+        public void setName(String name) {
+            // Append the new name; the old characters are reclaimed by compact()
+            int row = row();
+            nameStart[row] = appendName(name);
+            nameLength[row] = name.length();
+            changes++;
+        }
+
+        @Override
+        String getSortName() {
+            return getName().trim().toUpperCase();
+        }
+
+        @Override
+        int getSemesterKey() {
+            return enrolments().earliestSemesterKey();
+        }
+
+        @Override
+        String getMinCourse() {
+            return enrolments().minCourse();
+        }
+
+        @Override
+        Student freeze() {
+            // The inherited fields do not hold the row, so copy the columns
+            return readOnlyCopy();
+        }
+    }
+
+    /**
+     * Enrolment storage of a RowView, reading and writing the enrolment
+     * column of the row
+     */
+    private final class RowEnrolments extends Enrolments {
+
+        // View this storage belongs to
+        private RowView view;
+
+        @Override
+        boolean add(String semester, String course) {
+            int code = Enrolments.Compact.encode(semester);
+            if (code < 0) {
+                throw new IllegalArgumentException("Semester must be a season code followed by 2 digits of year (e.g. SP25).");
+            }
+            return addEnrolment(view.row(), code, courseBit(course));
+        }
+
+        @Override
+        boolean remove(String semester, String course) {
+            int row = view.row();
+            int code = Enrolments.Compact.encode(semester);
+            int bit = dictionary.bitOf(course);
+            int index = code < 0 || bit < 0 ? -1 : findEnrolment(row, code);
+            if (index < 0 || (enrolments[index] & (1L << bit)) == 0) {
+                return false;
+            }
+            // Clear the course bit and drop the semester when it is empty
+            enrolments[index] &= ~(1L << bit);
+            if ((enrolments[index] & COURSE_MASK) == 0) {
+                removeEnrolmentAt(row, index);
+            }
+            changes++;
+            return true;
+        }
+
+        @Override
+        Set<String> removeSemester(String semester) {
+            int row = view.row();
+            int code = Enrolments.Compact.encode(semester);
+            int index = code < 0 ? -1 : findEnrolment(row, code);
+            if (index < 0) {
+                return null;
+            }
+            Set<String> removed = courseNames(enrolments[index] & COURSE_MASK);
+            removeEnrolmentAt(row, index);
+            return removed;
+        }
+
+        @Override
+        Set<String> semesters() {
+            int row = view.row();
+            Set<String> res = new HashSet<>();
+            for (int i = enrolStart[row], end = i + enrolCount[row]; i < end; i++) {
+                res.add(Enrolments.Compact.decode((int) (enrolments[i] >>> COURSE_BITS)));
+            }
+            return res;
+        }
+
+        @Override
+        Set<String> courses(String semester) {
+            int row = view.row();
+            int code = Enrolments.Compact.encode(semester);
+            int index = code < 0 ? -1 : findEnrolment(row, code);
+            return index < 0 ? new HashSet<>() : courseNames(enrolments[index] & COURSE_MASK);
+        }
+
+        @Override
+        Map<String, Set<String>> asMap() {
+            int row = view.row();
+            Map<String, Set<String>> res = new LinkedHashMap<>();
+            for (int i = enrolStart[row], end = i + enrolCount[row]; i < end; i++) {
+                res.put(Enrolments.Compact.decode((int) (enrolments[i] >>> COURSE_BITS)),
+                        Collections.unmodifiableSet(courseNames(enrolments[i] & COURSE_MASK)));
+            }
+            return Collections.unmodifiableMap(res);
+        }
+
+        @Override
+        boolean hasSemester(String semester) {
+            int code = Enrolments.Compact.encode(semester);
+            return code >= 0 && findEnrolment(view.row(), code) >= 0;
+        }
+
+        @Override
+        boolean hasCourse(String course) {
+            int bit = dictionary.bitOf(course);
+            return bit >= 0 && hasMatchingCourse(view.row(), 1L << bit);
+        }
+
+        @Override
+        boolean takesCourse(String semester, String course) {
+            int code = Enrolments.Compact.encode(semester);
+            int bit = dictionary.bitOf(course);
+            int index = code < 0 || bit < 0 ? -1 : findEnrolment(view.row(), code);
+            return index >= 0 && (enrolments[index] & (1L << bit)) != 0;
+        }
+
+        @Override
+        int earliestSemesterKey() {
+            int row = view.row();
+            return enrolCount[row] == 0 ? Integer.MAX_VALUE : (int) (enrolments[enrolStart[row]] >>> COURSE_BITS);
+        }
+
+        @Override
+        String minCourse() {
+            int row = view.row();
+            long all = 0;
+            for (int i = enrolStart[row], end = i + enrolCount[row]; i < end; i++) {
+                all |= enrolments[i] & COURSE_MASK;
+            }
+            String smallest = null;
+            while (all != 0) {
+                String course = dictionary.name(Long.numberOfTrailingZeros(all));
+                if (smallest == null || course.compareTo(smallest) < 0) {
+                    smallest = course;
+                }
+                all &= all - 1;
+            }
+            return smallest;
+        }
+    }
+}
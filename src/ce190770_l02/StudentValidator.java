@@ -0,0 +1,277 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+/**
+ * L02 - Student Management System
+ *
+ * StudentValidator holds the rules for student IDs, names, semesters and
+ * courses, shared by the console menu and the importers. The checks are
+ * hand-written scans over the characters instead of regular expressions, so
+ * they compile nothing and create no substrings. A check returns null when
+ * the input is valid and one of the message constants otherwise, so a valid
+ * input never allocates. The normalize methods return their argument
+ * unchanged when it is already in normal form.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class StudentValidator {
+
+    // Messages of the failed checks, worded as the menu always printed them
+    public static final String EMPTY = "Input must not be empty!";
+    public static final String ID_LENGTH = "ID must be 8 characters long (CE123456).";
+    public static final String ID_MAJOR = "ID must start with major code (CExxxxxx).";
+    public static final String ID_DIGITS = "ID must have 6 digits of number after major code (CE123456).";
+    public static final String NAME_EMPTY = "Input should not be empty.";
+    public static final String NAME_LETTERS = "Please only enter letters.";
+    public static final String SEMESTER_LENGTH = "Semester must be 4 characters long (e.g. SP25, SU24, FA23).";
+    public static final String SEMESTER_FORMAT = "Semester must starts with seasons code followed by years (e.g. SP25, SU24, FA23).";
+    public static final String COURSE_UNKNOWN = "Course must be one of Java, .NET, C/C++.";
+
+    // Valid courses, in the order the menu lists them
+    static final String[] COURSES = {"Java", ".NET", "C/C++"};
+    // Valid season codes: Spring, Summer, Fall
+    static final String[] SEASONS = {"SP", "SU", "FA"};
+
+    /**
+     * Private constructor, this class only has static methods
+     */
+    private StudentValidator() {
+    }
+
+    /**
+     * Checks a student ID: 2 letters of major code followed by 6 digits.
+     * Letters may be in either case, the ID is upper-cased when normalized.
+     *
+     * @param id The ID without spaces
+     * @return null if the ID is valid, otherwise the reason it is not
+     */
+    public static String checkId(CharSequence id) {
+        if (id.length() == 0) {
+            return EMPTY;
+        }
+        if (id.length() != 8) {
+            return ID_LENGTH;
+        }
+        // Major code
+        if (!isLetter(id.charAt(0)) || !isLetter(id.charAt(1))) {
+            return ID_MAJOR;
+        }
+        // Student number
+        for (int i = 2; i < 8; i++) {
+            if (!isDigit(id.charAt(i))) {
+                return ID_DIGITS;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks a student name: letters and spaces only, with at least one
+     * letter. Spaces and control characters around the name are ignored.
+     *
+     * @param name The name as entered
+     * @return null if the name is valid, otherwise the reason it is not
+     */
+    public static String checkName(CharSequence name) {
+        // Ignore what trim() would remove
+        int start = 0;
+        int end = name.length();
+        while (start < end && name.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && name.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return NAME_EMPTY;
+        }
+        // Only letters and spaces inside
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c != ' ' && !isLetter(c)) {
+                return NAME_LETTERS;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks a semester: a season code (SP, SU, FA) followed by 2 digits of
+     * year. Letters may be in either case.
+     *
+     * @param semester The semester without spaces
+     * @return null if the semester is valid, otherwise the reason it is not
+     */
+    public static String checkSemester(CharSequence semester) {
+        if (semester.length() == 0) {
+            return EMPTY;
+        }
+        if (semester.length() != 4) {
+            return SEMESTER_LENGTH;
+        }
+        if (seasonIndex(semester.charAt(0), semester.charAt(1)) < 0
+                || !isDigit(semester.charAt(2)) || !isDigit(semester.charAt(3))) {
+            return SEMESTER_FORMAT;
+        }
+        return null;
+    }
+
+    /**
+     * Checks a course name against the valid courses, ignoring case and the
+     * spaces around it
+     *
+     * @param course The course name
+     * @return null if the course is valid, otherwise the reason it is not
+     */
+    public static String checkCourse(CharSequence course) {
+        return courseOf(course) == null ? COURSE_UNKNOWN : null;
+    }
+
+    /**
+     * Finds the valid course a name refers to, ignoring case and the spaces
+     * around it
+     *
+     * @param course The course name
+     * @return The course as the database spells it, or null if it is not a
+     * valid course
+     */
+    public static String courseOf(CharSequence course) {
+        // Ignore what trim() would remove
+        int start = 0;
+        int end = course.length();
+        while (start < end && course.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && course.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        // Compare with every valid course, folding ASCII case
+        for (String valid : COURSES) {
+            if (valid.length() == end - start && equalsIgnoreCase(valid, course, start)) {
+                return valid;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Normalizes a single-word input the way the menu reads it: surrounding
+     * whitespace and every space removed, letters upper-cased
+     *
+     * @param input The input
+     * @return The normalized input, the same instance if nothing changes
+     */
+    public static String normalizeCode(String input) {
+        // Keep the input if it has no space and no lower-case letter
+        int i = 0;
+        while (i < input.length()) {
+            char c = input.charAt(i);
+            if (c <= ' ' || (c >= 'a' && c <= 'z') || c > 0x7F) {
+                break;
+            }
+            i++;
+        }
+        if (i == input.length()) {
+            return input;
+        }
+        return input.trim().replace(" ", "").toUpperCase();
+    }
+
+    /**
+     * Normalizes a name the way the menu reads it: surrounding whitespace
+     * removed and runs of spaces collapsed into one
+     *
+     * @param name The name
+     * @return The normalized name, the same instance if nothing changes
+     */
+    public static String normalizeName(String name) {
+        // Keep the name if it has no surrounding whitespace and no double space
+        int length = name.length();
+        boolean normal = length == 0 || (name.charAt(0) > ' ' && name.charAt(length - 1) > ' ');
+        for (int i = 1; normal && i < length; i++) {
+            normal = name.charAt(i) != ' ' || name.charAt(i - 1) != ' ';
+        }
+        if (normal) {
+            return name;
+        }
+        // Copy the name, skipping every space that follows a space
+        String trimmed = name.trim();
+        StringBuilder sb = new StringBuilder(trimmed.length());
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c != ' ' || trimmed.charAt(i - 1) != ' ') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Finds a season code
+     *
+     * @param first First letter of the code, either case
+     * @param second Second letter of the code, either case
+     * @return Position of the season in SEASONS, or -1 if unknown
+     */
+    static int seasonIndex(char first, char second) {
+        for (int i = 0; i < SEASONS.length; i++) {
+            if (toUpper(first) == SEASONS[i].charAt(0) && toUpper(second) == SEASONS[i].charAt(1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a string with a region of a character sequence, folding ASCII
+     * case
+     *
+     * @param valid The string to compare with
+     * @param input The character sequence
+     * @param start Start of the region in the input
+     * @return true if the region equals the string ignoring case
+     */
+    private static boolean equalsIgnoreCase(String valid, CharSequence input, int start) {
+        for (int i = 0; i < valid.length(); i++) {
+            if (toUpper(valid.charAt(i)) != toUpper(input.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks for an ASCII letter, the letters the old [a-zA-Z] patterns
+     * accepted
+     *
+     * @param c The character
+     * @return true if c is a-z or A-Z
+     */
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Checks for an ASCII digit, the digits the old [0-9] patterns accepted
+     *
+     * @param c The character
+     * @return true if c is 0-9
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Upper-cases an ASCII letter
+     *
+     * @param c The character
+     * @return The upper-case letter, or c if it is not a-z
+     */
+    private static char toUpper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,986 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * L02 - Student Management System
+ *
+ * WriteAheadLog records every change made to a StudentDTB in append-only
+ * segment files, so the database stays durable without rewriting the whole
+ * snapshot after each change. Records are handed to a single writer thread,
+ * which writes everything that is waiting as one group and forces it to disk
+ * with one fsync, so a burst of changes pays one fsync per group instead of
+ * one per record. Each record has a sequence number; a snapshot remembers
+ * the last record it contains, and recovery replays only the records after
+ * it. Full segments are folded into a new snapshot in the background.
+ * Layout of a record:
+ * <pre>
+ * [int bodyLength][int crc32 of body]
+ * body: [long sequence][u8 type][fields as u16 length + UTF-8 bytes]
+ * </pre>
+ * A record whose length or checksum does not match, e.g. one cut short by a
+ * crash, ends the segment.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public final class WriteAheadLog implements AutoCloseable {
+
+    // Default size at which the active segment is closed and a new one begun
+    public static final long DEFAULT_SEGMENT_SIZE = 16L << 20;
+    // Default number of closed segments that starts a background compaction
+    public static final int DEFAULT_COMPACT_SEGMENTS = 4;
+
+    // Record types
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte ADD_COURSE = 3;
+    private static final byte REMOVE_COURSE = 4;
+    private static final byte REMOVE_SEMESTER = 5;
+    private static final byte SET_ID = 6;
+    private static final byte SET_NAME = 7;
+    // Size of the [length][crc] frame before each record body
+    private static final int FRAME_SIZE = 8;
+    // Size of the [sequence][type] start of each record body
+    private static final int BODY_HEADER_SIZE = 9;
+    // Most records written and forced as one group
+    private static final int MAX_GROUP = 4096;
+    // Records that may wait for the writer before append blocks
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    // Segment file names are wal-<number>.log
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Marker that tells the writer thread to stop
+    private static final Pending STOP = new Pending(0, null);
+
+    // Directory holding the segment files
+    private final Path directory;
+    // Snapshot file the log is compacted into
+    private final Path snapshotFile;
+    // Size at which the active segment is closed
+    private final long segmentSize;
+    // Number of closed segments that starts a background compaction
+    private final int compactSegments;
+
+    // Records waiting for the writer thread, in sequence order
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // Thread that writes and forces groups of records
+    private final Thread writer;
+    // Thread that folds closed segments into the snapshot
+    private final ExecutorService compactor;
+    // Whether a compaction is already waiting or running
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    // Guards the sequence counter and the encoding buffer
+    private final Object appendLock = new Object();
+    // Reused buffer a record is encoded into
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(encoded);
+    // Reused checksum of the record body
+    private final CRC32 crc = new CRC32();
+    // Sequence number of the last appended record
+    private long lastSequence;
+    // Future of the last appended record, completed once it is on disk
+    private volatile CompletableFuture<Long> lastAppended;
+
+    // Guards the active segment and the list of closed segments
+    private final Object segmentLock = new Object();
+    // Segment that receives new records
+    private FileChannel channel;
+    private Path activeSegment;
+    private long activeNumber;
+    // Segments that are complete but not yet folded into the snapshot
+    private final List<Path> closedSegments = new ArrayList<>();
+    // Guards replacing the snapshot file
+    private final Object snapshotLock = new Object();
+
+    // First write error, every later record fails with it
+    private volatile IOException failure;
+    // Whether close() was called
+    private volatile boolean closed;
+
+    /**
+     * A record waiting for the writer thread
+     */
+    private static final class Pending {
+
+        // Sequence number of the record
+        final long sequence;
+        // Framed record bytes
+        final byte[] bytes;
+        // Completed with the sequence number once the record is on disk
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        /**
+         * Constructor to create a waiting record
+         *
+         * @param sequence Sequence number of the record
+         * @param bytes Framed record bytes
+         */
+        Pending(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Constructor to create a log over existing segments
+     *
+     * @param directory Directory holding the segment files
+     * @param snapshotFile Snapshot file the log is compacted into
+     * @param segmentSize Size at which the active segment is closed
+     * @param compactSegments Number of closed segments that starts a
+     * compaction
+     * @param segments Existing segments by number
+     * @param lastSequence Last sequence number already used
+     * @throws IOException if the new active segment cannot be created
+     */
+    private WriteAheadLog(Path directory, Path snapshotFile, long segmentSize, int compactSegments,
+            TreeMap<Long, Path> segments, long lastSequence) throws IOException {
+        this.directory = directory;
+        this.snapshotFile = snapshotFile;
+        this.segmentSize = segmentSize;
+        this.compactSegments = compactSegments;
+        this.lastSequence = lastSequence;
+        // Existing segments are never appended to, new records go to a new one
+        closedSegments.addAll(segments.values());
+        activeNumber = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        openActiveSegment();
+        // Start the writer and the compaction threads
+        writer = new Thread(this::writeLoop, "student-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        compactor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "student-wal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the log in a directory with the default segment size and
+     * compaction trigger
+     *
+     * @param directory Directory holding the segment files, created if
+     * missing
+     * @param snapshotFile Snapshot file the log is compacted into
+     * @return The opened log
+     * @throws IOException if the directory, a segment or the snapshot cannot
+     * be read
+     */
+    public static WriteAheadLog open(Path directory, Path snapshotFile) throws IOException {
+        return open(directory, snapshotFile, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACT_SEGMENTS);
+    }
+
+    /**
+     * Opens the log in a directory. A record cut short at the end of a
+     * segment is cut off the file, so new records never follow a broken one.
+     *
+     * @param directory Directory holding the segment files, created if
+     * missing
+     * @param snapshotFile Snapshot file the log is compacted into
+     * @param segmentSize Size at which the active segment is closed
+     * @param compactSegments Number of closed segments that starts a
+     * background compaction
+     * @return The opened log
+     * @throws IOException if the directory, a segment or the snapshot cannot
+     * be read
+     * @throws IllegalArgumentException if segmentSize or compactSegments is
+     * not positive
+     */
+    public static WriteAheadLog open(Path directory, Path snapshotFile, long segmentSize, int compactSegments)
+            throws IOException {
+        if (segmentSize <= 0 || compactSegments <= 0) {
+            throw new IllegalArgumentException("Segment size and compaction trigger must be positive.");
+        }
+        Files.createDirectories(directory);
+        // Continue numbering after the snapshot and every logged record
+        long last = Files.exists(snapshotFile) ? StudentSnapshot.open(snapshotFile).getLogSequence() : 0;
+        TreeMap<Long, Path> segments = listSegments(directory);
+        for (Path segment : segments.values()) {
+            last = Math.max(last, scan(segment, null, Long.MAX_VALUE, true));
+        }
+        return new WriteAheadLog(directory, snapshotFile, segmentSize, compactSegments, segments, last);
+    }
+
+    /**
+     * Loads the snapshot into a database and replays every logged record
+     * that came after it. Call this before attaching the log to the database,
+     * so the replayed changes are not logged again. The snapshot is loaded
+     * in the background, so without records to replay this returns at once;
+     * a replayed record waits for the load.
+     *
+     * @param dtb The empty database to fill
+     * @return The number of log records replayed
+     * @throws IOException if the snapshot or a segment cannot be read
+     */
+    public int recover(StudentDTB dtb) throws IOException {
+        // Start from the latest snapshot
+        long after = 0;
+        if (Files.exists(snapshotFile)) {
+            StudentSnapshot snapshot = StudentSnapshot.open(snapshotFile);
+            dtb.loadInBackground(snapshot);
+            after = snapshot.getLogSequence();
+        }
+        // Replay the records the snapshot does not contain yet
+        int[] replayed = {0};
+        for (Path segment : closedSegments()) {
+            scan(segment, (type, body) -> {
+                apply(type, body, dtb);
+                replayed[0]++;
+            }, after, false);
+        }
+        return replayed[0];
+    }
+
+    /**
+     * Logs a student that was added, with all of its enrolments
+     *
+     * @param student The added student
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logAdd(Student student) {
+        synchronized (appendLock) {
+            try {
+                begin(ADD);
+                writeString(student.getId());
+                writeString(student.getName());
+                Map<String, Set<String>> enrolments = student.getAllSemesterCourses();
+                int pairs = 0;
+                for (Set<String> courses : enrolments.values()) {
+                    pairs += courses.size();
+                }
+                out.writeShort(pairs);
+                for (Map.Entry<String, Set<String>> entry : enrolments.entrySet()) {
+                    for (String course : entry.getValue()) {
+                        writeString(entry.getKey());
+                        writeString(course);
+                    }
+                }
+                return end();
+            } catch (IOException e) {
+                return failed(e);
+            }
+        }
+    }
+
+    /**
+     * Logs a student that was deleted
+     *
+     * @param id ID of the deleted student
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logDelete(String id) {
+        return log(DELETE, id);
+    }
+
+    /**
+     * Logs a course that was added to a student
+     *
+     * @param id ID of the student
+     * @param semester The semester of the course
+     * @param course The added course
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logAddCourse(String id, String semester, String course) {
+        return log(ADD_COURSE, id, semester, course);
+    }
+
+    /**
+     * Logs a course that was removed from a student
+     *
+     * @param id ID of the student
+     * @param semester The semester of the course
+     * @param course The removed course
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logRemoveCourse(String id, String semester, String course) {
+        return log(REMOVE_COURSE, id, semester, course);
+    }
+
+    /**
+     * Logs a semester that was removed from a student
+     *
+     * @param id ID of the student
+     * @param semester The removed semester
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logRemoveSemester(String id, String semester) {
+        return log(REMOVE_SEMESTER, id, semester);
+    }
+
+    /**
+     * Logs a student ID that was changed
+     *
+     * @param oldId The previous ID
+     * @param newId The new ID
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logSetId(String oldId, String newId) {
+        return log(SET_ID, oldId, newId);
+    }
+
+    /**
+     * Logs a student name that was changed
+     *
+     * @param id ID of the student
+     * @param name The new name
+     * @return Future completed once the record is on disk
+     */
+    CompletableFuture<Long> logSetName(String id, String name) {
+        return log(SET_NAME, id, name);
+    }
+
+    /**
+     * Logs a record made only of string fields
+     *
+     * @param type The record type
+     * @param fields The fields of the record
+     * @return Future completed once the record is on disk
+     */
+    private CompletableFuture<Long> log(byte type, String... fields) {
+        synchronized (appendLock) {
+            try {
+                begin(type);
+                for (String field : fields) {
+                    writeString(field);
+                }
+                return end();
+            } catch (IOException e) {
+                return failed(e);
+            }
+        }
+    }
+
+    /**
+     * Creates a future that has already failed
+     *
+     * @param error The failure
+     * @return The failed future
+     */
+    private static CompletableFuture<Long> failed(IOException error) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Starts encoding a record, called with appendLock held
+     *
+     * @param type The record type
+     * @throws IOException if the log is closed or has failed
+     */
+    private void begin(byte type) throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log is closed.");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        // Leave room for the frame, it is filled in by end()
+        encoded.reset();
+        out.writeLong(0);
+        out.writeLong(lastSequence + 1);
+        out.writeByte(type);
+    }
+
+    /**
+     * Frames the encoded record and hands it to the writer thread, called
+     * with appendLock held so records reach the queue in sequence order
+     *
+     * @return Future completed once the record is on disk
+     * @throws IOException if the writer thread was interrupted
+     */
+    private CompletableFuture<Long> end() throws IOException {
+        byte[] bytes = encoded.toByteArray();
+        // Fill in the body length and checksum
+        int bodyLength = bytes.length - FRAME_SIZE;
+        crc.reset();
+        crc.update(bytes, FRAME_SIZE, bodyLength);
+        ByteBuffer.wrap(bytes).putInt(bodyLength).putInt((int) crc.getValue());
+        // Queue the record, blocking while the writer is too far behind
+        Pending pending = new Pending(++lastSequence, bytes);
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while logging a change.", e);
+        }
+        lastAppended = pending.future;
+        return pending.future;
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string into the record being encoded
+     *
+     * @param s The string to write
+     * @throws IOException if the string is longer than 65535 bytes
+     */
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Value too long for the write-ahead log.");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Body of the writer thread: takes every waiting record, writes them as
+     * one group, forces the segment once and then completes their futures
+     */
+    private void writeLoop() {
+        List<Pending> group = new ArrayList<>(MAX_GROUP);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        boolean running = true;
+        while (running) {
+            // Wait for the first record, then take whatever else is waiting
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                // Only close() stops the writer, keep waiting for STOP
+                continue;
+            }
+            queue.drainTo(group, MAX_GROUP - 1);
+            // Copy the group into one buffer, stopping at the STOP marker
+            buffer.clear();
+            int records = 0;
+            for (Pending pending : group) {
+                if (pending == STOP) {
+                    running = false;
+                    break;
+                }
+                if (buffer.remaining() < pending.bytes.length) {
+                    buffer = grow(buffer, pending.bytes.length);
+                }
+                buffer.put(pending.bytes);
+                records++;
+            }
+            buffer.flip();
+            // Write and force the whole group at once
+            IOException error = failure;
+            if (error == null && records > 0) {
+                try {
+                    synchronized (segmentLock) {
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        channel.force(false);
+                        // Close the segment once it is full
+                        if (channel.size() >= segmentSize) {
+                            rotate();
+                        }
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    error = e;
+                }
+            }
+            // Tell every waiting caller how its record went
+            for (int i = 0; i < records; i++) {
+                Pending pending = group.get(i);
+                if (error == null) {
+                    pending.future.complete(pending.sequence);
+                } else {
+                    pending.future.completeExceptionally(error);
+                }
+            }
+            group.clear();
+            // Fold closed segments into the snapshot once enough have piled up
+            if (error == null && closedSegmentCount() >= compactSegments) {
+                scheduleCompaction();
+            }
+        }
+    }
+
+    /**
+     * Creates a bigger buffer holding the content of a full one
+     *
+     * @param buffer The full buffer, in write mode
+     * @param needed Number of bytes that must fit after the content
+     * @return The bigger buffer, in write mode
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * Blocks until every record appended so far is on disk
+     *
+     * @throws IOException if a record could not be written
+     */
+    public void sync() throws IOException {
+        CompletableFuture<Long> last = lastAppended;
+        if (last == null) {
+            return;
+        }
+        try {
+            last.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the write-ahead log.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last appended record
+     *
+     * @return The last sequence number
+     */
+    public long getLastSequence() {
+        synchronized (appendLock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Writes a database to the snapshot file and drops every segment it
+     * makes unnecessary. The database must not change while this runs.
+     *
+     * @param dtb The database the log belongs to
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint(StudentDTB dtb) throws IOException {
+        // Every record the database contains must be on disk first
+        long sequence = getLastSequence();
+        sync();
+        // Start a new segment, all older ones are covered by the snapshot
+        List<Path> covered;
+        synchronized (segmentLock) {
+            rotate();
+            covered = new ArrayList<>(closedSegments);
+        }
+        synchronized (snapshotLock) {
+            StudentSnapshot.write(dtb, snapshotFile, sequence);
+            deleteSegments(covered);
+        }
+    }
+
+    /**
+     * Folds every closed segment into the snapshot file on the background
+     * thread. The live database is not touched: the records are merged into
+     * the current snapshot, creating only the students they name.
+     *
+     * @return Future completed once the compaction has finished
+     */
+    public CompletableFuture<Void> compact() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        compactor.execute(() -> {
+            try {
+                compactClosedSegments();
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Starts a background compaction unless one is already waiting
+     */
+    private void scheduleCompaction() {
+        if (!closed && compactionScheduled.compareAndSet(false, true)) {
+            compact().whenComplete((result, error) -> {
+                compactionScheduled.set(false);
+                // The segments stay on disk, the next compaction tries again
+                if (error != null) {
+                    System.err.println("------Error! Could not compact the write-ahead log: " + error.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Merges the closed segments into the current snapshot and writes the
+     * result as the new snapshot. Only the students the records name are
+     * read from the snapshot and replayed; every other record is copied
+     * into the new file as it is.
+     *
+     * @throws IOException if the snapshot or a segment cannot be read or
+     * written
+     */
+    private void compactClosedSegments() throws IOException {
+        List<Path> segments = closedSegments();
+        if (segments.isEmpty()) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            // Start from the current snapshot
+            StudentSnapshot snapshot = null;
+            long after = 0;
+            if (Files.exists(snapshotFile)) {
+                snapshot = StudentSnapshot.open(snapshotFile);
+                after = snapshot.getLogSequence();
+            }
+            // Collect every ID the records the snapshot does not contain name
+            Set<String> ids = new HashSet<>();
+            long last = after;
+            for (Path segment : segments) {
+                last = Math.max(last, scan(segment, (type, body) -> namedIds(type, body, ids), after, false));
+            }
+            // A newer snapshot may already cover every segment
+            if (last > after) {
+                // Replay the records over just the students they name, so
+                // every ID a record checks is present if the snapshot has it
+                StudentDTB touched = new StudentDTB();
+                Map<Student, Integer> positions = new IdentityHashMap<>();
+                if (snapshot != null) {
+                    for (String id : ids) {
+                        int position = snapshot.positionOf(id);
+                        if (position >= 0) {
+                            Student student = snapshot.read(position);
+                            touched.add(student);
+                            positions.put(student, position);
+                        }
+                    }
+                }
+                for (Path segment : segments) {
+                    scan(segment, (type, body) -> apply(type, body, touched), after, false);
+                }
+                // Students read from the snapshot replace their record, or
+                // drop it once deleted; the others were added by the log
+                Map<Integer, Student> changed = new HashMap<>();
+                for (Integer position : positions.values()) {
+                    changed.put(position, null);
+                }
+                List<Student> added = new ArrayList<>();
+                for (Student student : touched.report()) {
+                    Integer position = positions.get(student);
+                    if (position != null) {
+                        changed.put(position, student);
+                    } else {
+                        added.add(student);
+                    }
+                }
+                if (snapshot != null) {
+                    snapshot.merge(changed, added, snapshotFile, last);
+                } else {
+                    StudentSnapshot.write(added, snapshotFile, last);
+                }
+            }
+            deleteSegments(segments);
+        }
+    }
+
+    /**
+     * Closes the active segment and starts a new one, called with
+     * segmentLock held
+     *
+     * @throws IOException if the segment cannot be closed or created
+     */
+    private void rotate() throws IOException {
+        channel.force(true);
+        channel.close();
+        closedSegments.add(activeSegment);
+        activeNumber++;
+        openActiveSegment();
+    }
+
+    /**
+     * Creates the segment file for activeNumber and makes it active
+     *
+     * @throws IOException if the segment cannot be created
+     */
+    private void openActiveSegment() throws IOException {
+        activeSegment = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, activeNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(activeSegment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Gets a copy of the list of closed segments
+     *
+     * @return The closed segments, oldest first
+     */
+    private List<Path> closedSegments() {
+        synchronized (segmentLock) {
+            return new ArrayList<>(closedSegments);
+        }
+    }
+
+    /**
+     * Gets the number of closed segments
+     *
+     * @return The number of closed segments
+     */
+    private int closedSegmentCount() {
+        synchronized (segmentLock) {
+            return closedSegments.size();
+        }
+    }
+
+    /**
+     * Deletes segments that a snapshot now covers
+     *
+     * @param segments The segments to delete
+     * @throws IOException if a segment cannot be deleted
+     */
+    private void deleteSegments(List<Path> segments) throws IOException {
+        for (Path segment : segments) {
+            synchronized (segmentLock) {
+                closedSegments.remove(segment);
+            }
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Waits for every appended record to reach the disk and stops the
+     * writer and compaction threads. An active segment without records is
+     * deleted.
+     *
+     * @throws IOException if a record could not be written or the segment
+     * cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        // Refuse new records, then let the writer finish the queued ones
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(STOP);
+            writer.join();
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the write-ahead log.", e);
+        }
+        synchronized (segmentLock) {
+            boolean empty = channel.size() == 0;
+            channel.close();
+            if (empty) {
+                Files.deleteIfExists(activeSegment);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Receives the records found while scanning a segment
+     */
+    private interface RecordHandler {
+
+        /**
+         * Handles one record
+         *
+         * @param type The record type
+         * @param body The record fields, positioned after the type
+         * @throws IOException if the record is not valid
+         */
+        void handle(byte type, ByteBuffer body) throws IOException;
+    }
+
+    /**
+     * Lists the segment files of a directory
+     *
+     * @param directory The log directory
+     * @return Segment number -> segment file, in number order
+     * @throws IOException if the directory cannot be read
+     */
+    private static TreeMap<Long, Path> listSegments(Path directory) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a segment written by this class
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the records of a segment in order, stopping at the first one
+     * that is cut short or does not match its checksum
+     *
+     * @param segment The segment file
+     * @param handler Receives each record after the given sequence, may be
+     * null to only validate
+     * @param after Records up to this sequence number are skipped
+     * @param repair Whether to cut a broken tail off the file
+     * @return The highest sequence number in the segment, 0 if none
+     * @throws IOException if the segment cannot be read or a record cannot
+     * be applied
+     */
+    private static long scan(Path segment, RecordHandler handler, long after, boolean repair) throws IOException {
+        long last = 0;
+        int end;
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            CRC32 check = new CRC32();
+            int pos = 0;
+            while (true) {
+                // A complete frame and body must fit in the file
+                if (buffer.limit() - pos < FRAME_SIZE) {
+                    break;
+                }
+                int bodyLength = buffer.getInt(pos);
+                if (bodyLength < BODY_HEADER_SIZE || bodyLength > buffer.limit() - pos - FRAME_SIZE) {
+                    break;
+                }
+                ByteBuffer body = ((ByteBuffer) buffer.duplicate().position(pos + FRAME_SIZE)
+                        .limit(pos + FRAME_SIZE + bodyLength)).slice();
+                check.reset();
+                check.update(body.duplicate());
+                if ((int) check.getValue() != buffer.getInt(pos + 4)) {
+                    break;
+                }
+                // Hand over the records the caller has not seen yet
+                long sequence = body.getLong();
+                byte type = body.get();
+                if (handler != null && sequence > after) {
+                    handler.handle(type, body);
+                }
+                last = Math.max(last, sequence);
+                pos += FRAME_SIZE + bodyLength;
+            }
+            end = pos;
+        }
+        // Cut off a record that was only partly written before a crash
+        if (repair && end < Files.size(segment)) {
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                file.truncate(end);
+                file.force(true);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Collects the student IDs a logged change names
+     *
+     * @param type The record type
+     * @param body The record fields
+     * @param ids Receives the normalized IDs
+     */
+    private static void namedIds(byte type, ByteBuffer body, Set<String> ids) {
+        ids.add(StudentDTB.normalizeId(readString(body)));
+        // A change of ID also names the ID it takes
+        if (type == SET_ID) {
+            ids.add(StudentDTB.normalizeId(readString(body)));
+        }
+    }
+
+    /**
+     * Applies a logged change to a database. Changes that no longer apply,
+     * e.g. adding an ID that exists, are skipped, so replaying a record
+     * twice leaves the database as it was after the first time.
+     *
+     * @param type The record type
+     * @param body The record fields
+     * @param dtb The database to change
+     * @throws IOException if the record type is unknown
+     */
+    private static void apply(byte type, ByteBuffer body, StudentDTB dtb) throws IOException {
+        String id = readString(body);
+        Student student;
+        switch (type) {
+            case ADD:
+                // Rebuild the student with all of its enrolments
+                student = new Student(id, readString(body));
+                int pairs = body.getShort() & 0xFFFF;
+                for (int i = 0; i < pairs; i++) {
+                    student.addCourse(readString(body), readString(body));
+                }
+                dtb.add(student);
+                break;
+            case DELETE:
+                dtb.deleteStudent(id);
+                break;
+            case ADD_COURSE:
+                student = dtb.findForUpdate(id);
+                if (student != null) {
+                    student.addCourse(readString(body), readString(body));
+                }
+                break;
+            case REMOVE_COURSE:
+                student = dtb.findForUpdate(id);
+                if (student != null) {
+                    student.removeCourse(readString(body), readString(body));
+                }
+                break;
+            case REMOVE_SEMESTER:
+                student = dtb.findForUpdate(id);
+                if (student != null) {
+                    student.removeSemester(readString(body));
+                }
+                break;
+            case SET_ID:
+                student = dtb.findForUpdate(id);
+                String newId = readString(body);
+                Student holder = dtb.findForUpdate(newId);
+                if (student != null && (holder == null || holder == student)) {
+                    student.setId(newId);
+                }
+                break;
+            case SET_NAME:
+                student = dtb.findForUpdate(id);
+                if (student != null) {
+                    student.setName(readString(body));
+                }
+                break;
+            default:
+                throw new IOException("Unknown write-ahead log record type " + type + ".");
+        }
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from a record
+     *
+     * @param body The record fields
+     * @return The string
+     */
+    private static String readString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getShort() & 0xFFFF];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * L02 - Student Management System
+ *
+ * QueryCacheTest checks that findBy answers from its result cache exactly
+ * what a full scan of the database would find, while every kind of change
+ * runs between the searches.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public class QueryCacheTest {
+
+    // Search inputs that repeat, so most searches are cache hits
+    private static final String[] NAMES = {"anh", "NGUYEN", "van", "thi", "ng", "Minh", "x"};
+    private static final String[] SEMESTERS = {"SP2023", "sp2023", "FA2024", "SU", "2024", "FA20", "SP2030", " sp2023"};
+    private static final String[] COURSES = {"Java", ".net", "/C++", "a", "ZZZ", " Java"};
+    // Semesters the changes enrol students in
+    private static final String[] NEW_SEMESTERS = {"SP2023", "FA2024", "SP2030", "SU2022"};
+
+    // The database under test
+    private StudentDTB dtb;
+    // Generator of the roster and of the students added later
+    private RosterGenerator generator;
+
+    /**
+     * Fills a database with a fixed roster before each test
+     */
+    @Before
+    public void setUp() {
+        dtb = new StudentDTB();
+        generator = new RosterGenerator(dtb, 7);
+        generator.generateInto(1000, dtb);
+    }
+
+    /**
+     * Runs 20,000 searches between random changes of every kind and compares
+     * each result with a scan of the database
+     */
+    @Test
+    public void cachedResultsMatchRecomputed() {
+        Random random = new Random(1);
+        StudentDTB.SortType[] types = {StudentDTB.SortType.BY_NAME, StudentDTB.SortType.BY_SEMESTER,
+            StudentDTB.SortType.BY_COURSE};
+        for (int round = 0; round < 4000; round++) {
+            for (int q = 0; q < 5; q++) {
+                StudentDTB.SortType type = types[random.nextInt(types.length)];
+                String input = pick(type == StudentDTB.SortType.BY_NAME ? NAMES
+                        : type == StudentDTB.SortType.BY_SEMESTER ? SEMESTERS : COURSES, random);
+                List<Student> found = dtb.findBy(input, type);
+                List<Student> expected = scan(input, type);
+                String what = "round " + round + ", " + type + " " + input;
+                if (type != StudentDTB.SortType.BY_NAME) {
+                    // Semester and course searches keep the order the
+                    // students were added, like the lazy stream
+                    expected.sort(Comparator.comparingLong(student -> student.seq));
+                    assertEquals(what, expected, dtb.find(input, type).collect(Collectors.toList()));
+                }
+                // Name searches keep the order of the last sort
+                assertEquals(what, expected, found);
+                // Callers may change the returned list
+                found.clear();
+            }
+            change(random);
+        }
+        assertTrue("the cache was never used", dtb.queryCache().getHits() > 0);
+    }
+
+    /**
+     * Checks that a capacity of 0 switches the cache off and that shrinking
+     * it evicts results
+     */
+    @Test
+    public void capacityLimitsTheResultsKept() {
+        QueryCache cache = dtb.queryCache();
+        for (String name : NAMES) {
+            dtb.findBy(name, StudentDTB.SortType.BY_NAME);
+        }
+        assertEquals(NAMES.length, cache.getSize());
+        cache.setCapacity(4);
+        assertEquals(4, cache.getSize());
+        assertEquals(NAMES.length - 4, cache.getEvictions());
+        cache.setCapacity(0);
+        long hits = cache.getHits();
+        dtb.findBy(NAMES[0], StudentDTB.SortType.BY_NAME);
+        dtb.findBy(NAMES[0], StudentDTB.SortType.BY_NAME);
+        assertEquals(0, cache.getSize());
+        assertEquals(hits, cache.getHits());
+    }
+
+    /**
+     * Makes one random change: add, delete, rename, change of ID, adding or
+     * removing a course, removing a semester, or a sort
+     *
+     * @param random The source of randomness
+     */
+    private void change(Random random) {
+        List<Student> all = dtb.report();
+        Student student = all.get(random.nextInt(all.size()));
+        Set<String> semesters = student.getSemesters();
+        switch (random.nextInt(8)) {
+            case 0:
+                dtb.add(generator.next());
+                break;
+            case 1:
+                dtb.deleteStudent(student.getId());
+                break;
+            case 2:
+                student.setName(pick(NAMES, random) + " Tran " + random.nextInt(9));
+                break;
+            case 3:
+                student.addCourse(pick(NEW_SEMESTERS, random), pick(StudentValidator.COURSES, random));
+                break;
+            case 4:
+                // Keep at least one enrolment, as a student needs one
+                if (semesters.size() > 1) {
+                    String semester = semesters.iterator().next();
+                    student.removeCourse(semester, student.getCourses(semester).iterator().next());
+                }
+                break;
+            case 5:
+                if (semesters.size() > 1) {
+                    student.removeSemester(semesters.iterator().next());
+                }
+                break;
+            case 6:
+                if (random.nextInt(20) == 0) {
+                    dtb.sort(StudentDTB.SortType.values()[random.nextInt(StudentDTB.SortType.values().length)]);
+                }
+                break;
+            default:
+                try {
+                    student.setId(generator.next().getId());
+                } catch (IllegalArgumentException e) {
+                    // The generated ID was taken, nothing changed
+                }
+                break;
+        }
+    }
+
+    /**
+     * Finds the students a search should return by scanning every student,
+     * with the rules of findBy: a partial name, or an exact semester or
+     * course key if any student has it and a partial key otherwise
+     *
+     * @param input The search term
+     * @param type The criteria searched by
+     * @return The matching students in the order of the last sort
+     */
+    private List<Student> scan(String input, StudentDTB.SortType type) {
+        QueryMatcher matcher = QueryMatcher.compile(input);
+        List<Student> res = new ArrayList<>();
+        if (type == StudentDTB.SortType.BY_NAME) {
+            for (Student student : dtb.report()) {
+                if (matcher.matches(student.getName())) {
+                    res.add(student);
+                }
+            }
+            return res;
+        }
+        String key = StudentDTB.normalizeKey(input);
+        List<Student> students = dtb.report();
+        List<Set<String>> keys = new ArrayList<>(students.size());
+        boolean exact = false;
+        for (Student student : students) {
+            Set<String> studentKeys = keys(student, type);
+            keys.add(studentKeys);
+            exact |= studentKeys.contains(key);
+        }
+        for (int i = 0; i < students.size(); i++) {
+            for (String candidate : keys.get(i)) {
+                if (exact ? candidate.equals(key) : matcher.matches(candidate)) {
+                    res.add(students.get(i));
+                    break;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gets the normalized semester or course keys of a student
+     *
+     * @param student The student
+     * @param type BY_SEMESTER or BY_COURSE
+     * @return The keys
+     */
+    private static Set<String> keys(Student student, StudentDTB.SortType type) {
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+            if (type == StudentDTB.SortType.BY_SEMESTER) {
+                keys.add(StudentDTB.normalizeKey(entry.getKey()));
+            } else {
+                for (String course : entry.getValue()) {
+                    keys.add(StudentDTB.normalizeKey(course));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Picks a random element
+     *
+     * @param values The values to pick from
+     * @param random The source of randomness
+     * @return One of the values
+     */
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+}
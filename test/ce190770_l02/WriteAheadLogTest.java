@@ -0,0 +1,393 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ce190770_l02;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * L02 - Student Management System
+ *
+ * WriteAheadLogTest checks that recovery rebuilds a database from its
+ * snapshot and log: records cut short or damaged by a crash are dropped,
+ * only the records after a checkpoint are replayed, and a compaction writes
+ * the same students the log describes.
+ *
+ * @author Dinh Cong Phuc - CE190770 - Mar 7, 2025
+ */
+public class WriteAheadLogTest {
+
+    // Semesters the changes enrol students in
+    private static final String[] SEMESTERS = {"SP2023", "FA2024", "SU2022"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Directory of the log segments and the snapshot file
+    private Path directory;
+    private Path snapshotFile;
+
+    /**
+     * Picks the files of a fresh log before each test
+     */
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("wal");
+        snapshotFile = folder.getRoot().toPath().resolve("students.dtb");
+    }
+
+    /**
+     * A record cut short at the end of a segment is dropped and cut off the
+     * file, so records logged after reopening are recovered too
+     *
+     * @throws IOException if the log cannot be used
+     */
+    @Test
+    public void truncatedTailIsDropped() throws IOException {
+        StudentDTB dtb = new StudentDTB();
+        WriteAheadLog log = attach(dtb);
+        RosterGenerator generator = new RosterGenerator(dtb, 1);
+        dtb.add(generator.next("CE000001"));
+        dtb.add(generator.next("CE000002"));
+        log.sync();
+        Path segment = lastSegment();
+        long intact = Files.size(segment);
+        dtb.add(generator.next("CE000003"));
+        log.close();
+        // Cut the last record in half, as a crash during the write would
+        truncate(segment, intact + 5);
+        StudentDTB recovered = new StudentDTB();
+        log = WriteAheadLog.open(directory, snapshotFile);
+        assertEquals(2, log.recover(recovered));
+        assertEquals(intact, Files.size(segment));
+        assertTrue(recovered.chkIdExist("CE000002"));
+        assertFalse(recovered.chkIdExist("CE000003"));
+        // New records follow the repaired segment and are recovered as well
+        recovered.setWriteAheadLog(log);
+        recovered.add(generator.next("CE000004"));
+        log.close();
+        assertEquals(content(recovered), content(recover()));
+    }
+
+    /**
+     * A record whose checksum does not match ends its segment, so it and
+     * every record after it are dropped
+     *
+     * @throws IOException if the log cannot be used
+     */
+    @Test
+    public void checksumMismatchEndsTheSegment() throws IOException {
+        StudentDTB dtb = new StudentDTB();
+        WriteAheadLog log = attach(dtb);
+        RosterGenerator generator = new RosterGenerator(dtb, 2);
+        dtb.add(generator.next("CE000001"));
+        log.sync();
+        Path segment = lastSegment();
+        long first = Files.size(segment);
+        dtb.add(generator.next("CE000002"));
+        dtb.add(generator.next("CE000003"));
+        log.close();
+        // Flip a bit in the body of the second record
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            file.read(b, first + 12);
+            b.put(0, (byte) (b.get(0) ^ 1));
+            b.rewind();
+            file.write(b, first + 12);
+        }
+        StudentDTB recovered = recover();
+        assertEquals(1, recovered.size());
+        assertTrue(recovered.chkIdExist("CE000001"));
+        assertFalse(recovered.chkIdExist("CE000003"));
+    }
+
+    /**
+     * Recovery loads the checkpoint and replays only the records logged
+     * after it
+     *
+     * @throws IOException if the log cannot be used
+     */
+    @Test
+    public void checkpointThenReplay() throws IOException {
+        StudentDTB dtb = new StudentDTB();
+        WriteAheadLog log = attach(dtb);
+        RosterGenerator generator = new RosterGenerator(dtb, 3);
+        generator.generateInto(50, dtb);
+        log.checkpoint(dtb);
+        // Three changes after the checkpoint
+        List<Student> all = dtb.report();
+        all.get(0).setName("Tran Van Moi");
+        dtb.deleteStudent(all.get(1).getId());
+        all.get(2).addCourse("SP2030", StudentValidator.COURSES[0]);
+        log.close();
+        StudentDTB recovered = new StudentDTB();
+        log = WriteAheadLog.open(directory, snapshotFile);
+        assertEquals(3, log.recover(recovered));
+        log.close();
+        assertEquals(content(dtb), content(recovered));
+        assertEquals(ids(dtb), ids(recovered));
+    }
+
+    /**
+     * A student deleted and added again with the same ID comes back as the
+     * new student, after replay and after compaction
+     *
+     * @throws IOException if the log cannot be used
+     */
+    @Test
+    public void deleteThenReAddSameId() throws IOException {
+        deleteThenReAdd(false);
+    }
+
+    /**
+     * The same as deleteThenReAddSameId with the first student in the
+     * checkpoint, so the compaction replaces a snapshot record
+     *
+     * @throws IOException if the log cannot be used
+     */
+    @Test
+    public void deleteThenReAddSameIdAfterCheckpoint() throws IOException {
+        deleteThenReAdd(true);
+    }
+
+    /**
+     * Compacting a snapshot and many segments of random changes writes the
+     * students of the live database, in its order
+     *
+     * @throws IOException if the log cannot be used
+     * @throws Exception if the compaction fails
+     */
+    @Test
+    public void compactionMatchesTheDatabase() throws Exception {
+        StudentDTB dtb = new StudentDTB();
+        // Small segments and no compaction while logging
+        WriteAheadLog log = WriteAheadLog.open(directory, snapshotFile, 4096, Integer.MAX_VALUE);
+        log.recover(dtb);
+        dtb.setWriteAheadLog(log);
+        RosterGenerator generator = new RosterGenerator(dtb, 4);
+        generator.generateInto(300, dtb);
+        Random random = new Random(4);
+        for (int i = 0; i < 3000; i++) {
+            if (i == 1000) {
+                log.checkpoint(dtb);
+            }
+            change(dtb, generator, random);
+        }
+        log.close();
+        // Compact without loading the database, then recover from the result
+        log = WriteAheadLog.open(directory, snapshotFile);
+        log.compact().get();
+        log.close();
+        assertNull("segments were left behind", lastSegment());
+        StudentDTB recovered = new StudentDTB();
+        log = WriteAheadLog.open(directory, snapshotFile);
+        assertEquals(0, log.recover(recovered));
+        log.close();
+        assertEquals(content(dtb), content(recovered));
+        assertEquals(ids(dtb), ids(recovered));
+    }
+
+    /**
+     * Deletes a student and adds another with its ID, then checks replay
+     * and compaction
+     *
+     * @param checkpoint Whether the first student is in a checkpoint
+     * @throws IOException if the log cannot be used
+     */
+    private void deleteThenReAdd(boolean checkpoint) throws IOException {
+        StudentDTB dtb = new StudentDTB();
+        WriteAheadLog log = attach(dtb);
+        RosterGenerator generator = new RosterGenerator(dtb, 5);
+        generator.generateInto(20, dtb);
+        Student first = new Student("CE123456", "Le Van Cu");
+        first.addCourse("SP2023", StudentValidator.COURSES[0]);
+        dtb.add(first);
+        if (checkpoint) {
+            log.checkpoint(dtb);
+        }
+        dtb.deleteStudent("CE123456");
+        Student second = new Student("ce123456", "Pham Thi Moi");
+        second.addCourse("FA2024", StudentValidator.COURSES[1]);
+        dtb.add(second);
+        log.close();
+        // Replay
+        StudentDTB replayed = recover();
+        assertEquals("Pham Thi Moi", replayed.findById("CE123456").getName());
+        assertEquals(content(dtb), content(replayed));
+        // Compaction
+        log = WriteAheadLog.open(directory, snapshotFile);
+        try {
+            log.compact().get();
+        } catch (Exception e) {
+            throw new AssertionError("compaction failed", e);
+        }
+        log.close();
+        StudentDTB compacted = recover();
+        assertEquals(content(dtb), content(compacted));
+        assertEquals(ids(dtb), ids(compacted));
+    }
+
+    /**
+     * Makes one random change that the log records
+     *
+     * @param dtb The database
+     * @param generator Generator of new students
+     * @param random The source of randomness
+     */
+    private static void change(StudentDTB dtb, RosterGenerator generator, Random random) {
+        List<Student> all = dtb.report();
+        Student student = all.get(random.nextInt(all.size()));
+        Set<String> semesters = student.getSemesters();
+        switch (random.nextInt(8)) {
+            case 0:
+                dtb.add(generator.next());
+                break;
+            case 1:
+                dtb.deleteStudent(student.getId());
+                break;
+            case 2:
+                // Delete and add again under the same ID
+                dtb.deleteStudent(student.getId());
+                dtb.add(generator.next(student.getId()));
+                break;
+            case 3:
+                student.setName("Tran Van " + random.nextInt(1000));
+                break;
+            case 4:
+                student.addCourse(SEMESTERS[random.nextInt(SEMESTERS.length)],
+                        StudentValidator.COURSES[random.nextInt(StudentValidator.COURSES.length)]);
+                break;
+            case 5:
+                // Keep at least one enrolment, as a student needs one
+                if (semesters.size() > 1) {
+                    String semester = semesters.iterator().next();
+                    student.removeCourse(semester, student.getCourses(semester).iterator().next());
+                }
+                break;
+            case 6:
+                if (semesters.size() > 1) {
+                    student.removeSemester(semesters.iterator().next());
+                }
+                break;
+            default:
+                try {
+                    student.setId(generator.next().getId());
+                } catch (IllegalArgumentException e) {
+                    // The generated ID was taken, nothing changed
+                }
+                break;
+        }
+    }
+
+    /**
+     * Opens a log in the test directory and attaches it to an empty database
+     *
+     * @param dtb The empty database
+     * @return The opened log
+     * @throws IOException if the log cannot be opened
+     */
+    private WriteAheadLog attach(StudentDTB dtb) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory, snapshotFile);
+        log.recover(dtb);
+        dtb.setWriteAheadLog(log);
+        return log;
+    }
+
+    /**
+     * Recovers a new database from the test directory
+     *
+     * @return The recovered database
+     * @throws IOException if the log cannot be read
+     */
+    private StudentDTB recover() throws IOException {
+        StudentDTB dtb = new StudentDTB();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, snapshotFile)) {
+            log.recover(dtb);
+        }
+        return dtb;
+    }
+
+    /**
+     * Gets the segment with the highest number
+     *
+     * @return The segment file, or null if there is none
+     * @throws IOException if the directory cannot be read
+     */
+    private Path lastSegment() throws IOException {
+        TreeMap<String, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path file : files) {
+                segments.put(file.getFileName().toString(), file);
+            }
+        }
+        return segments.isEmpty() ? null : segments.lastEntry().getValue();
+    }
+
+    /**
+     * Cuts a file to a size
+     *
+     * @param file The file
+     * @param size The new size
+     * @throws IOException if the file cannot be written
+     */
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    /**
+     * Describes every student of a database by ID
+     *
+     * @param dtb The database
+     * @return Upper-case ID -> name and sorted enrolments
+     */
+    private static Map<String, String> content(StudentDTB dtb) {
+        Map<String, String> content = new TreeMap<>();
+        for (Student student : dtb.report()) {
+            Map<String, Set<String>> enrolments = new TreeMap<>();
+            for (Map.Entry<String, Set<String>> entry : student.getAllSemesterCourses().entrySet()) {
+                enrolments.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+            }
+            content.put(StudentDTB.normalizeId(student.getId()), student.getName() + " " + enrolments);
+        }
+        return content;
+    }
+
+    /**
+     * Gets the IDs of a database in the order of its report
+     *
+     * @param dtb The database
+     * @return The IDs in order
+     */
+    private static List<String> ids(StudentDTB dtb) {
+        List<String> ids = new ArrayList<>();
+        for (Student student : dtb.report()) {
+            ids.add(student.getId());
+        }
+        return ids;
+    }
+}